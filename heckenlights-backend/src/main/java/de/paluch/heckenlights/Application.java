@@ -1,14 +1,12 @@
 package de.paluch.heckenlights;
 
+import java.net.URI;
 import java.time.Clock;
 import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParamBean;
-import org.apache.http.params.HttpParams;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -18,9 +16,12 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.ImportResource;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import de.paluch.heckenlights.application.RuleService;
 import de.paluch.heckenlights.model.RuleState;
+import de.paluch.heckenlights.relay.CircuitBreakingMidiRelay;
+import de.paluch.heckenlights.relay.HttpMidiRelay;
 import de.paluch.heckenlights.tracking.TrackingMDCFilter;
 
 @Configuration
@@ -32,32 +33,26 @@ public class Application {
         SpringApplication.run(Application.class, args);
     }
 
-    @Bean
-    ThreadSafeClientConnManager threadSafeClientConnManager() {
-        return new ThreadSafeClientConnManager();
-    }
-
     @Bean
     RuleState ruleState() {
         return new RuleState();
     }
 
-    @Bean
-    BasicHttpParams httpConnectionParams(@Value("${midirelay.connectTimeout}") int connectTimeout,
-            @Value("${midirelay.readTimeout}") int readTimeout) {
-
-        BasicHttpParams params = new BasicHttpParams();
-        HttpConnectionParamBean bean = new HttpConnectionParamBean(new BasicHttpParams());
-
-        bean.setConnectionTimeout(connectTimeout);
-        bean.setSoTimeout(readTimeout);
-
-        return params;
+    @Bean(destroyMethod = "close")
+    CloseableHttpAsyncClient midiRelayHttpClient(@Value("${midirelay.connectTimeout}") int connectTimeout,
+            @Value("${midirelay.readTimeout}") int readTimeout, @Value("${midirelay.maxConnections:4}") int maxConnections) {
+        return HttpMidiRelay.createHttpClient(connectTimeout, readTimeout, maxConnections);
     }
 
     @Bean
-    DefaultHttpClient httpClient(ClientConnectionManager clientConnectionManager, HttpParams httpParams) {
-        return new DefaultHttpClient(clientConnectionManager, httpParams);
+    CircuitBreakingMidiRelay midiRelay(CloseableHttpAsyncClient midiRelayHttpClient, Clock clock,
+            @Value("${midirelay.url}") URI baseUri, @Value("${midirelay.deadlineMillis:10000}") long deadlineMillis,
+            @Value("${midirelay.circuit.failureThreshold:3}") int failureThreshold,
+            @Value("${midirelay.circuit.openMillis:10000}") long openMillis,
+            @Value("${midirelay.bulkhead.maxConcurrentCalls:4}") int maxConcurrentCalls) {
+
+        return new CircuitBreakingMidiRelay(new HttpMidiRelay(midiRelayHttpClient, baseUri, deadlineMillis), clock,
+                failureThreshold, openMillis, maxConcurrentCalls);
     }
 
     @Bean
@@ -70,6 +65,12 @@ public class Application {
         return registrationBean;
     }
 
+    @Bean(destroyMethod = "shutdownNow")
+    ScheduledExecutorService queueSchedulerExecutor(@Value("${queue.scheduler.threads:2}") int threads) {
+        return Executors.newScheduledThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("queue-scheduler-%d").setDaemon(true).build());
+    }
+
     @Bean
     Clock clock(RuleService ruleService) {
         return Clock.system(TimeZone.getTimeZone(ruleService.getRules().getTimezone()).toZoneId());
@@ -0,0 +1,29 @@
+package de.paluch.heckenlights;
+
+import org.springframework.context.ApplicationContext;
+
+import lombok.Value;
+
+/**
+ * A light installation with its own queue, rules, relay and database, hosted in its own {@link ApplicationContext}.
+ *
+ * @author Mark Paluch
+ */
+@Value
+public class Installation {
+
+    String name;
+    ApplicationContext context;
+
+    /**
+     * @param type
+     * @return the bean of {@code type} serving this installation.
+     */
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public boolean isDefault() {
+        return Installations.DEFAULT.equals(name);
+    }
+}
@@ -0,0 +1,105 @@
+package de.paluch.heckenlights;
+
+import java.net.URI;
+import java.time.Clock;
+import java.util.TimeZone;
+
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.ComponentScan.Filter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+
+import com.mongodb.MongoClient;
+
+import de.paluch.heckenlights.application.EnqueueTrack;
+import de.paluch.heckenlights.application.LeaderElection;
+import de.paluch.heckenlights.application.LeaderElectionMetrics;
+import de.paluch.heckenlights.application.MidiAnalysisCache;
+import de.paluch.heckenlights.application.MidiAnalysisCacheMetrics;
+import de.paluch.heckenlights.application.PopulateQueue;
+import de.paluch.heckenlights.application.ProcessQueue;
+import de.paluch.heckenlights.application.ReadMidiUpload;
+import de.paluch.heckenlights.application.RuleService;
+import de.paluch.heckenlights.client.MidiRelayClient;
+import de.paluch.heckenlights.client.MidiRelayClientHealth;
+import de.paluch.heckenlights.client.YouTubeClient;
+import de.paluch.heckenlights.model.RuleState;
+import de.paluch.heckenlights.relay.CircuitBreakingMidiRelay;
+import de.paluch.heckenlights.relay.HttpMidiRelay;
+import de.paluch.heckenlights.repositories.LeaseService;
+import de.paluch.heckenlights.repositories.MidiAnalysisService;
+import de.paluch.heckenlights.repositories.PlayCommandRepository;
+
+/**
+ * Beans of an additional {@link Installation}. Components shared by all installations are excluded and provided by
+ * {@link Installations}.
+ *
+ * @author Mark Paluch
+ */
+@Configuration
+@ComponentScan(basePackageClasses = { ProcessQueue.class, PlayCommandRepository.class, MidiRelayClient.class },
+        excludeFilters = @Filter(type = FilterType.ASSIGNABLE_TYPE,
+                classes = { LeaderElection.class, LeaderElectionMetrics.class, LeaseService.class, MidiAnalysisCache.class,
+                        MidiAnalysisCacheMetrics.class, MidiAnalysisService.class, ReadMidiUpload.class, YouTubeClient.class,
+                        MidiRelayClientHealth.class, PopulateQueue.class }))
+@EnableMongoRepositories(basePackageClasses = PlayCommandRepository.class)
+class InstallationConfiguration {
+
+    @Bean
+    static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+        return new PropertySourcesPlaceholderConfigurer();
+    }
+
+    @Bean
+    MongoDbFactory mongoDbFactory(MongoClient mongoClient, @Value("${spring.data.mongodb.database}") String database) {
+        return new SimpleMongoDbFactory(mongoClient, database);
+    }
+
+    @Bean
+    MongoTemplate mongoTemplate(MongoDbFactory mongoDbFactory) {
+        return new MongoTemplate(mongoDbFactory);
+    }
+
+    @Bean
+    GridFsTemplate gridFsTemplate(MongoDbFactory mongoDbFactory, MongoTemplate mongoTemplate) {
+        return new GridFsTemplate(mongoDbFactory, mongoTemplate.getConverter());
+    }
+
+    @Bean
+    CircuitBreakingMidiRelay midiRelay(CloseableHttpAsyncClient midiRelayHttpClient, Clock clock,
+            @Value("${midirelay.url}") URI baseUri, @Value("${midirelay.deadlineMillis:10000}") long deadlineMillis,
+            @Value("${midirelay.circuit.failureThreshold:3}") int failureThreshold,
+            @Value("${midirelay.circuit.openMillis:10000}") long openMillis,
+            @Value("${midirelay.bulkhead.maxConcurrentCalls:4}") int maxConcurrentCalls) {
+
+        return new CircuitBreakingMidiRelay(new HttpMidiRelay(midiRelayHttpClient, baseUri, deadlineMillis), clock,
+                failureThreshold, openMillis, maxConcurrentCalls);
+    }
+
+    @Bean
+    PopulateQueue populateQueue(EnqueueTrack enqueueTrack, @Value("${populateQueue.midiDirectory:}") String midiDirectory) {
+
+        PopulateQueue populateQueue = new PopulateQueue(enqueueTrack);
+        populateQueue.setMidiDirectory(midiDirectory);
+        return populateQueue;
+    }
+
+    @Bean
+    RuleState ruleState() {
+        return new RuleState();
+    }
+
+    @Bean
+    Clock clock(RuleService ruleService) {
+        return Clock.system(TimeZone.getTimeZone(ruleService.getRules().getTimezone()).toZoneId());
+    }
+}
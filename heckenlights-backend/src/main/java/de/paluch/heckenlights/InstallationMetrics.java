@@ -0,0 +1,50 @@
+package de.paluch.heckenlights;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exposes the metrics of additional {@link Installation installations} on the metrics endpoint, prefixed with
+ * {@code installation.<name>.}.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@RequiredArgsConstructor
+public class InstallationMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "installation.";
+
+    @NonNull
+    Installations installations;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+
+        List<Metric<?>> metrics = new ArrayList<>();
+
+        for (Installation installation : installations.getInstallations()) {
+
+            if (installation.isDefault()) {
+                continue;
+            }
+
+            String prefix = PREFIX + installation.getName() + ".";
+            for (PublicMetrics publicMetrics : installation.getContext().getBeansOfType(PublicMetrics.class).values()) {
+                for (Metric<?> metric : publicMetrics.metrics()) {
+                    metrics.add(new Metric<>(prefix + metric.getName(), metric.getValue(), metric.getTimestamp()));
+                }
+            }
+        }
+
+        return metrics;
+    }
+}
@@ -0,0 +1,207 @@
+package de.paluch.heckenlights;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.regex.Pattern;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.mongodb.MongoClient;
+
+import de.paluch.heckenlights.application.LeaderElection;
+import de.paluch.heckenlights.application.LeadershipEvent;
+import de.paluch.heckenlights.application.MidiAnalysisCache;
+import de.paluch.heckenlights.application.ReadMidiUpload;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Light installations hosted by this backend. The application context serves the {@link #DEFAULT default}
+ * installation, each installation listed in {@code installations} runs in its own application context with its own
+ * queue, rules, relay client and MongoDB database. Installations share the MongoDB and relay connection pools, the
+ * queue scheduler threads, the MIDI analysis cache and the leader election.
+ * <p>
+ * Installation properties are taken from {@code installations.<name>.*} and fall back to the application properties.
+ * {@code midirelay.url}, {@code rules.location} and {@code spring.data.mongodb.database} must be set per installation.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Slf4j
+public class Installations {
+
+    public static final String DEFAULT = "default";
+    public static final String PREFIX = "installations.";
+
+    private static final Pattern NAME = Pattern.compile("[a-z0-9\\-]+");
+    private static final List<String> REQUIRED = Arrays.asList("midirelay.url", "rules.location",
+            "spring.data.mongodb.database");
+    private static final List<Class<?>> SHARED = Arrays.asList(MongoClient.class, CloseableHttpAsyncClient.class,
+            ScheduledExecutorService.class, MidiAnalysisCache.class, ReadMidiUpload.class, LeaderElection.class);
+
+    private final ApplicationContext applicationContext;
+    private final ConfigurableEnvironment environment;
+    private final List<String> names;
+
+    private volatile Map<String, Installation> installations = Collections.emptyMap();
+
+    @Autowired
+    public Installations(ApplicationContext applicationContext, ConfigurableEnvironment environment,
+            @Value("${installations:}") String[] names) {
+
+        this.applicationContext = applicationContext;
+        this.environment = environment;
+        this.names = Arrays.asList(names);
+
+        for (String name : this.names) {
+            if (!NAME.matcher(name).matches() || DEFAULT.equals(name)) {
+                throw new IllegalArgumentException("Invalid installation name " + name);
+            }
+        }
+    }
+
+    @EventListener
+    public void start(ContextRefreshedEvent event) {
+
+        if (event.getApplicationContext() != applicationContext || !installations.isEmpty()) {
+            return;
+        }
+
+        Map<String, Installation> started = new LinkedHashMap<>();
+        started.put(DEFAULT, new Installation(DEFAULT, applicationContext));
+
+        try {
+            for (String name : names) {
+                started.put(name, new Installation(name, createContext(name)));
+                log.info("Started installation " + name);
+            }
+        } catch (RuntimeException e) {
+            close(started.values());
+            throw e;
+        }
+
+        installations = Collections.unmodifiableMap(started);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        Collection<Installation> stopped = installations.values();
+        installations = Collections.emptyMap();
+        close(stopped);
+    }
+
+    /**
+     * Installations run in separate contexts, forward leadership changes of the shared {@link LeaderElection}.
+     */
+    @EventListener
+    public void onLeadership(LeadershipEvent event) {
+
+        for (Installation installation : installations.values()) {
+            if (!installation.isDefault()) {
+                installation.getContext().publishEvent(event);
+            }
+        }
+    }
+
+    /**
+     * @param name
+     * @return the installation or {@literal null} if not hosted by this backend.
+     */
+    public Installation getInstallation(String name) {
+        return installations.get(name);
+    }
+
+    public Installation getDefault() {
+        return installations.get(DEFAULT);
+    }
+
+    /**
+     * @return all installations including the default installation.
+     */
+    public Collection<Installation> getInstallations() {
+        return installations.values();
+    }
+
+    private ConfigurableApplicationContext createContext(String name) {
+
+        StandardEnvironment installationEnvironment = new StandardEnvironment();
+        installationEnvironment.merge(environment);
+        installationEnvironment.getPropertySources().addFirst(new MapPropertySource(PREFIX + name, getProperties(name)));
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.setId(applicationContext.getId() + ":" + name);
+        context.setDisplayName("Installation " + name);
+        context.setEnvironment(installationEnvironment);
+
+        for (Class<?> type : SHARED) {
+            context.getBeanFactory().registerSingleton(StringUtils.uncapitalize(type.getSimpleName()),
+                    applicationContext.getBean(type));
+        }
+
+        context.register(InstallationConfiguration.class);
+        context.refresh();
+        return context;
+    }
+
+    Map<String, Object> getProperties(String name) {
+
+        String prefix = PREFIX + name + ".";
+        Map<String, Object> properties = new LinkedHashMap<>();
+
+        for (PropertySource<?> propertySource : environment.getPropertySources()) {
+            if (propertySource instanceof EnumerablePropertySource) {
+                for (String key : ((EnumerablePropertySource<?>) propertySource).getPropertyNames()) {
+                    if (key.startsWith(prefix) && !properties.containsKey(key.substring(prefix.length()))) {
+                        properties.put(key.substring(prefix.length()), environment.getProperty(key));
+                    }
+                }
+            }
+        }
+
+        for (String key : REQUIRED) {
+            if (!StringUtils.hasText((String) properties.get(key))) {
+                throw new IllegalStateException("Installation " + name + " requires " + prefix + key);
+            }
+        }
+
+        if (properties.get("spring.data.mongodb.database").equals(environment.getProperty("spring.data.mongodb.database"))) {
+            throw new IllegalStateException("Installation " + name + " must not share the database of the default installation");
+        }
+
+        return properties;
+    }
+
+    private static void close(Collection<Installation> installations) {
+
+        List<Installation> reverse = new ArrayList<>(installations);
+        Collections.reverse(reverse);
+
+        for (Installation installation : reverse) {
+            if (!installation.isDefault()) {
+                ((ConfigurableApplicationContext) installation.getContext()).close();
+            }
+        }
+    }
+}
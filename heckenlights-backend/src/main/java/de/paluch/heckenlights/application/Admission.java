@@ -0,0 +1,52 @@
+package de.paluch.heckenlights.application;
+
+import lombok.Getter;
+
+/**
+ * Upload admission passed through the {@link AdmissionChain}. Stages may reduce the number of tracks the submitter is
+ * allowed to enqueue.
+ *
+ * @author Mark Paluch
+ */
+@Getter
+public class Admission {
+
+    private final String externalSessionId;
+    private final String submissionHost;
+    private final byte[] content;
+    private final int requested;
+
+    private int allowance;
+    private int permits;
+
+    /**
+     * @param externalSessionId
+     * @param submissionHost
+     * @param content upload content, may be {@literal null} if the content is checked separately.
+     * @param requested number of tracks to enqueue.
+     */
+    public Admission(String externalSessionId, String submissionHost, byte[] content, int requested) {
+
+        this.externalSessionId = externalSessionId;
+        this.submissionHost = submissionHost;
+        this.content = content;
+        this.requested = requested;
+        this.allowance = requested;
+    }
+
+    /**
+     * Limit the number of tracks that may be enqueued.
+     *
+     * @param limit
+     */
+    public void limit(int limit) {
+        allowance = Math.min(allowance, limit);
+    }
+
+    /**
+     * @param permits quota permits acquired for this admission.
+     */
+    void setPermits(int permits) {
+        this.permits = permits;
+    }
+}
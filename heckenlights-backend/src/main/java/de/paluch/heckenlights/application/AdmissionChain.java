@@ -0,0 +1,104 @@
+package de.paluch.heckenlights.application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.springframework.stereotype.Component;
+
+import de.paluch.heckenlights.model.ContentTooLargeException;
+import de.paluch.heckenlights.model.OfflineException;
+import de.paluch.heckenlights.model.QuotaExceededException;
+import lombok.Value;
+
+/**
+ * Ordered chain of {@link AdmissionStage}s an upload has to pass before it is processed. The chain stops at the first
+ * rejecting stage and records per stage how often it checked and rejected and how long its checks took.
+ *
+ * @author Mark Paluch
+ */
+@Component
+public class AdmissionChain {
+
+    private final List<AdmissionStage> stages;
+    private final List<Counters> counters = new ArrayList<>();
+
+    public AdmissionChain(List<AdmissionStage> stages) {
+
+        this.stages = new ArrayList<>(stages);
+        this.stages.forEach(stage -> counters.add(new Counters()));
+    }
+
+    /**
+     * Run all stages.
+     *
+     * @param admission
+     * @return the number of tracks the submitter may enqueue, at least one.
+     */
+    public int admit(Admission admission)
+            throws QuotaExceededException, OfflineException, InvalidMidiDataException, ContentTooLargeException {
+
+        for (int i = 0; i < stages.size(); i++) {
+
+            AdmissionStage stage = stages.get(i);
+            Counters stageCounters = counters.get(i);
+            long start = System.nanoTime();
+
+            try {
+                stage.check(admission);
+            } catch (QuotaExceededException | OfflineException | InvalidMidiDataException | ContentTooLargeException
+                    | RuntimeException e) {
+
+                stageCounters.rejected.increment();
+                rollback(admission, i);
+                throw e;
+            } finally {
+                stageCounters.checked.increment();
+                stageCounters.nanos.add(System.nanoTime() - start);
+            }
+        }
+
+        return admission.getAllowance();
+    }
+
+    private void rollback(Admission admission, int rejectingStage) {
+
+        for (int i = rejectingStage - 1; i >= 0; i--) {
+            stages.get(i).rejected(admission);
+        }
+    }
+
+    /**
+     * @return statistics per stage in chain order.
+     */
+    public List<StageStatistics> getStatistics() {
+
+        List<StageStatistics> result = new ArrayList<>(stages.size());
+        for (int i = 0; i < stages.size(); i++) {
+
+            Counters stageCounters = counters.get(i);
+            result.add(new StageStatistics(stages.get(i).getName(), stageCounters.checked.sum(),
+                    stageCounters.rejected.sum(), stageCounters.nanos.sum()));
+        }
+
+        return result;
+    }
+
+    @Value
+    public static class StageStatistics {
+
+        String name;
+        long checked;
+        long rejected;
+        long totalNanos;
+    }
+
+    private static class Counters {
+
+        final LongAdder checked = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+}
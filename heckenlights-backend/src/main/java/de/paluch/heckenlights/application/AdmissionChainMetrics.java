@@ -0,0 +1,44 @@
+package de.paluch.heckenlights.application;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exposes {@link AdmissionChain} statistics on the metrics endpoint.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@RequiredArgsConstructor
+public class AdmissionChainMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "admission.";
+
+    @NonNull
+    AdmissionChain admissionChain;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+
+        List<Metric<?>> metrics = new ArrayList<>();
+
+        for (AdmissionChain.StageStatistics statistics : admissionChain.getStatistics()) {
+
+            String prefix = PREFIX + statistics.getName() + ".";
+            metrics.add(new Metric<>(prefix + "checked", statistics.getChecked()));
+            metrics.add(new Metric<>(prefix + "rejected", statistics.getRejected()));
+            metrics.add(new Metric<>(prefix + "time.mean.us",
+                    statistics.getChecked() == 0 ? 0 : statistics.getTotalNanos() / statistics.getChecked() / 1000.0));
+        }
+
+        return metrics;
+    }
+}
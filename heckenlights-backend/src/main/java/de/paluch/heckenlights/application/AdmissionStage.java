@@ -0,0 +1,37 @@
+package de.paluch.heckenlights.application;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import de.paluch.heckenlights.model.ContentTooLargeException;
+import de.paluch.heckenlights.model.OfflineException;
+import de.paluch.heckenlights.model.QuotaExceededException;
+
+/**
+ * Single check of the {@link AdmissionChain}. Stages are ordered by {@link org.springframework.core.annotation.Order},
+ * checks that work in memory come before checks that require I/O.
+ *
+ * @author Mark Paluch
+ */
+public interface AdmissionStage {
+
+    /**
+     * @return the stage name used for metrics.
+     */
+    String getName();
+
+    /**
+     * Check the admission. Rejects the admission by throwing an exception.
+     *
+     * @param admission
+     */
+    void check(Admission admission)
+            throws QuotaExceededException, OfflineException, InvalidMidiDataException, ContentTooLargeException;
+
+    /**
+     * Callback if a later stage rejected an admission this stage passed. Used to undo side effects.
+     *
+     * @param admission
+     */
+    default void rejected(Admission admission) {
+    }
+}
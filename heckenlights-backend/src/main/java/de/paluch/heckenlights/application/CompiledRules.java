@@ -0,0 +1,368 @@
+package de.paluch.heckenlights.application;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import de.paluch.heckenlights.model.Rule;
+import de.paluch.heckenlights.model.RuleState;
+import de.paluch.heckenlights.model.Rules;
+
+/**
+ * {@link Rules} compiled into a minute-of-week table. Each minute of the week maps to the rules whose time range and days
+ * cover that minute, in declaration order, so resolving a rule evaluates only the queue and duration conditions of these
+ * candidates.
+ * <p>
+ * Time ranges are compared by hour and minute as before: ranges include the "to" minute and do not wrap around
+ * midnight, a rule without "from" starts at midnight and a rule without "to" never matches. Rules without days apply to
+ * every day.
+ *
+ * @author Mark Paluch
+ */
+class CompiledRules {
+
+    static final int MINUTES_PER_DAY = 24 * 60;
+    static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+
+    private static final long MILLIS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long NONE = Long.MIN_VALUE;
+
+    /**
+     * Distinct candidate lists, referenced by {@link #slots}.
+     */
+    private final Candidate[][] candidates;
+
+    /**
+     * Index into {@link #candidates} per minute of the week, starting Monday 00:00.
+     */
+    private final int[] slots;
+
+    /**
+     * Minutes until the candidates change per minute of the week or {@literal -1} if they never change.
+     */
+    private final int[] minutesToChange;
+
+    /**
+     * Time windows of constant candidates over one week, contiguous and ordered by start.
+     */
+    private final Window[] windows;
+
+    private final Rules rules;
+    private final Rule fallback;
+
+    private CompiledRules(Rules rules, Candidate[][] candidates, int[] slots, Rule fallback) {
+
+        this.rules = rules;
+        this.candidates = candidates;
+        this.slots = slots;
+        this.minutesToChange = minutesToChange(slots);
+        this.windows = windows(slots, candidates, fallback);
+        this.fallback = fallback;
+    }
+
+    /**
+     * Compile {@link Rules}. The rules must not be modified afterwards.
+     *
+     * @param rules
+     * @return
+     * @throws IllegalArgumentException if the rules are invalid.
+     */
+    static CompiledRules compile(Rules rules) {
+
+        List<Rule> ruleList = rules.getRules();
+        List<Candidate> compiled = new ArrayList<>(ruleList.size());
+        for (Rule rule : ruleList) {
+
+            if (rules.getTimeunit() == null
+                    && (rule.getMaxPlaylistPlayedDuration() != null || rule.getMinLightsOnDuration() != null)) {
+                throw new IllegalArgumentException("Rules with durations require a timeunit");
+            }
+
+            compiled.add(new Candidate(rule, rules.getTimeunit()));
+        }
+
+        Map<List<Candidate>, Integer> distinct = new LinkedHashMap<>();
+        int[] slots = new int[MINUTES_PER_WEEK];
+
+        for (int slot = 0; slot < MINUTES_PER_WEEK; slot++) {
+
+            DayOfWeek day = DayOfWeek.of(slot / MINUTES_PER_DAY + 1);
+            int hour = (slot % MINUTES_PER_DAY) / 60;
+            int minute = slot % 60;
+
+            List<Candidate> matching = new ArrayList<>();
+            for (Candidate candidate : compiled) {
+                if (candidate.matches(day, hour, minute)) {
+                    matching.add(candidate);
+                }
+            }
+
+            Integer index = distinct.get(matching);
+            if (index == null) {
+                index = distinct.size();
+                distinct.put(matching, index);
+            }
+            slots[slot] = index;
+        }
+
+        Candidate[][] candidates = new Candidate[distinct.size()][];
+        for (Map.Entry<List<Candidate>, Integer> entry : distinct.entrySet()) {
+            candidates[entry.getValue()] = entry.getKey().toArray(new Candidate[entry.getKey().size()]);
+        }
+
+        return new CompiledRules(rules, candidates, slots,
+                new ResolveRule.FallbackRule(rules.getDefaultAction(), Rule.Counter.LightsOnDuration,
+                        Rule.Counter.PlaylistPlayedDuration));
+    }
+
+    /**
+     * @return the rules this table was compiled from.
+     */
+    Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * @param localMillis milliseconds since the epoch in local time.
+     * @return the minute of the week, starting Monday 00:00.
+     */
+    static int minuteOfWeek(long localMillis) {
+
+        long minutes = Math.floorDiv(localMillis, MILLIS_PER_MINUTE);
+        // 1970-01-01 was a Thursday
+        return (int) Math.floorMod(minutes + 3 * MINUTES_PER_DAY, MINUTES_PER_WEEK);
+    }
+
+    /**
+     * @param localMillis milliseconds since the epoch in local time.
+     * @param ruleState
+     * @return the first rule covering {@code localMillis} whose conditions match {@code ruleState} or the fallback rule.
+     */
+    Rule resolve(long localMillis, RuleState ruleState) {
+
+        for (Candidate candidate : candidates[slots[minuteOfWeek(localMillis)]]) {
+            if (candidate.matches(ruleState)) {
+                return candidate.rule;
+            }
+        }
+
+        return fallback;
+    }
+
+    /**
+     * @param localMillis milliseconds since the epoch in local time.
+     * @param ruleState
+     * @return milliseconds until the candidate rules change or a candidate requiring a minimal lights-on duration may
+     *         apply, {@literal -1} if neither happens.
+     */
+    long getMillisUntilChange(long localMillis, RuleState ruleState) {
+
+        int slot = minuteOfWeek(localMillis);
+        long result = -1;
+
+        if (minutesToChange[slot] != -1) {
+            result = minutesToChange[slot] * MILLIS_PER_MINUTE - Math.floorMod(localMillis, MILLIS_PER_MINUTE);
+        }
+
+        for (Candidate candidate : candidates[slots[slot]]) {
+
+            if (candidate.minLightsOnMs != NONE) {
+                long remaining = candidate.minLightsOnMs - ruleState.getLightsOnTimeMs();
+                if (remaining > 0) {
+                    result = result == -1 ? remaining : Math.min(result, remaining);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return time windows of constant candidates over one week, contiguous and ordered by start. The first window
+     *         starts with the first change of candidates in the week, windows crossing the end of the week end after
+     *         {@link #MINUTES_PER_WEEK}. A single window covers the whole week if the candidates never change.
+     */
+    List<Window> getWindows() {
+        return Collections.unmodifiableList(Arrays.asList(windows));
+    }
+
+    /**
+     * @param minuteOfWeek
+     * @return index of the window covering {@code minuteOfWeek} in {@link #getWindows()}.
+     */
+    int indexOfWindow(int minuteOfWeek) {
+
+        int minute = minuteOfWeek < windows[0].from ? minuteOfWeek + MINUTES_PER_WEEK : minuteOfWeek;
+
+        int low = 0;
+        int high = windows.length - 1;
+        while (low < high) {
+
+            int middle = (low + high + 1) >>> 1;
+            if (windows[middle].from <= minute) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    private static Window[] windows(int[] slots, Candidate[][] candidates, Rule fallback) {
+
+        int start = 0;
+        while (start < slots.length && slots[start] == slots[(start + slots.length - 1) % slots.length]) {
+            start++;
+        }
+
+        if (start == slots.length) {
+            return new Window[] { new Window(0, MINUTES_PER_WEEK, getActions(candidates[slots[0]], fallback)) };
+        }
+
+        List<Window> result = new ArrayList<>();
+        int from = start;
+        for (int minute = start + 1; minute <= start + slots.length; minute++) {
+
+            if (minute == start + slots.length || slots[minute % slots.length] != slots[from % slots.length]) {
+                result.add(new Window(from, minute, getActions(candidates[slots[from % slots.length]], fallback)));
+                from = minute;
+            }
+        }
+
+        return result.toArray(new Window[result.size()]);
+    }
+
+    /**
+     * @return the actions the candidates can resolve to, in order of precedence. Includes the fallback action unless a
+     *         candidate without conditions precedes it.
+     */
+    private static List<Rule.Action> getActions(Candidate[] candidates, Rule fallback) {
+
+        List<Rule.Action> actions = new ArrayList<>();
+
+        for (Candidate candidate : candidates) {
+
+            if (!actions.contains(candidate.rule.getAction())) {
+                actions.add(candidate.rule.getAction());
+            }
+
+            if (candidate.isUnconditional()) {
+                return Collections.unmodifiableList(actions);
+            }
+        }
+
+        if (!actions.contains(fallback.getAction())) {
+            actions.add(fallback.getAction());
+        }
+
+        return Collections.unmodifiableList(actions);
+    }
+
+    private static int[] minutesToChange(int[] slots) {
+
+        int[] result = new int[slots.length];
+
+        if (Arrays.stream(slots).distinct().count() == 1) {
+            Arrays.fill(result, -1);
+            return result;
+        }
+
+        // walk backwards twice to carry distances across the end of the week
+        int distance = 0;
+        for (int i = 2 * slots.length - 1; i >= 0; i--) {
+
+            int slot = i % slots.length;
+            distance = slots[slot] != slots[(slot + 1) % slots.length] ? 1 : distance + 1;
+            result[slot] = distance;
+        }
+
+        return result;
+    }
+
+    /**
+     * A rule with parsed time range and durations.
+     */
+    private static class Candidate {
+
+        final Rule rule;
+        final int hourFrom;
+        final int minuteFrom;
+        final int hourTo;
+        final int minuteTo;
+        final Boolean queueIsEmpty;
+        final long maxPlaylistPlayedMs;
+        final long minLightsOnMs;
+
+        Candidate(Rule rule, TimeUnit timeunit) {
+
+            this.rule = rule;
+            this.hourFrom = rule.getHourFrom();
+            this.minuteFrom = rule.getMinuteFrom();
+            this.hourTo = rule.getHourTo();
+            this.minuteTo = rule.getMinuteTo();
+            this.queueIsEmpty = rule.getQueueIsEmpty();
+            this.maxPlaylistPlayedMs = rule.getMaxPlaylistPlayedDuration() != null
+                    ? timeunit.toMillis(rule.getMaxPlaylistPlayedDuration()) : NONE;
+            this.minLightsOnMs = rule.getMinLightsOnDuration() != null
+                    ? timeunit.toMillis(rule.getMinLightsOnDuration()) : NONE;
+        }
+
+        boolean matches(DayOfWeek day, int hour, int minute) {
+
+            if (rule.getDays() != null && !rule.getDays().isEmpty() && !rule.getDays().contains(day)) {
+                return false;
+            }
+
+            boolean matchFrom = hourFrom < hour || (hourFrom == hour && minuteFrom <= minute);
+            boolean matchTo = hourTo > hour || (hourTo == hour && minuteTo >= minute);
+
+            return matchFrom && matchTo;
+        }
+
+        boolean matches(RuleState ruleState) {
+
+            if (queueIsEmpty != null && queueIsEmpty != (ruleState.getPlaylistSize() == 0)) {
+                return false;
+            }
+
+            if (maxPlaylistPlayedMs != NONE && maxPlaylistPlayedMs < ruleState.getPlaylistPlayedTimeMs()) {
+                return false;
+            }
+
+            return minLightsOnMs == NONE || ruleState.getLightsOnTimeMs() >= minLightsOnMs;
+        }
+
+        boolean isUnconditional() {
+            return queueIsEmpty == null && maxPlaylistPlayedMs == NONE && minLightsOnMs == NONE;
+        }
+    }
+
+    /**
+     * Minutes of the week in which the same candidates apply.
+     */
+    @lombok.Value
+    static class Window {
+
+        /**
+         * First minute of the week.
+         */
+        int from;
+
+        /**
+         * Minute of the week after the last minute, exceeds {@link #MINUTES_PER_WEEK} if the window crosses the end of
+         * the week.
+         */
+        int until;
+
+        /**
+         * Actions the candidates can resolve to.
+         */
+        List<Rule.Action> actions;
+    }
+}
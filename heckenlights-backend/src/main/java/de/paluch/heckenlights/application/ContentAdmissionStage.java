@@ -0,0 +1,48 @@
+package de.paluch.heckenlights.application;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import de.paluch.heckenlights.model.ContentTooLargeException;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Rejects oversized uploads and uploads without a MIDI header before the content is hashed or analyzed. Skipped if the
+ * admission carries no content.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Order(20)
+@RequiredArgsConstructor
+class ContentAdmissionStage implements AdmissionStage {
+
+    @NonNull
+    ReadMidiUpload readMidiUpload;
+
+    @Override
+    public String getName() {
+        return "content";
+    }
+
+    @Override
+    public void check(Admission admission) throws InvalidMidiDataException, ContentTooLargeException {
+
+        byte[] content = admission.getContent();
+        if (content == null) {
+            return;
+        }
+
+        if (content.length > readMidiUpload.getMaximumSize()) {
+            throw new ContentTooLargeException(
+                    "Upload exceeds the maximum size of " + readMidiUpload.getMaximumSize() + " bytes");
+        }
+
+        if (!MidiScanner.hasHeader(content)) {
+            throw new InvalidMidiDataException("Not a Standard MIDI File (missing MThd header)");
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package de.paluch.heckenlights.application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Throwables;
+
+import de.paluch.heckenlights.model.ContentTooLargeException;
+import de.paluch.heckenlights.model.EnqueueRequest;
+import de.paluch.heckenlights.model.EnqueueResult;
+import de.paluch.heckenlights.model.MidiAnalysis;
+import de.paluch.heckenlights.model.MidiContent;
+import de.paluch.heckenlights.model.OfflineException;
+import de.paluch.heckenlights.model.PlayStatus;
+import de.paluch.heckenlights.model.QuotaExceededException;
+import de.paluch.heckenlights.repositories.MidiContentService;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Enqueue multiple tracks of one submitter at once. Quota, queue limit and online state are evaluated once for the whole
+ * batch, the tracks are analyzed in parallel and accepted tracks are stored with a single bulk insert.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Slf4j
+public class EnqueueBatch {
+
+    private final EnqueueTrack enqueueTrack;
+    private final MidiAnalysisCache midiAnalysisCache;
+    private final MidiContentService midiContentService;
+    private final PlayCommandService playCommandService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ForkJoinPool pool;
+    private final int maximumSize;
+
+    @Autowired
+    public EnqueueBatch(EnqueueTrack enqueueTrack, MidiAnalysisCache midiAnalysisCache,
+            MidiContentService midiContentService, PlayCommandService playCommandService,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${enqueue.batch.parallelism:4}") int parallelism,
+            @Value("${enqueue.batch.maximumSize:50}") int maximumSize) {
+
+        this.enqueueTrack = enqueueTrack;
+        this.midiAnalysisCache = midiAnalysisCache;
+        this.midiContentService = midiContentService;
+        this.playCommandService = playCommandService;
+        this.eventPublisher = eventPublisher;
+        this.pool = new ForkJoinPool(parallelism);
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Enqueue a batch of tracks submitted by the same session and host. Tracks beyond the remaining quota or queue capacity
+     * are not enqueued and reported with {@link PlayStatus#QUOTA}.
+     *
+     * @param batch
+     * @return one result per track, in the order of {@code batch}.
+     * @throws QuotaExceededException if the submitter has no quota left or the queue is full.
+     * @throws OfflineException
+     */
+    public List<EnqueueResult> enqueueWithQuotaCheck(List<EnqueueRequest> batch)
+            throws QuotaExceededException, OfflineException {
+
+        if (batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        if (batch.size() > maximumSize) {
+            throw new IllegalArgumentException("Batch size " + batch.size() + " exceeds maximum of " + maximumSize);
+        }
+
+        EnqueueRequest first = batch.get(0);
+        int allowance;
+        try {
+            allowance = enqueueTrack.checkAdmission(first.getExternalSessionId(), first.getSubmissionHost(), null,
+                    batch.size());
+        } catch (InvalidMidiDataException | ContentTooLargeException e) {
+            // content is checked per file when reading the batch
+            throw new IllegalStateException(e);
+        }
+
+        log.info("Enqueuing batch of " + batch.size() + " tracks from " + first.getExternalSessionId() + "/"
+                + first.getSubmissionHost());
+
+        List<EnqueueResult> results = new ArrayList<>(batch.size());
+        List<EnqueueRequest> accepted = new ArrayList<>();
+        List<ObjectId> fileReferences = new ArrayList<>();
+
+        try {
+            List<MidiAnalysis> analyses = analyze(batch);
+
+            for (int i = 0; i < batch.size(); i++) {
+
+                EnqueueRequest enqueue = batch.get(i);
+                MidiAnalysis analysis = analyses.get(i);
+
+                if (!analysis.isAccepted()) {
+                    results.add(failed(analysis.getVerdict() == MidiAnalysis.Verdict.DURATION_EXCEEDED
+                            ? PlayStatus.DURATION_EXCEEDED : PlayStatus.ERROR, analysis.getReason()));
+                    continue;
+                }
+
+                if (accepted.size() == allowance) {
+                    results.add(failed(PlayStatus.QUOTA, "Quota or queue limit reached"));
+                    continue;
+                }
+
+                MidiContent content = enqueueTrack.prepare(enqueue, analysis);
+                accepted.add(enqueue);
+                fileReferences.add(content.getFileReference());
+
+                EnqueueResult result = new EnqueueResult();
+                result.setCommandId(enqueue.getCommandId());
+                result.setTrackName(enqueue.getTrackName());
+                results.add(result);
+            }
+
+            if (!accepted.isEmpty()) {
+                assignTimeToPlay(results, accepted, playCommandService.estimateTimeToPlayQueue(),
+                        playCommandService.getTrackGapSeconds());
+                playCommandService.storeEnqueueRequests(accepted, fileReferences);
+                eventPublisher.publishEvent(new WakeUpEvent(QueueScheduler.WakeReason.ENQUEUE));
+            }
+        } catch (RuntimeException e) {
+            accepted.forEach(enqueue -> midiContentService.release(enqueue.getContentHash()));
+            enqueueTrack.releaseAdmission(first.getExternalSessionId(), first.getSubmissionHost(), allowance);
+            throw e;
+        }
+
+        enqueueTrack.releaseAdmission(first.getExternalSessionId(), first.getSubmissionHost(),
+                allowance - accepted.size());
+
+        return results;
+    }
+
+    private List<MidiAnalysis> analyze(List<EnqueueRequest> batch) {
+
+        try {
+            return pool.submit(() -> batch.parallelStream().map(enqueue -> {
+
+                String hash = MidiContentService.hash(enqueue.getContent());
+                enqueue.setContentHash(hash);
+                return midiAnalysisCache.analyze(hash, enqueue.getContent());
+            }).collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Accepted tracks play in batch order after the tracks already enqueued.
+     */
+    private static void assignTimeToPlay(List<EnqueueResult> results, List<EnqueueRequest> accepted, int timeToPlay,
+            int gap) {
+
+        int index = 0;
+        for (EnqueueResult result : results) {
+
+            if (result.getPlayStatus() != null) {
+                continue;
+            }
+
+            result.setDurationToPlay(timeToPlay);
+            timeToPlay += accepted.get(index++).getDuration() + gap;
+        }
+    }
+
+    private static EnqueueResult failed(PlayStatus playStatus, String message) {
+
+        EnqueueResult result = new EnqueueResult();
+        result.setPlayStatus(playStatus);
+        result.setException(message);
+        return result;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,147 @@
+package de.paluch.heckenlights.application;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import de.paluch.heckenlights.model.ContentTooLargeException;
+import de.paluch.heckenlights.model.DurationExceededException;
+import de.paluch.heckenlights.model.EnqueueProgress;
+import de.paluch.heckenlights.model.EnqueueRequest;
+import de.paluch.heckenlights.model.EnqueueResult;
+import de.paluch.heckenlights.model.MidiAnalysis;
+import de.paluch.heckenlights.model.OfflineException;
+import de.paluch.heckenlights.model.PipelineFullException;
+import de.paluch.heckenlights.model.PlayStatus;
+import de.paluch.heckenlights.model.QuotaExceededException;
+import de.paluch.heckenlights.repositories.MidiContentService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Asynchronous enqueue: {@link #submit(EnqueueRequest)} runs only checks that do not require I/O and hands the upload
+ * to a bounded pool of workers that perform {@link EnqueueTrack#enqueueWithQuotaCheck(EnqueueRequest)}. The outcome can
+ * be polled by command id for a limited time.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Slf4j
+public class EnqueuePipeline {
+
+    private final EnqueueTrack enqueueTrack;
+    private final MidiAnalysisCache midiAnalysisCache;
+    private final GetOnlineState getOnlineState;
+    private final ThreadPoolExecutor executor;
+    private final Cache<String, EnqueueProgress> progress;
+
+    @Autowired
+    public EnqueuePipeline(EnqueueTrack enqueueTrack, MidiAnalysisCache midiAnalysisCache, GetOnlineState getOnlineState,
+            @Value("${enqueue.pipeline.workers:2}") int workers, @Value("${enqueue.pipeline.capacity:50}") int capacity) {
+
+        this.enqueueTrack = enqueueTrack;
+        this.midiAnalysisCache = midiAnalysisCache;
+        this.getOnlineState = getOnlineState;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                new ThreadFactoryBuilder().setNameFormat("enqueue-pipeline-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.progress = CacheBuilder.newBuilder().expireAfterWrite(15, TimeUnit.MINUTES).maximumSize(10000).build();
+    }
+
+    /**
+     * Admit an upload for asynchronous processing.
+     *
+     * @param enqueue
+     * @return the pending progress carrying the assigned command id.
+     * @throws InvalidMidiDataException if the upload is no MIDI file or known to be invalid.
+     * @throws DurationExceededException if the upload is known to exceed the duration limits.
+     * @throws OfflineException if the active rule does not accept uploads.
+     * @throws PipelineFullException if the pipeline has no capacity left.
+     */
+    public EnqueueProgress submit(EnqueueRequest enqueue)
+            throws InvalidMidiDataException, DurationExceededException, OfflineException, PipelineFullException {
+
+        if (!MidiScanner.hasHeader(enqueue.getContent())) {
+            throw new InvalidMidiDataException("Not a Standard MIDI File (missing MThd header)");
+        }
+
+        if (!getOnlineState.isOnlineByRule()) {
+            throw new OfflineException("System is offline");
+        }
+
+        String hash = MidiContentService.hash(enqueue.getContent());
+        MidiAnalysis analysis = midiAnalysisCache.getIfPresent(hash);
+        if (analysis != null) {
+            analysis.verify();
+        }
+
+        String commandId = UUID.randomUUID().toString();
+        enqueue.setCommandId(commandId);
+        enqueue.setContentHash(hash);
+
+        EnqueueProgress pending = EnqueueProgress.pending(commandId);
+        progress.put(commandId, pending);
+
+        try {
+            executor.execute(() -> process(enqueue));
+        } catch (RejectedExecutionException e) {
+            progress.invalidate(commandId);
+            throw new PipelineFullException("Enqueue pipeline is full, " + executor.getQueue().size() + " uploads waiting");
+        }
+
+        return pending;
+    }
+
+    /**
+     * @param commandId
+     * @return the progress or {@literal null} if unknown or expired.
+     */
+    public EnqueueProgress getProgress(String commandId) {
+        return progress.getIfPresent(commandId);
+    }
+
+    private void process(EnqueueRequest enqueue) {
+
+        String commandId = enqueue.getCommandId();
+
+        try {
+            EnqueueResult result = enqueueTrack.enqueueWithQuotaCheck(enqueue);
+            progress.put(commandId, EnqueueProgress.completed(result));
+        } catch (InvalidMidiDataException | ContentTooLargeException | IOException e) {
+            progress.put(commandId, EnqueueProgress.failed(commandId, PlayStatus.ERROR, e.getMessage()));
+        } catch (DurationExceededException e) {
+            progress.put(commandId, EnqueueProgress.failed(commandId, PlayStatus.DURATION_EXCEEDED, e.getMessage()));
+        } catch (QuotaExceededException e) {
+            progress.put(commandId, EnqueueProgress.failed(commandId, PlayStatus.QUOTA, e.getMessage()));
+        } catch (OfflineException e) {
+            progress.put(commandId, EnqueueProgress.failed(commandId, PlayStatus.OFFLINE, e.getMessage()));
+        } catch (RuntimeException e) {
+            log.error("Cannot enqueue " + enqueue.getFileName() + ": " + e.getMessage(), e);
+            progress.put(commandId, EnqueueProgress.failed(commandId, PlayStatus.ERROR, e.getMessage()));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Enqueue pipeline did not terminate, " + executor.getQueue().size() + " uploads discarded");
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,34 +1,24 @@
 package de.paluch.heckenlights.application;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.util.List;
 import java.util.UUID;
 
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MetaMessage;
-import javax.sound.midi.MidiEvent;
-import javax.sound.midi.MidiSystem;
-import javax.sound.midi.MidiUnavailableException;
-import javax.sound.midi.Sequence;
-import javax.sound.midi.Sequencer;
-import javax.sound.midi.Track;
-
-import org.bson.types.ObjectId;
-import org.springframework.stereotype.Component;
 
-import com.google.common.collect.ImmutableList;
-import com.google.common.io.Closer;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
 
+import de.paluch.heckenlights.model.ContentTooLargeException;
 import de.paluch.heckenlights.model.DurationExceededException;
 import de.paluch.heckenlights.model.EnqueueRequest;
 import de.paluch.heckenlights.model.EnqueueResult;
+import de.paluch.heckenlights.model.MidiAnalysis;
+import de.paluch.heckenlights.model.MidiContent;
 import de.paluch.heckenlights.model.OfflineException;
-import de.paluch.heckenlights.model.PlayCommandSummary;
 import de.paluch.heckenlights.model.PlayStatus;
 import de.paluch.heckenlights.model.QuotaExceededException;
 import de.paluch.heckenlights.model.RuleState;
+import de.paluch.heckenlights.repositories.MidiContentService;
 import de.paluch.heckenlights.repositories.PlayCommandService;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -45,54 +35,75 @@ public class EnqueueTrack {
 
     public static final String CONTENT_TYPE = "audio/midi";
 
-    private static Sequencer sequencer;
-
     private final static int MINIMAL_DURATION_SEC = 10;
     private final static int MAXIMAL_DURATION_SEC = 300;
-    private final static int QUOTA = 10;
-    private final static int LIMIT_ENEUQUED = 20;
-    private final static int QUOTA_MINUTES = 30;
 
     @NonNull
     PlayCommandService playCommandService;
 
     @NonNull
-    RuleState ruleState;
+    MidiContentService midiContentService;
 
     @NonNull
-    IsQueueOpen isQueueOpen;
+    MidiAnalysisCache midiAnalysisCache;
 
     @NonNull
-    GetOnlineState getOnlineState;
+    RuleState ruleState;
 
-    public EnqueueResult enqueueWithQuotaCheck(EnqueueRequest enqueue)
-            throws IOException, InvalidMidiDataException, DurationExceededException, QuotaExceededException, OfflineException {
+    @NonNull
+    AdmissionChain admissionChain;
 
-        int count = playCommandService.getEnquedCommandCount(enqueue.getExternalSessionId(), enqueue.getSubmissionHost(),
-                QUOTA_MINUTES);
-        if (count > QUOTA) {
-            throw new QuotaExceededException(
-                    "Quota limit of " + QUOTA + " for " + QUOTA_MINUTES + " exceeded by " + (count - QUOTA));
-        }
+    @NonNull
+    UploadRateLimiter uploadRateLimiter;
 
-        List<PlayCommandSummary> enqueuedCommands = playCommandService
-                .getListByPlayStatusOrderByCreated(ImmutableList.of(PlayStatus.ENQUEUED), 100);
-        if (enqueuedCommands.size() > LIMIT_ENEUQUED) {
-            throw new QuotaExceededException("Queue limit of " + LIMIT_ENEUQUED + " exceeded by " + (count - LIMIT_ENEUQUED));
-        }
+    @NonNull
+    ApplicationEventPublisher eventPublisher;
 
-        if (!getOnlineState.isOnline()) {
-            throw new OfflineException("System is offline");
-        }
+    public EnqueueResult enqueueWithQuotaCheck(EnqueueRequest enqueue)
+            throws IOException, InvalidMidiDataException, DurationExceededException, QuotaExceededException, OfflineException,
+            ContentTooLargeException {
 
-        if (!isQueueOpen.isQueueOpen()) {
-            throw new OfflineException("Queue closed");
-        }
+        checkAdmission(enqueue.getExternalSessionId(), enqueue.getSubmissionHost(), enqueue.getContent(), 1);
 
         log.info("Enqueuing " + enqueue.getFileName() + " from " + enqueue.getExternalSessionId() + "/"
                 + enqueue.getSubmissionHost());
 
-        return enqueueImpl(enqueue);
+        try {
+            return enqueueImpl(enqueue);
+        } catch (IOException | InvalidMidiDataException | DurationExceededException | RuntimeException e) {
+            releaseAdmission(enqueue.getExternalSessionId(), enqueue.getSubmissionHost(), 1);
+            throw e;
+        }
+    }
+
+    /**
+     * Run the {@link AdmissionChain} for a submitter. Granted uploads count against the quota, unused ones must be returned
+     * with {@link #releaseAdmission(String, String, int)}.
+     *
+     * @param externalSessionId
+     * @param submissionHost
+     * @param content upload content, may be {@literal null} if the content is checked per file.
+     * @param requested number of tracks to enqueue.
+     * @return the number of tracks the submitter may enqueue, at least one.
+     * @throws QuotaExceededException
+     * @throws OfflineException
+     * @throws InvalidMidiDataException
+     * @throws ContentTooLargeException
+     */
+    int checkAdmission(String externalSessionId, String submissionHost, byte[] content, int requested)
+            throws QuotaExceededException, OfflineException, InvalidMidiDataException, ContentTooLargeException {
+        return admissionChain.admit(new Admission(externalSessionId, submissionHost, content, requested));
+    }
+
+    /**
+     * Return admitted uploads that were not enqueued.
+     *
+     * @param externalSessionId
+     * @param submissionHost
+     * @param count
+     */
+    void releaseAdmission(String externalSessionId, String submissionHost, int count) {
+        uploadRateLimiter.release(externalSessionId, submissionHost, count);
     }
 
     public EnqueueResult populate(EnqueueRequest enqueue)
@@ -101,27 +112,26 @@ public class EnqueueTrack {
         return enqueueImpl(enqueue);
     }
 
+    /**
+     * Enqueue a track. The analysis is looked up by content hash so known files are neither scanned again nor, if rejected
+     * before, accepted. Known content is reused, new content is stored. A command id and content hash already assigned to
+     * {@code enqueue} are retained.
+     */
     private EnqueueResult enqueueImpl(EnqueueRequest enqueue)
             throws IOException, InvalidMidiDataException, DurationExceededException {
-        Closer closer = Closer.create();
-        try {
 
-            Sequence sequence = getSequence(closer, enqueue.getContent());
-            int durationInSecs = getDuration(sequence);
-            validateDuration(durationInSecs);
+        String hash = enqueue.getContentHash() != null ? enqueue.getContentHash()
+                : MidiContentService.hash(enqueue.getContent());
+        MidiAnalysis analysis = midiAnalysisCache.analyze(hash, enqueue.getContent());
+        analysis.verify();
 
-            enqueue.setDuration(durationInSecs);
+        MidiContent content = prepare(enqueue, analysis);
 
-            String id = UUID.randomUUID().toString();
+        try {
             int timeToPlay = playCommandService.estimateTimeToPlayQueue();
-            ObjectId fileReference = playCommandService.createFile(enqueue.getFileName(), CONTENT_TYPE, enqueue.getContent(),
-                    id);
-
-            enqueue.setTrackName(TrackNameUtil.getSequenceName(sequence).orElse(null));
-            enqueue.setPlayStatus(PlayStatus.ENQUEUED);
-            enqueue.setCommandId(id);
 
-            playCommandService.storeEnqueueRequest(enqueue, fileReference);
+            playCommandService.storeEnqueueRequest(enqueue, content.getFileReference());
+            eventPublisher.publishEvent(new WakeUpEvent(QueueScheduler.WakeReason.ENQUEUE));
 
             EnqueueResult result = new EnqueueResult();
             result.setDurationToPlay(timeToPlay);
@@ -129,16 +139,45 @@ public class EnqueueTrack {
             result.setTrackName(enqueue.getTrackName());
 
             return result;
-        } finally {
-            closer.close();
+        } catch (RuntimeException e) {
+            midiContentService.release(content.getHash());
+            throw e;
         }
     }
 
-    private Sequence getSequence(Closer closer, byte[] content) throws InvalidMidiDataException, IOException {
-        return MidiSystem.getSequence(closer.register(new ByteArrayInputStream(content)));
+    /**
+     * Acquire the content of an accepted track, storing it if new, and assign command id, duration and track name to
+     * {@code enqueue}. The caller is responsible to release the content if the track cannot be stored.
+     *
+     * @param enqueue
+     * @param analysis accepted analysis of the track.
+     * @return the acquired content.
+     */
+    MidiContent prepare(EnqueueRequest enqueue, MidiAnalysis analysis) {
+
+        MidiContent content = midiContentService.acquire(analysis.getHash());
+
+        if (content == null) {
+            content = midiContentService.create(analysis.getHash(), enqueue.getFileName(), CONTENT_TYPE,
+                    enqueue.getContent(), analysis.getDuration(), analysis.getTrackName());
+        }
+
+        enqueue.setDuration(content.getDuration());
+        enqueue.setTrackName(content.getTrackName());
+        enqueue.setContentHash(content.getHash());
+        enqueue.setPlayStatus(PlayStatus.ENQUEUED);
+        enqueue.setCommandId(enqueue.getCommandId() != null ? enqueue.getCommandId() : UUID.randomUUID().toString());
+
+        return content;
     }
 
-    private void validateDuration(int durationInSecs) throws DurationExceededException {
+    /**
+     * Validate the duration of a track.
+     *
+     * @param durationInSecs
+     * @throws DurationExceededException if the duration is out of the accepted range.
+     */
+    static void validateDuration(int durationInSecs) throws DurationExceededException {
         if (durationInSecs < MINIMAL_DURATION_SEC) {
             throw new DurationExceededException(
                     "Duration " + durationInSecs + " too short, min duration is: " + MINIMAL_DURATION_SEC);
@@ -149,58 +188,4 @@ public class EnqueueTrack {
                     "Duration " + durationInSecs + " too long, min duration is: " + MAXIMAL_DURATION_SEC);
         }
     }
-
-    private int getDuration(Sequence sequence) throws IOException, InvalidMidiDataException {
-        try {
-            // Create a sequencer for the sequence
-
-            Sequencer sequencer = getSequencer();
-            synchronized (this) {
-                sequencer.setSequence(sequence);
-                return (int) (sequencer.getMicrosecondLength() / 1000000.0);
-            }
-
-        } catch (MidiUnavailableException e) {
-            log.warn(e.getMessage(), e);
-            return -1;
-        }
-    }
-
-    private Sequencer getSequencer() throws MidiUnavailableException {
-        Sequencer sequencer = EnqueueTrack.sequencer;
-
-        if (sequencer == null) {
-            sequencer = MidiSystem.getSequencer();
-            if (!sequencer.isOpen()) {
-                sequencer.open();
-            }
-            EnqueueTrack.sequencer = sequencer;
-        }
-        return sequencer;
-    }
-
-    protected String getSequenceName(Sequence sequence) {
-        for (Track track : sequence.getTracks()) {
-            for (int i = 0; i < track.size(); i++) {
-                MidiEvent midiEvent = track.get(i);
-                if (midiEvent.getMessage() instanceof MetaMessage) {
-                    MidiMessageDetail detail = new MidiMessageDetail(midiEvent.getMessage());
-
-                    if (detail.getT2() == 3 || detail.getT2() == 6) {
-                        try {
-                            if (detail.getBytes()[0] == -1) {
-                                return new String(detail.getBytes(), 3, detail.getBytes().length - 3, "ASCII");
-                            }
-
-                            return new String(detail.getBytes(), "ASCII");
-                        } catch (UnsupportedEncodingException e) {
-                        }
-                    }
-
-                }
-            }
-        }
-
-        return null;
-    }
 }
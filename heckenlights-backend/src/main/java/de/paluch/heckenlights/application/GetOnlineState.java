@@ -37,6 +37,14 @@ public class GetOnlineState {
             return false;
         }
 
+        return isOnlineByRule();
+    }
+
+    /**
+     * @return {@literal true} if the active rule allows online operation. Does not consult the persistent online switch.
+     */
+    public boolean isOnlineByRule() {
+
         if (ruleState.getActiveAction() != null && ONLINE_ACTIONS.contains(ruleState.getActiveAction())) {
             return true;
         }
@@ -0,0 +1,144 @@
+package de.paluch.heckenlights.application;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.paluch.heckenlights.model.Rule;
+import de.paluch.heckenlights.model.Timeline;
+
+/**
+ * Upcoming rule transitions derived from the {@link CompiledRules compiled rule table}. The timeline covers one week
+ * and is computed once per rule reload and window: it is reused until the current window ends or the rules change.
+ *
+ * @author Mark Paluch
+ */
+@Component
+public class GetTimeline {
+
+    private final RuleService ruleService;
+    private final Clock clock;
+    private final long maxAgeSeconds;
+
+    private volatile Cached cached;
+
+    @Autowired
+    public GetTimeline(RuleService ruleService, Clock clock, @Value("${timeline.maxAgeSeconds:300}") long maxAgeSeconds) {
+
+        this.ruleService = ruleService;
+        this.clock = clock;
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * @return the timeline starting with the current window.
+     */
+    public Timeline getTimeline() {
+
+        CompiledRules rules = ruleService.getCompiledRules();
+        long now = clock.millis();
+        Cached current = cached;
+
+        if (current == null || current.rules != rules || now >= current.validUntil) {
+            current = cached = new Cached(rules, compute(rules, now, clock.getZone()));
+        }
+
+        return current.timeline;
+    }
+
+    /**
+     * @param timeline
+     * @return seconds a client may cache {@code timeline}: until its next transition, at most
+     *         {@code timeline.maxAgeSeconds} so clients pick up reloaded rules.
+     */
+    public long getMaxAgeSeconds(Timeline timeline) {
+
+        Date next = timeline.getNextTransition();
+        if (next == null) {
+            return maxAgeSeconds;
+        }
+
+        long remaining = TimeUnit.MILLISECONDS.toSeconds(next.getTime() - clock.millis());
+        return Math.max(0, Math.min(remaining, maxAgeSeconds));
+    }
+
+    static Timeline compute(CompiledRules rules, long now, ZoneId zone) {
+
+        List<CompiledRules.Window> windows = rules.getWindows();
+
+        if (windows.size() == 1) {
+            CompiledRules.Window window = windows.get(0);
+            return new Timeline(Collections.singletonList(new Timeline.Window(null, null, window.getActions(),
+                    getOnline(window.getActions()))));
+        }
+
+        LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(now), zone);
+        long localMillis = local.toInstant(ZoneOffset.UTC).toEpochMilli();
+        int minuteOfWeek = CompiledRules.minuteOfWeek(localMillis);
+
+        // window minutes are relative to the start of the week in which the first window starts
+        LocalDateTime base = local.truncatedTo(ChronoUnit.MINUTES).minusMinutes(minuteOfWeek);
+        if (minuteOfWeek < windows.get(0).getFrom()) {
+            base = base.minusWeeks(1);
+        }
+
+        int first = rules.indexOfWindow(minuteOfWeek);
+        List<Timeline.Window> result = new ArrayList<>(windows.size());
+
+        for (int i = 0; i < windows.size(); i++) {
+
+            int index = first + i;
+            CompiledRules.Window window = windows.get(index % windows.size());
+            LocalDateTime week = base.plusWeeks(index / windows.size());
+
+            Date from = toDate(week.plusMinutes(window.getFrom()), zone);
+            Date until = toDate(week.plusMinutes(window.getUntil()), zone);
+
+            result.add(new Timeline.Window(from, until, window.getActions(), getOnline(window.getActions())));
+        }
+
+        return new Timeline(Collections.unmodifiableList(result));
+    }
+
+    private static Timeline.Online getOnline(List<Rule.Action> actions) {
+
+        long online = actions.stream().filter(GetOnlineState.ONLINE_ACTIONS::contains).count();
+
+        if (online == actions.size()) {
+            return Timeline.Online.ONLINE;
+        }
+
+        return online == 0 ? Timeline.Online.OFFLINE : Timeline.Online.CONDITIONAL;
+    }
+
+    private static Date toDate(LocalDateTime local, ZoneId zone) {
+        return Date.from(local.atZone(zone).toInstant());
+    }
+
+    private static class Cached {
+
+        final CompiledRules rules;
+        final Timeline timeline;
+        final long validUntil;
+
+        Cached(CompiledRules rules, Timeline timeline) {
+
+            this.rules = rules;
+            this.timeline = timeline;
+            this.validUntil = timeline.getNextTransition() != null ? timeline.getNextTransition().getTime()
+                    : Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package de.paluch.heckenlights.application;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import de.paluch.heckenlights.repositories.LeaseDocument;
+import de.paluch.heckenlights.repositories.LeaseService;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lease-based leader election across backend instances sharing one MongoDB. Only the leader drives the relay through
+ * {@link QueueScheduler} and runs queue maintenance, all instances accept uploads and serve the playlist. The leader
+ * renews its lease every {@code cluster.renewSeconds} and stops acting as leader once the lease it holds locally runs
+ * out, so a failed leader is replaced after at most the lease duration plus one renew interval.
+ * <p>
+ * Without {@code cluster.enabled} this instance is always the leader and no lease is stored.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Slf4j
+public class LeaderElection {
+
+    public static final String LEASE_NAME = "leader";
+
+    private final LeaseService leaseService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Clock clock;
+    private final String owner;
+    private final boolean enabled;
+    private final long leaseMs;
+    private final long renewMs;
+    private final ScheduledExecutorService executor;
+
+    private final LongAdder elections = new LongAdder();
+    private final LongAdder takeovers = new LongAdder();
+    private final LongAccumulator maxFailoverMs = new LongAccumulator(Math::max, 0);
+    private volatile long lastFailoverMs;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean leader;
+    private volatile long leaseExpires;
+
+    @Autowired
+    public LeaderElection(LeaseService leaseService, PlayCommandService playCommandService,
+            ApplicationEventPublisher eventPublisher, Clock clock, @Value("${cluster.enabled:false}") boolean enabled,
+            @Value("${cluster.leaseSeconds:15}") int leaseSeconds, @Value("${cluster.renewSeconds:5}") int renewSeconds) {
+
+        if (renewSeconds >= leaseSeconds) {
+            throw new IllegalArgumentException("cluster.renewSeconds must be less than cluster.leaseSeconds");
+        }
+
+        this.leaseService = leaseService;
+        this.eventPublisher = eventPublisher;
+        this.clock = clock;
+        this.owner = playCommandService.getInstanceId();
+        this.enabled = enabled;
+        this.leaseMs = TimeUnit.SECONDS.toMillis(leaseSeconds);
+        this.renewMs = TimeUnit.SECONDS.toMillis(renewSeconds);
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("leader-election").setDaemon(true).build());
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void start() {
+
+        if (!enabled || !started.compareAndSet(false, true)) {
+            return;
+        }
+
+        renew();
+        executor.scheduleWithFixedDelay(this::renew, renewMs, renewMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        if (enabled && leader) {
+            leader = false;
+            try {
+                leaseService.release(LEASE_NAME, owner, new Date(clock.millis()));
+                log.info("Released leadership of " + owner);
+            } catch (RuntimeException e) {
+                log.warn("Cannot release leadership: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @return {@literal true} if this instance holds an unexpired lease or clustering is disabled.
+     */
+    public boolean isLeader() {
+        return !enabled || (leader && clock.millis() < leaseExpires);
+    }
+
+    /**
+     * @return {@literal true} if other instances may share the database.
+     */
+    public boolean isClustered() {
+        return enabled;
+    }
+
+    /**
+     * Acquire or renew the lease and publish a {@link LeadershipEvent} if leadership changed.
+     */
+    void renew() {
+
+        boolean wasLeader = isLeader();
+        boolean held = leader;
+        long now = clock.millis();
+
+        try {
+            LeaseService.Acquisition acquisition = leaseService.acquire(LEASE_NAME, owner, new Date(now), leaseMs);
+
+            if (acquisition.isAcquired()) {
+                leaseExpires = now + leaseMs;
+                leader = true;
+                if (!wasLeader) {
+                    elected(now, acquisition.getPrevious());
+                }
+            } else {
+                leader = false;
+            }
+        } catch (RuntimeException e) {
+            // keep leadership until the local lease runs out, another instance cannot take over earlier
+            log.warn("Cannot renew leadership: " + e.getMessage(), e);
+        }
+
+        if (leader && clock.millis() >= leaseExpires) {
+            leader = false;
+        }
+
+        if (held && !leader) {
+            log.warn("Lost leadership of " + owner);
+            eventPublisher.publishEvent(new LeadershipEvent(false));
+        }
+    }
+
+    private void elected(long now, LeaseDocument previous) {
+
+        elections.increment();
+
+        if (previous != null && !owner.equals(previous.getOwner()) && previous.getRenewed() != null) {
+
+            long failoverMs = now - previous.getRenewed().getTime();
+            takeovers.increment();
+            lastFailoverMs = failoverMs;
+            maxFailoverMs.accumulate(failoverMs);
+            log.info("Elected leader " + owner + ", took over from " + previous.getOwner() + " after " + failoverMs
+                    + " ms");
+        } else {
+            log.info("Elected leader " + owner);
+        }
+
+        eventPublisher.publishEvent(new LeadershipEvent(true));
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public long getElections() {
+        return elections.sum();
+    }
+
+    public long getTakeovers() {
+        return takeovers.sum();
+    }
+
+    /**
+     * @return time between the last renewal of the previous leader and the last takeover.
+     */
+    public long getLastFailoverMs() {
+        return lastFailoverMs;
+    }
+
+    public long getMaxFailoverMs() {
+        return maxFailoverMs.get();
+    }
+
+    /**
+     * @return upper bound for the time without a leader after a leader fails.
+     */
+    public long getFailoverBoundMs() {
+        return leaseMs + renewMs;
+    }
+}
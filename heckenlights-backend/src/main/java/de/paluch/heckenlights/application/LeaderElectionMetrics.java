@@ -0,0 +1,42 @@
+package de.paluch.heckenlights.application;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exposes {@link LeaderElection} state and failover times on the metrics endpoint.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@RequiredArgsConstructor
+public class LeaderElectionMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "cluster.";
+
+    @NonNull
+    LeaderElection leaderElection;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+
+        List<Metric<?>> metrics = new ArrayList<>();
+
+        metrics.add(new Metric<>(PREFIX + "leader", leaderElection.isLeader() ? 1 : 0));
+        metrics.add(new Metric<>(PREFIX + "elections", leaderElection.getElections()));
+        metrics.add(new Metric<>(PREFIX + "takeovers", leaderElection.getTakeovers()));
+        metrics.add(new Metric<>(PREFIX + "failover.last.ms", leaderElection.getLastFailoverMs()));
+        metrics.add(new Metric<>(PREFIX + "failover.max.ms", leaderElection.getMaxFailoverMs()));
+        metrics.add(new Metric<>(PREFIX + "failover.bound.ms", leaderElection.getFailoverBoundMs()));
+
+        return metrics;
+    }
+}
@@ -0,0 +1,14 @@
+package de.paluch.heckenlights.application;
+
+import lombok.Value;
+
+/**
+ * Application event published when this instance becomes or stops being the leader of the cluster.
+ *
+ * @author Mark Paluch
+ */
+@Value
+public class LeadershipEvent {
+
+    boolean leader;
+}
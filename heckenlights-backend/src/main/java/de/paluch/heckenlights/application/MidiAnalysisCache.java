@@ -0,0 +1,168 @@
+package de.paluch.heckenlights.application;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import de.paluch.heckenlights.model.DurationExceededException;
+import de.paluch.heckenlights.model.MidiAnalysis;
+import de.paluch.heckenlights.model.MidiInfo;
+import de.paluch.heckenlights.repositories.MidiAnalysisService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded LRU cache of {@link MidiAnalysis} results keyed by content hash. Misses fall back to the persistent store and
+ * scan the file only if it was never analyzed before. Rejections are cached as well so a rejected file is turned away
+ * without parsing it again.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Slf4j
+public class MidiAnalysisCache {
+
+    private final MidiAnalysisService midiAnalysisService;
+    private final int maximumSize;
+    private final Cache<String, MidiAnalysis> cache;
+
+    private final AtomicLong persistentHits = new AtomicLong();
+    private final AtomicLong analyses = new AtomicLong();
+
+    @Autowired
+    public MidiAnalysisCache(MidiAnalysisService midiAnalysisService,
+            @Value("${midiAnalysis.cache.maximumSize:10000}") int maximumSize) {
+
+        this.midiAnalysisService = midiAnalysisService;
+        this.maximumSize = maximumSize;
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * Warm the cache with the most recently used analyses.
+     */
+    @PostConstruct
+    public void initialize() {
+
+        List<MidiAnalysis> recent = midiAnalysisService.findRecent(maximumSize);
+
+        // oldest first so the most recent entries end up as most recently used
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            cache.put(recent.get(i).getHash(), recent.get(i));
+        }
+
+        log.info("Loaded " + recent.size() + " MIDI analyses");
+    }
+
+    /**
+     * Retrieve the analysis for {@code content}.
+     *
+     * @param hash content hash, see {@link de.paluch.heckenlights.repositories.MidiContentService#hash(byte[])}.
+     * @param content
+     * @return
+     */
+    public MidiAnalysis analyze(String hash, byte[] content) {
+
+        try {
+            return cache.get(hash, () -> load(hash, content));
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Retrieve a cached analysis without loading or scanning.
+     *
+     * @param hash
+     * @return the analysis or {@literal null} if not cached.
+     */
+    public MidiAnalysis getIfPresent(String hash) {
+        return cache.getIfPresent(hash);
+    }
+
+    private MidiAnalysis load(String hash, byte[] content) {
+
+        MidiAnalysis analysis = find(hash);
+        if (analysis != null) {
+            persistentHits.incrementAndGet();
+            return analysis;
+        }
+
+        analysis = analyze0(hash, content);
+        analyses.incrementAndGet();
+
+        try {
+            midiAnalysisService.save(analysis);
+        } catch (DataAccessException e) {
+            log.warn("Cannot store MIDI analysis " + hash + ": " + e.getMessage());
+        }
+
+        return analysis;
+    }
+
+    private MidiAnalysis find(String hash) {
+
+        try {
+            return midiAnalysisService.find(hash);
+        } catch (DataAccessException e) {
+            log.warn("Cannot retrieve MIDI analysis " + hash + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static MidiAnalysis analyze0(String hash, byte[] content) {
+
+        MidiInfo midiInfo;
+        try {
+            midiInfo = MidiScanner.scan(content);
+        } catch (InvalidMidiDataException e) {
+            return MidiAnalysis.invalid(hash, e.getMessage());
+        }
+
+        try {
+            EnqueueTrack.validateDuration(midiInfo.getDurationSeconds());
+        } catch (DurationExceededException e) {
+            return MidiAnalysis.durationExceeded(hash, midiInfo, e.getMessage());
+        }
+
+        return MidiAnalysis.accepted(hash, midiInfo);
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return number of in-memory misses served from the persistent store.
+     */
+    public long getPersistentHits() {
+        return persistentHits.get();
+    }
+
+    /**
+     * @return number of files that were scanned.
+     */
+    public long getAnalyses() {
+        return analyses.get();
+    }
+}
@@ -0,0 +1,42 @@
+package de.paluch.heckenlights.application;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.CacheStats;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exposes {@link MidiAnalysisCache} statistics on the metrics endpoint.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@RequiredArgsConstructor
+public class MidiAnalysisCacheMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "cache.midianalysis.";
+
+    @NonNull
+    MidiAnalysisCache midiAnalysisCache;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+
+        CacheStats stats = midiAnalysisCache.getStats();
+
+        return Arrays.<Metric<?>> asList(new Metric<>(PREFIX + "size", midiAnalysisCache.getSize()),
+                new Metric<>(PREFIX + "maximumSize", midiAnalysisCache.getMaximumSize()),
+                new Metric<>(PREFIX + "hit", stats.hitCount()), new Metric<>(PREFIX + "miss", stats.missCount()),
+                new Metric<>(PREFIX + "hit.ratio", stats.hitRate()),
+                new Metric<>(PREFIX + "eviction", stats.evictionCount()),
+                new Metric<>(PREFIX + "persistent.hit", midiAnalysisCache.getPersistentHits()),
+                new Metric<>(PREFIX + "analyzed", midiAnalysisCache.getAnalyses()));
+    }
+}
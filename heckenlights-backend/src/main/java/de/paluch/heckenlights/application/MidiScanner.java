@@ -0,0 +1,339 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.paluch.heckenlights.application;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Sequence;
+
+import de.paluch.heckenlights.model.MidiInfo;
+
+/**
+ * Single-pass scanner for Standard MIDI Files. Validates the chunk and event structure, calculates the duration and
+ * extracts the sequence name (first track name or marker text) directly from the file bytes without building a
+ * {@link Sequence}.
+ *
+ * @author Mark Paluch
+ */
+class MidiScanner {
+
+    private static final int MTHD = 0x4D546864;
+    private static final int MTRK = 0x4D54726B;
+
+    private static final int META = 0xFF;
+    private static final int META_TRACK_NAME = 0x03;
+    private static final int META_MARKER = 0x06;
+    private static final int META_TEMPO = 0x51;
+    private static final int META_END_OF_TRACK = 0x2F;
+    private static final int SYSEX = 0xF0;
+    private static final int SYSEX_CONTINUATION = 0xF7;
+
+    private final ByteBuffer buffer;
+    private final int limit;
+
+    private TempoMap tempoMap;
+    private int eventCount;
+    private int nameOffset = -1;
+    private int nameLength;
+
+    private MidiScanner(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+    }
+
+    /**
+     * Scan a Standard MIDI File.
+     *
+     * @param content
+     * @return
+     * @throws InvalidMidiDataException if the content is not a valid Standard MIDI File.
+     */
+    public static MidiInfo scan(byte[] content) throws InvalidMidiDataException {
+        return scan(ByteBuffer.wrap(content));
+    }
+
+    /**
+     * Scan a Standard MIDI File from the current position to the limit of {@code buffer}. The buffer position is not
+     * changed.
+     *
+     * @param buffer
+     * @return
+     * @throws InvalidMidiDataException if the content is not a valid Standard MIDI File.
+     */
+    public static MidiInfo scan(ByteBuffer buffer) throws InvalidMidiDataException {
+        return new MidiScanner(buffer).scan(buffer.position());
+    }
+
+    /**
+     * @param content
+     * @return {@literal true} if {@code content} starts with the Standard MIDI File header magic.
+     */
+    public static boolean hasHeader(byte[] content) {
+        return content != null && content.length >= 4 && ByteBuffer.wrap(content).getInt(0) == MTHD;
+    }
+
+    private MidiInfo scan(int position) throws InvalidMidiDataException {
+
+        require(position, 14, "File too short for a MIDI header");
+
+        if (buffer.getInt(position) != MTHD) {
+            throw new InvalidMidiDataException("Not a Standard MIDI File (missing MThd header)");
+        }
+
+        int headerLength = buffer.getInt(position + 4);
+        if (headerLength < 6) {
+            throw new InvalidMidiDataException("Invalid MIDI header length " + headerLength);
+        }
+
+        int format = readUnsignedShort(position + 8);
+        int trackCount = readUnsignedShort(position + 10);
+        int division = buffer.getShort(position + 12);
+
+        if (format > 2) {
+            throw new InvalidMidiDataException("Unsupported MIDI file format " + format);
+        }
+
+        if (trackCount == 0) {
+            throw new InvalidMidiDataException("MIDI file contains no tracks");
+        }
+
+        tempoMap = createTempoMap(division);
+
+        int chunk = position + 8 + headerLength;
+        int tracks = 0;
+        long tickLength = 0;
+
+        while (tracks < trackCount) {
+
+            if (limit - chunk < 8) {
+                throw new InvalidMidiDataException("Expected " + trackCount + " tracks, found " + tracks);
+            }
+
+            int type = buffer.getInt(chunk);
+            int length = buffer.getInt(chunk + 4);
+
+            if (length < 0) {
+                throw new InvalidMidiDataException("Invalid chunk length " + length);
+            }
+
+            int start = chunk + 8;
+            require(start, length, "Truncated chunk");
+
+            if (type == MTRK) {
+                tickLength = Math.max(tickLength, scanTrack(start, start + length, tracks));
+                tracks++;
+            }
+
+            chunk = start + length;
+        }
+
+        String trackName = nameOffset == -1 ? null : toString(nameOffset, nameLength);
+
+        return new MidiInfo(format, trackCount, eventCount, tickLength, tempoMap.getMicroseconds(tickLength), trackName);
+    }
+
+    /**
+     * Scan a single track and return its tick length.
+     */
+    private long scanTrack(int start, int end, int track) throws InvalidMidiDataException {
+
+        int position = start;
+        int runningStatus = 0;
+        long tick = 0;
+
+        while (position < end) {
+
+            long delta = 0;
+            for (int i = 0;; i++) {
+
+                if (i == 4) {
+                    throw new InvalidMidiDataException("Invalid variable-length quantity");
+                }
+
+                int b = readUnsignedByte(position++, end);
+                delta = (delta << 7) | (b & 0x7F);
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+
+            tick += delta;
+            eventCount++;
+
+            int status = readUnsignedByte(position, end);
+            if ((status & 0x80) == 0) {
+                if (runningStatus == 0) {
+                    throw new InvalidMidiDataException("Data byte without status at track " + track + ", tick " + tick);
+                }
+                status = runningStatus;
+            } else {
+                position++;
+            }
+
+            if (status == META) {
+
+                int type = readUnsignedByte(position++, end);
+                int length = readVariableLength(position, end);
+                position += variableLengthSize(position);
+
+                if (length > end - position) {
+                    throw new InvalidMidiDataException("Truncated meta event at track " + track + ", tick " + tick);
+                }
+
+                if (type == META_END_OF_TRACK) {
+                    return tick;
+                }
+
+                onMetaEvent(type, position, length, tick, track);
+                position += length;
+                continue;
+            }
+
+            if (status == SYSEX || status == SYSEX_CONTINUATION) {
+
+                int length = readVariableLength(position, end);
+                position += variableLengthSize(position) + length;
+
+                if (position > end) {
+                    throw new InvalidMidiDataException("Truncated system exclusive event at track " + track + ", tick " + tick);
+                }
+                continue;
+            }
+
+            if (status >= 0xF0) {
+                throw new InvalidMidiDataException("Unexpected status byte " + Integer.toHexString(status) + " at track "
+                        + track + ", tick " + tick);
+            }
+
+            runningStatus = status;
+            int command = status & 0xF0;
+            position += (command == 0xC0 || command == 0xD0) ? 1 : 2;
+
+            if (position > end) {
+                throw new InvalidMidiDataException("Truncated channel event at track " + track + ", tick " + tick);
+            }
+        }
+
+        return tick;
+    }
+
+    private void onMetaEvent(int type, int position, int length, long tick, int track) {
+
+        if (type == META_TEMPO && length == 3 && track == 0 && !tempoMap.isSmpte()) {
+            tempoMap.addTempoChange(tick, ((buffer.get(position) & 0xFF) << 16) | ((buffer.get(position + 1) & 0xFF) << 8)
+                    | (buffer.get(position + 2) & 0xFF));
+        }
+
+        if ((type == META_TRACK_NAME || type == META_MARKER) && nameOffset == -1 && hasText(position, length)) {
+            nameOffset = position;
+            nameLength = length;
+        }
+    }
+
+    private TempoMap createTempoMap(int division) throws InvalidMidiDataException {
+
+        if (division >= 0) {
+            if (division == 0) {
+                throw new InvalidMidiDataException("Invalid division of zero ticks per quarter note");
+            }
+            return new TempoMap(Sequence.PPQ, division);
+        }
+
+        int ticksPerFrame = division & 0xFF;
+        if (ticksPerFrame == 0) {
+            throw new InvalidMidiDataException("Invalid division of zero ticks per frame");
+        }
+
+        switch (-(byte) (division >> 8)) {
+            case 24:
+                return new TempoMap(Sequence.SMPTE_24, ticksPerFrame);
+            case 25:
+                return new TempoMap(Sequence.SMPTE_25, ticksPerFrame);
+            case 29:
+                return new TempoMap(Sequence.SMPTE_30DROP, ticksPerFrame);
+            case 30:
+                return new TempoMap(Sequence.SMPTE_30, ticksPerFrame);
+            default:
+                throw new InvalidMidiDataException("Unsupported SMPTE format " + (-(byte) (division >> 8)));
+        }
+    }
+
+    private int readVariableLength(int position, int end) throws InvalidMidiDataException {
+
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = readUnsignedByte(position + i, end);
+            value = (value << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new InvalidMidiDataException("Invalid variable-length quantity");
+    }
+
+    private int variableLengthSize(int position) {
+
+        int size = 1;
+        while ((buffer.get(position + size - 1) & 0x80) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private int readUnsignedByte(int position, int end) throws InvalidMidiDataException {
+
+        if (position >= end) {
+            throw new InvalidMidiDataException("Unexpected end of track");
+        }
+        return buffer.get(position) & 0xFF;
+    }
+
+    private int readUnsignedShort(int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+
+    private void require(int position, int length, String message) throws InvalidMidiDataException {
+        if (length > limit - position) {
+            throw new InvalidMidiDataException(message);
+        }
+    }
+
+    private boolean hasText(int position, int length) {
+
+        for (int i = 0; i < length; i++) {
+            if (!Character.isWhitespace(buffer.get(position + i) & 0xFF)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String toString(int position, int length) {
+
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.US_ASCII);
+        }
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
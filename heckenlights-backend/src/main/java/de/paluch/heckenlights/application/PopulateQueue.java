@@ -49,7 +49,12 @@ public class PopulateQueue {
                 model.setFileName(FilenameUtils.getName(file.getName()));
 
                 model.setCreated(new Date());
-                enqueueTrack.populate(model);
+
+                try {
+                    enqueueTrack.populate(model);
+                } catch (InvalidMidiDataException | DurationExceededException e) {
+                    log.warn("Skipping " + file + ": " + e.getMessage());
+                }
             }
         }
     }
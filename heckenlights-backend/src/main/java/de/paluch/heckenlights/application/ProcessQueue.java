@@ -2,23 +2,28 @@ package de.paluch.heckenlights.application;
 
 import java.io.IOException;
 import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.sound.midi.InvalidMidiDataException;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import de.paluch.heckenlights.client.MidiRelayClient;
-import de.paluch.heckenlights.client.PlayerStateRepresentation;
 import de.paluch.heckenlights.model.DurationExceededException;
 import de.paluch.heckenlights.model.PlayCommandSummary;
 import de.paluch.heckenlights.model.Rule;
 import de.paluch.heckenlights.model.RuleState;
 import de.paluch.heckenlights.model.TrackContent;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
 import de.paluch.heckenlights.repositories.PlayCommandService;
 import de.paluch.heckenlights.repositories.StateService;
-import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -26,26 +31,80 @@ import lombok.extern.slf4j.Slf4j;
  * @since 28.11.13 21:47
  */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class ProcessQueue {
 
-    @NonNull
-    MidiRelayClient client;
-    @NonNull
-    PlayCommandService playCommandService;
-    @NonNull
-    PopulateQueue populateQueue;
-    @NonNull
-    RuleState ruleState;
-    @NonNull
-    ResolveRule resolveRule;
-    @NonNull
-    StateService stateService;
-    @NonNull
-    Clock clock;
+    /**
+     * Gaps beyond this limit are pauses rather than the time to switch tracks.
+     */
+    private final static long MAX_TRACK_GAP_MS = 60000;
+
+    /**
+     * Time before the end of the playing track to start a staged track. The relay starts it once the playing track has
+     * finished.
+     */
+    private final static long START_LEAD_MS = 2000;
+
+    /**
+     * Time a claim outlasts the expected end of a track.
+     */
+    private final static long LEASE_GRACE_MS = TimeUnit.MINUTES.toMillis(2);
+
+    private final MidiRelayClient client;
+    private final PlayCommandService playCommandService;
+    private final PopulateQueue populateQueue;
+    private final RuleState ruleState;
+    private final ResolveRule resolveRule;
+    private final StateService stateService;
+    private final Clock clock;
+    private final boolean prestage;
+    private final boolean hashFirst;
+
+    private final LongAdder gaps = new LongAdder();
+    private final LongAdder gapMs = new LongAdder();
+    private final LongAdder staged = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private volatile long lastGapMs = -1;
+
+    // ids of claimed tracks in play order
+    private final Deque<String> claimed = new ArrayDeque<>();
 
     private long lastScanMs = -1;
+    private volatile Date lastTrackStarted;
+    private Date lastTrackEnd;
+    private volatile Date expectedEnd;
+
+    private PlayCommandSummary stagedCommand;
+
+    // rule and action the relay was last driven for, the rule state may have switched while following
+    private Rule drivenRule;
+    private Rule.Action drivenAction;
+
+    public ProcessQueue(MidiRelayClient client, PlayCommandService playCommandService, PopulateQueue populateQueue,
+            RuleState ruleState, ResolveRule resolveRule, StateService stateService, Clock clock, boolean prestage) {
+        this(client, playCommandService, populateQueue, ruleState, resolveRule, stateService, clock, prestage, false);
+    }
+
+    /**
+     * @param hashFirst offer the content hash to the relay first and upload a track only if the relay does not hold its
+     *            content.
+     */
+    @Autowired
+    public ProcessQueue(MidiRelayClient client, PlayCommandService playCommandService, PopulateQueue populateQueue,
+            RuleState ruleState, ResolveRule resolveRule, StateService stateService, Clock clock,
+            @Value("${midirelay.prestage:false}") boolean prestage,
+            @Value("${midirelay.hashFirst:false}") boolean hashFirst) {
+
+        this.client = client;
+        this.playCommandService = playCommandService;
+        this.populateQueue = populateQueue;
+        this.ruleState = ruleState;
+        this.resolveRule = resolveRule;
+        this.stateService = stateService;
+        this.clock = clock;
+        this.prestage = prestage;
+        this.hashFirst = hashFirst;
+    }
 
     public void processQueue() throws IOException, InvalidMidiDataException, DurationExceededException {
 
@@ -58,18 +117,66 @@ public class ProcessQueue {
         Rule rule = resolveRule.getRule();
         PlayerStateRepresentation state = client.getState();
 
+        if (state != null) {
+            observeTrackGap(state);
+            completeFinished(state);
+            expectedEnd = state.isRunning() ? state.getEstimatedEnd() : null;
+        }
+
         if (prematureExit(rule, state)) {
+
+            if (prestage && state != null && state.isRunning()
+                    && GetOnlineState.PLAYBACK_ACTIONS.contains(ruleState.getActiveAction())) {
+                prestage(state);
+            }
             return;
         }
 
+        stagedCommand = null;
+
         List<PlayCommandSummary> commands = playCommandService.getEnquedCommands();
         ruleState.setPlaylistSize(commands.size());
 
+        applyRule(rule, lastScanMs);
+
+        boolean ruleSwitched = !rule.equals(drivenRule);
+        boolean actionSwitched = drivenAction != rule.getAction();
+        drivenRule = rule;
+        drivenAction = rule.getAction();
+
+        if (ruleState.getActiveAction() == Rule.Action.PLAYLIST_AUTO_ENQEUE
+                || ruleState.getActiveAction() == Rule.Action.PLAYLIST) {
+            playlist(commands, ruleSwitched, actionSwitched);
+        }
+
+        if (ruleState.getActiveAction() == Rule.Action.LIGHTS_ON) {
+            lightsOn(ruleSwitched, actionSwitched);
+        }
+
+        if (ruleState.getActiveAction() == Rule.Action.LIGHTS_OFF || ruleState.getActiveAction() == Rule.Action.OFFLINE) {
+            lightsOff(ruleSwitched, actionSwitched);
+        }
+    }
+
+    /**
+     * Update the {@link RuleState} to the current rule without driving the relay. Instances that do not drive the relay
+     * keep their rule state current this way to admit uploads and report the online state.
+     */
+    public void resolveActiveRule() {
+
+        Rule rule = resolveRule.getRule();
+        if (rule != null) {
+            applyRule(rule, clock.millis());
+        }
+    }
+
+    private void applyRule(Rule rule, long now) {
+
         boolean ruleSwitched = false;
         boolean actionSwitched = false;
 
         if (ruleState.getActiveRule() == null || !rule.equals(ruleState.getActiveRule())) {
-            ruleState.setRuleActiveSince(lastScanMs);
+            ruleState.setRuleActiveSince(now);
             ruleState.setActiveRule(rule);
             ruleSwitched = true;
         }
@@ -84,19 +191,130 @@ public class ProcessQueue {
             resetCounters(rule);
             log.info("Switched to Rule with action " + ruleState.getActiveAction() + " (" + rule + ")");
         }
+    }
 
-        if (ruleState.getActiveAction() == Rule.Action.PLAYLIST_AUTO_ENQEUE
-                || ruleState.getActiveAction() == Rule.Action.PLAYLIST) {
-            playlist(commands, ruleSwitched, actionSwitched);
+    /**
+     * @return start of the last track seen playing as reported by the relay, {@literal null} if none was seen yet.
+     */
+    public Date getTrackStarted() {
+        return lastTrackStarted;
+    }
+
+    /**
+     * @return the expected end of the playing track, less the start lead if the next track is staged on the relay, or
+     *         {@literal null} if no track is playing.
+     */
+    public Date getExpectedEnd() {
+
+        Date end = expectedEnd;
+        if (end != null && stagedCommand != null) {
+            return new Date(end.getTime() - START_LEAD_MS);
         }
+        return end;
+    }
 
-        if (ruleState.getActiveAction() == Rule.Action.LIGHTS_ON) {
-            lightsOn(ruleSwitched, actionSwitched);
+    /**
+     * Upload the next track to the relay while the current track plays and start it shortly before the end of the current
+     * track so the relay can switch tracks without a gap. The track is claimed when it is started. No further track is
+     * staged until the relay plays the started track.
+     */
+    private void prestage(PlayerStateRepresentation state) throws IOException {
+
+        String playingId = state.getTrack() != null ? state.getTrack().getId() : null;
+
+        if (!claimed.isEmpty() && !claimed.getLast().equals(playingId)) {
+            return;
         }
 
-        if (ruleState.getActiveAction() == Rule.Action.LIGHTS_OFF || ruleState.getActiveAction() == Rule.Action.OFFLINE) {
-            lightsOff(ruleSwitched, actionSwitched);
+        if (stagedCommand == null) {
+
+            PlayCommandSummary next = null;
+            for (PlayCommandSummary command : playCommandService.getEnquedCommands()) {
+                if (!command.getId().equals(playingId)) {
+                    next = command;
+                    break;
+                }
+            }
+
+            if (next == null) {
+                return;
+            }
+
+            TrackContent trackContent = getTrack(next.getId());
+            if (trackContent == null) {
+                return;
+            }
+
+            log.info("Staging " + trackContent.getFilename() + ", duration " + next.getDuration() + " secs submitted by "
+                    + next.getSubmissionHost());
+            if (isHashFirst(trackContent)
+                    && client.stageCached(trackContent.getId(), trackContent.getFilename(), trackContent.getContentHash())) {
+                cacheHits.increment();
+            } else {
+                client.stage(trackContent.getId(), trackContent.getFilename(), getContent(trackContent));
+            }
+            stagedCommand = next;
+            staged.increment();
         }
+
+        Date end = state.getEstimatedEnd();
+        if (end != null && clock.millis() >= end.getTime() - START_LEAD_MS) {
+
+            String id = stagedCommand.getId();
+            long lease = end.getTime() - clock.millis() + TimeUnit.SECONDS.toMillis(stagedCommand.getDuration())
+                    + LEASE_GRACE_MS;
+            stagedCommand = null;
+
+            if (!playCommandService.claim(id, lease)) {
+                log.info("Staged track " + id + " is no longer enqueued");
+                return;
+            }
+
+            log.info("Starting staged track " + id);
+            try {
+                client.start(id);
+            } catch (RuntimeException e) {
+                playCommandService.release(id);
+                throw e;
+            }
+
+            claimed.addLast(id);
+        }
+    }
+
+    /**
+     * @return number of measured gaps between tracks.
+     */
+    public long getGaps() {
+        return gaps.sum();
+    }
+
+    /**
+     * @return sum of measured gaps between tracks in milliseconds.
+     */
+    public long getGapMs() {
+        return gapMs.sum();
+    }
+
+    /**
+     * @return the last measured gap between tracks in milliseconds or {@literal -1} if not measured yet.
+     */
+    public long getLastGapMs() {
+        return lastGapMs;
+    }
+
+    /**
+     * @return number of tracks staged on the relay.
+     */
+    public long getStaged() {
+        return staged.sum();
+    }
+
+    /**
+     * @return number of tracks the relay played or staged from its content cache without an upload.
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
     }
 
     private void resetCounters(Rule rule) {
@@ -118,6 +336,33 @@ public class ProcessQueue {
         }
     }
 
+    /**
+     * Measure the gap between the estimated end of a track and the start of the next track.
+     */
+    private void observeTrackGap(PlayerStateRepresentation state) {
+
+        if (!state.isRunning() || state.getStarted() == null) {
+            return;
+        }
+
+        if (!state.getStarted().equals(lastTrackStarted)) {
+
+            if (lastTrackEnd != null) {
+                long gap = state.getStarted().getTime() - lastTrackEnd.getTime();
+                if (gap >= 0 && gap <= MAX_TRACK_GAP_MS) {
+                    playCommandService.observeTrackGap(gap);
+                    gaps.increment();
+                    gapMs.add(gap);
+                    lastGapMs = gap;
+                }
+            }
+
+            lastTrackStarted = state.getStarted();
+        }
+
+        lastTrackEnd = state.getEstimatedEnd();
+    }
+
     private boolean prematureExit(Rule rule, PlayerStateRepresentation state) {
         if (rule == null) {
             log.warn("Rule is null");
@@ -167,12 +412,86 @@ public class ProcessQueue {
             }
 
         } else {
-            PlayCommandSummary playCommand = commands.get(0);
-            TrackContent trackContent = playCommandService.getTrackContent(playCommand.getId());
+            for (PlayCommandSummary playCommand : commands) {
+                if (play(playCommand)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Claim and play a track.
+     *
+     * @return {@literal false} if the track could not be claimed.
+     */
+    private boolean play(PlayCommandSummary playCommand) throws IOException {
+
+        long duration = TimeUnit.SECONDS.toMillis(playCommand.getDuration());
+        if (!playCommandService.claim(playCommand.getId(), duration + LEASE_GRACE_MS)) {
+            log.info("Track " + playCommand.getId() + " is no longer enqueued");
+            return false;
+        }
+
+        try {
+            TrackContent trackContent = getTrack(playCommand.getId());
             log.info("Triggering play of " + trackContent.getFilename() + ", duration " + playCommand.getDuration()
                     + " secs submitted by " + playCommand.getSubmissionHost());
-            client.play(trackContent.getId(), trackContent.getFilename(), trackContent.getContent());
-            playCommandService.setStateExecuted(trackContent.getId());
+            if (isHashFirst(trackContent)
+                    && client.playCached(trackContent.getId(), trackContent.getFilename(), trackContent.getContentHash())) {
+                cacheHits.increment();
+            } else {
+                client.play(trackContent.getId(), trackContent.getFilename(), getContent(trackContent));
+            }
+        } catch (IOException | RuntimeException e) {
+            playCommandService.release(playCommand.getId());
+            throw e;
+        }
+
+        claimed.addLast(playCommand.getId());
+        expectedEnd = new Date(clock.millis() + duration);
+        return true;
+    }
+
+    /**
+     * Retrieve a track to hand to the relay. With hash-first, the content is read only if the relay does not hold it.
+     */
+    private TrackContent getTrack(String id) throws IOException {
+        return hashFirst ? playCommandService.getTrack(id) : playCommandService.getTrackContent(id);
+    }
+
+    private boolean isHashFirst(TrackContent trackContent) {
+        return hashFirst && trackContent.getContentHash() != null;
+    }
+
+    private byte[] getContent(TrackContent trackContent) throws IOException {
+
+        if (trackContent.getContent() != null) {
+            return trackContent.getContent();
+        }
+
+        TrackContent withContent = playCommandService.getTrackContent(trackContent.getId());
+        if (withContent == null) {
+            throw new IllegalStateException("Play command " + trackContent.getId() + " was removed");
+        }
+
+        return withContent.getContent();
+    }
+
+    /**
+     * Complete claimed tracks the relay has finished: all tracks claimed before the playing track or all claimed tracks if
+     * the relay plays none of them.
+     */
+    private void completeFinished(PlayerStateRepresentation state) {
+
+        String playingId = state.isRunning() && state.getTrack() != null ? state.getTrack().getId() : null;
+
+        while (!claimed.isEmpty() && !claimed.getFirst().equals(playingId)) {
+
+            String id = claimed.removeFirst();
+            if (!playCommandService.complete(id)) {
+                log.warn("Claim on track " + id + " was lost before completion");
+            }
         }
     }
 
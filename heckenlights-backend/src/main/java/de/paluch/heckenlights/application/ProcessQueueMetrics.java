@@ -0,0 +1,38 @@
+package de.paluch.heckenlights.application;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exposes playback statistics of {@link ProcessQueue} on the metrics endpoint.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@RequiredArgsConstructor
+public class ProcessQueueMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "playback.";
+
+    @NonNull
+    ProcessQueue processQueue;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+
+        long gaps = processQueue.getGaps();
+
+        return Arrays.<Metric<?>> asList(new Metric<>(PREFIX + "gap.count", gaps),
+                new Metric<>(PREFIX + "gap.last.ms", processQueue.getLastGapMs()),
+                new Metric<>(PREFIX + "gap.mean.ms", gaps == 0 ? 0 : processQueue.getGapMs() / (double) gaps),
+                new Metric<>(PREFIX + "staged", processQueue.getStaged()),
+                new Metric<>(PREFIX + "cache.hits", processQueue.getCacheHits()));
+    }
+}
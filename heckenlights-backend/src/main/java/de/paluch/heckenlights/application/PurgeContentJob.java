@@ -0,0 +1,54 @@
+package de.paluch.heckenlights.application;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.springframework.context.ApplicationContext;
+
+import de.paluch.heckenlights.Installation;
+import de.paluch.heckenlights.Installations;
+import de.paluch.heckenlights.repositories.MidiContentService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Removes stored MIDI content that is no longer referenced by any play command. Runs on the {@link LeaderElection
+ * leader} only.
+ *
+ * @author Mark Paluch
+ */
+@DisallowConcurrentExecution
+@Slf4j
+public class PurgeContentJob implements Job {
+
+    private static final String APPLICATION_CONTEXT_KEY = "applicationContext";
+    private static final long GRACE_PERIOD_MS = TimeUnit.HOURS.toMillis(1);
+
+    @Override
+    public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+
+        try {
+            ApplicationContext context = (ApplicationContext) jobExecutionContext.getScheduler().getContext()
+                    .get(APPLICATION_CONTEXT_KEY);
+
+            if (!context.getBean(LeaderElection.class).isLeader()) {
+                return;
+            }
+
+            Date before = new Date(System.currentTimeMillis() - GRACE_PERIOD_MS);
+            for (Installation installation : context.getBean(Installations.class).getInstallations()) {
+                try {
+                    installation.getBean(MidiContentService.class).purgeOrphans(before);
+                } catch (Exception e) {
+                    log.warn(e.getMessage(), e);
+                }
+            }
+
+        } catch (Exception e) {
+            log.warn(e.getMessage(), e);
+        }
+    }
+}
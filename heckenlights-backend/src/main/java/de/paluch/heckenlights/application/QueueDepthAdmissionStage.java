@@ -0,0 +1,42 @@
+package de.paluch.heckenlights.application;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import de.paluch.heckenlights.model.QuotaExceededException;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Rejects uploads if the queue is full and limits the allowance to the free queue slots. Uses the in-memory queue depth.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Order(30)
+@RequiredArgsConstructor
+class QueueDepthAdmissionStage implements AdmissionStage {
+
+    public static final int LIMIT_ENQUEUED = 20;
+
+    @NonNull
+    PlayCommandService playCommandService;
+
+    @Override
+    public String getName() {
+        return "queue";
+    }
+
+    @Override
+    public void check(Admission admission) throws QuotaExceededException {
+
+        int enqueued = playCommandService.getEnqueuedCount();
+        if (enqueued > LIMIT_ENQUEUED) {
+            throw new QuotaExceededException(
+                    "Queue limit of " + LIMIT_ENQUEUED + " exceeded by " + (enqueued - LIMIT_ENQUEUED));
+        }
+
+        admission.limit(LIMIT_ENQUEUED + 1 - enqueued);
+    }
+}
@@ -0,0 +1,294 @@
+package de.paluch.heckenlights.application;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Event-driven scheduler for {@link ProcessQueue}. Instead of polling, the queue is processed when tracks were enqueued,
+ * when the playing track is expected to end, when the active rule may change and when a {@link WakeUpEvent} is published.
+ * A slow safety poll catches changes that are not signalled, such as state changes made directly in the database.
+ * If the relay pushes player events, the track end is signalled by a {@link WakeUpEvent} and checking the relay after
+ * the expected end of a track falls back to a heartbeat. This applies only while this instance receives the events, that
+ * is it received one since the playing track started.
+ * Installations share one executor, processing of one installation never runs concurrently and wake-ups during
+ * processing are coalesced into one follow-up run. Only the
+ * {@link LeaderElection leader} processes the queue, other instances only resolve the active rule so they admit uploads
+ * and report the online state like the leader. In a cluster, the leader reconciles its queue index before processing to
+ * pick up tracks enqueued on other instances.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Slf4j
+public class QueueScheduler {
+
+    /**
+     * Delay to check again if the relay still plays after the expected end of a track.
+     */
+    private final static long TRACK_END_RETRY_MS = 1000;
+
+    private final ProcessQueue processQueue;
+    private final ResolveRule resolveRule;
+    private final LeaderElection leaderElection;
+    private final PlayCommandService playCommandService;
+    private final Clock clock;
+    private final long safetyPollMs;
+    private final boolean push;
+    private final long heartbeatMillis;
+    private final ScheduledExecutorService executor;
+    private final Object processing = new Object();
+
+    private final Map<WakeReason, LongAdder> wakeUps = new EnumMap<>(WakeReason.class);
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder tickNanos = new LongAdder();
+    private final LongAccumulator maxTickNanos = new LongAccumulator(Math::max, 0);
+
+    private volatile long lastPlayerEventMs = -1;
+
+    private ScheduledFuture<?> next;
+    private long nextAt;
+    private boolean stopped;
+
+    public QueueScheduler(ProcessQueue processQueue, ResolveRule resolveRule, LeaderElection leaderElection,
+            PlayCommandService playCommandService, Clock clock, ScheduledExecutorService executor, int safetyPollSeconds) {
+        this(processQueue, resolveRule, leaderElection, playCommandService, clock, executor, safetyPollSeconds, false, 0);
+    }
+
+    @Autowired
+    public QueueScheduler(ProcessQueue processQueue, ResolveRule resolveRule, LeaderElection leaderElection,
+            PlayCommandService playCommandService, Clock clock, ScheduledExecutorService executor,
+            @Value("${queue.scheduler.safetyPollSeconds:15}") int safetyPollSeconds,
+            @Value("${midirelay.push.enabled:false}") boolean push,
+            @Value("${midirelay.push.heartbeatMillis:5000}") long heartbeatMillis) {
+
+        this.processQueue = processQueue;
+        this.resolveRule = resolveRule;
+        this.leaderElection = leaderElection;
+        this.playCommandService = playCommandService;
+        this.clock = clock;
+        this.safetyPollMs = TimeUnit.SECONDS.toMillis(safetyPollSeconds);
+        this.push = push;
+        this.heartbeatMillis = heartbeatMillis;
+        this.executor = executor;
+
+        for (WakeReason reason : WakeReason.values()) {
+            wakeUps.put(reason, new LongAdder());
+        }
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void start() {
+        wakeUp(WakeReason.STARTUP);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+
+        stopped = true;
+        if (next != null) {
+            next.cancel(false);
+            next = null;
+        }
+    }
+
+    @EventListener
+    public void onWakeUp(WakeUpEvent event) {
+        wakeUp(event.getReason());
+    }
+
+    @EventListener
+    public void onLeadership(LeadershipEvent event) {
+
+        if (event.isLeader()) {
+            wakeUp(WakeReason.ELECTED);
+        }
+    }
+
+    /**
+     * Process the queue as soon as possible.
+     *
+     * @param reason
+     */
+    public void wakeUp(WakeReason reason) {
+
+        if (reason == WakeReason.PLAYER_EVENT) {
+            lastPlayerEventMs = clock.millis();
+        }
+
+        schedule(new WakeUp(clock.millis(), reason));
+    }
+
+    /**
+     * Schedule a wake-up unless an earlier one is pending.
+     */
+    synchronized void schedule(WakeUp wakeUp) {
+
+        if (stopped) {
+            return;
+        }
+
+        if (next != null) {
+            if (nextAt <= wakeUp.getAt()) {
+                return;
+            }
+            next.cancel(false);
+        }
+
+        nextAt = wakeUp.getAt();
+        next = executor.schedule(() -> tick(wakeUp.getReason()), Math.max(0, wakeUp.getAt() - clock.millis()),
+                TimeUnit.MILLISECONDS);
+    }
+
+    void tick(WakeReason reason) {
+
+        synchronized (this) {
+            next = null;
+        }
+
+        if (!leaderElection.isLeader()) {
+            follow();
+            return;
+        }
+
+        wakeUps.get(reason).increment();
+
+        synchronized (processing) {
+
+            long start = System.nanoTime();
+
+            try {
+                if (leaderElection.isClustered()) {
+                    playCommandService.reconcileQueue();
+                }
+                processQueue.processQueue();
+            } catch (Exception e) {
+                log.warn(e.getMessage(), e);
+            } finally {
+                long duration = System.nanoTime() - start;
+                ticks.increment();
+                tickNanos.add(duration);
+                maxTickNanos.accumulate(duration);
+            }
+        }
+
+        try {
+            schedule(getNextWakeUp());
+        } catch (RuntimeException e) {
+            log.warn(e.getMessage(), e);
+            schedule(new WakeUp(clock.millis() + safetyPollMs, WakeReason.SAFETY_POLL));
+        }
+    }
+
+    /**
+     * Resolve the active rule without driving the relay and wake up again at the next possible rule change. Woken up by
+     * {@link LeadershipEvent} once elected.
+     */
+    private void follow() {
+
+        synchronized (processing) {
+            try {
+                processQueue.resolveActiveRule();
+            } catch (RuntimeException e) {
+                log.warn(e.getMessage(), e);
+            }
+        }
+
+        try {
+            long untilRuleChange = resolveRule.getMillisUntilChange();
+            long now = clock.millis();
+            schedule(untilRuleChange >= 0 && untilRuleChange < safetyPollMs
+                    ? new WakeUp(now + untilRuleChange, WakeReason.RULE_BOUNDARY)
+                    : new WakeUp(now + safetyPollMs, WakeReason.SAFETY_POLL));
+        } catch (RuntimeException e) {
+            log.warn(e.getMessage(), e);
+            schedule(new WakeUp(clock.millis() + safetyPollMs, WakeReason.SAFETY_POLL));
+        }
+    }
+
+    /**
+     * @return the earliest of the expected track end (plus the heartbeat if this instance receives player events), the
+     *         next possible rule change and the safety poll.
+     */
+    WakeUp getNextWakeUp() {
+
+        long now = clock.millis();
+        WakeUp wakeUp = new WakeUp(now + safetyPollMs, WakeReason.SAFETY_POLL);
+
+        Date expectedEnd = processQueue.getExpectedEnd();
+        if (expectedEnd != null) {
+
+            boolean pushed = isReceivingPlayerEvents();
+            long grace = pushed ? heartbeatMillis : 0;
+            long retry = pushed ? heartbeatMillis : TRACK_END_RETRY_MS;
+
+            wakeUp = earliest(wakeUp,
+                    new WakeUp(Math.max(expectedEnd.getTime() + grace, now + retry), WakeReason.TRACK_END));
+        }
+
+        long untilRuleChange = resolveRule.getMillisUntilChange();
+        if (untilRuleChange >= 0) {
+            wakeUp = earliest(wakeUp, new WakeUp(now + untilRuleChange, WakeReason.RULE_BOUNDARY));
+        }
+
+        return wakeUp;
+    }
+
+    private boolean isReceivingPlayerEvents() {
+
+        if (!push || lastPlayerEventMs == -1) {
+            return false;
+        }
+
+        Date started = processQueue.getTrackStarted();
+        return started != null && lastPlayerEventMs >= started.getTime();
+    }
+
+    private static WakeUp earliest(WakeUp current, WakeUp candidate) {
+        return candidate.getAt() < current.getAt() ? candidate : current;
+    }
+
+    public long getTicks() {
+        return ticks.sum();
+    }
+
+    public long getTickNanos() {
+        return tickNanos.sum();
+    }
+
+    public long getMaxTickNanos() {
+        return maxTickNanos.get();
+    }
+
+    public long getWakeUps(WakeReason reason) {
+        return wakeUps.get(reason).sum();
+    }
+
+    public enum WakeReason {
+        STARTUP, ENQUEUE, TRACK_END, PLAYER_EVENT, RULE_BOUNDARY, RULES_CHANGED, ELECTED, SAFETY_POLL;
+    }
+
+    @lombok.Value
+    static class WakeUp {
+
+        long at;
+        WakeReason reason;
+    }
+}
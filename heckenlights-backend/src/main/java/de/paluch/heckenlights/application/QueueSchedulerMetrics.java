@@ -0,0 +1,44 @@
+package de.paluch.heckenlights.application;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exposes {@link QueueScheduler} statistics on the metrics endpoint.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@RequiredArgsConstructor
+public class QueueSchedulerMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "queue.scheduler.";
+
+    @NonNull
+    QueueScheduler queueScheduler;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+
+        List<Metric<?>> metrics = new ArrayList<>();
+        long ticks = queueScheduler.getTicks();
+
+        metrics.add(new Metric<>(PREFIX + "ticks", ticks));
+        metrics.add(new Metric<>(PREFIX + "tick.time.mean.us", ticks == 0 ? 0 : queueScheduler.getTickNanos() / ticks / 1000.0));
+        metrics.add(new Metric<>(PREFIX + "tick.time.max.us", queueScheduler.getMaxTickNanos() / 1000.0));
+
+        for (QueueScheduler.WakeReason reason : QueueScheduler.WakeReason.values()) {
+            metrics.add(new Metric<>(PREFIX + "wakeup." + reason.name().toLowerCase(), queueScheduler.getWakeUps(reason)));
+        }
+
+        return metrics;
+    }
+}
@@ -0,0 +1,46 @@
+package de.paluch.heckenlights.application;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import de.paluch.heckenlights.model.QuotaExceededException;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Acquires upload quota for the submitter. Acquired permits are returned if a later stage rejects the admission.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Order(40)
+@RequiredArgsConstructor
+class QuotaAdmissionStage implements AdmissionStage {
+
+    @NonNull
+    UploadRateLimiter uploadRateLimiter;
+
+    @Override
+    public String getName() {
+        return "quota";
+    }
+
+    @Override
+    public void check(Admission admission) throws QuotaExceededException {
+
+        int granted = uploadRateLimiter.tryAcquire(admission.getExternalSessionId(), admission.getSubmissionHost(),
+                admission.getAllowance());
+        if (granted == 0) {
+            throw new QuotaExceededException("Quota limit of " + UploadRateLimiter.QUOTA + " for "
+                    + UploadRateLimiter.QUOTA_MINUTES + " minutes exceeded");
+        }
+
+        admission.setPermits(granted);
+        admission.limit(granted);
+    }
+
+    @Override
+    public void rejected(Admission admission) {
+        uploadRateLimiter.release(admission.getExternalSessionId(), admission.getSubmissionHost(), admission.getPermits());
+    }
+}
@@ -0,0 +1,113 @@
+package de.paluch.heckenlights.application;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.paluch.heckenlights.model.ContentTooLargeException;
+
+/**
+ * Reads an upload from a stream while it arrives. The declared length and the {@code MThd} header are checked before
+ * the body is consumed so oversized or non-MIDI uploads are cut off after a few bytes. The buffer never exceeds the
+ * maximum upload size.
+ *
+ * @author Mark Paluch
+ */
+@Component
+public class ReadMidiUpload {
+
+    private static final int HEADER_LENGTH = 4;
+    private static final int CHUNK_SIZE = 8192;
+
+    private final int maximumSize;
+
+    @Autowired
+    public ReadMidiUpload(@Value("${upload.maximumSize:262144}") int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Read a MIDI upload.
+     *
+     * @param input
+     * @param declaredLength the declared content length or {@literal -1} if unknown.
+     * @return the upload content.
+     * @throws IOException
+     * @throws InvalidMidiDataException if the upload does not start with a MIDI header.
+     * @throws ContentTooLargeException if the upload exceeds the maximum size.
+     */
+    public byte[] read(InputStream input, long declaredLength)
+            throws IOException, InvalidMidiDataException, ContentTooLargeException {
+
+        if (declaredLength > maximumSize) {
+            throw tooLarge(declaredLength);
+        }
+
+        int initialSize = declaredLength > HEADER_LENGTH ? (int) declaredLength : Math.min(CHUNK_SIZE, maximumSize);
+        byte[] buffer = new byte[Math.max(HEADER_LENGTH, initialSize)];
+        int length = fill(input, buffer, 0, HEADER_LENGTH);
+
+        if (length < HEADER_LENGTH || !MidiScanner.hasHeader(buffer)) {
+            throw new InvalidMidiDataException("Not a Standard MIDI File (missing MThd header)");
+        }
+
+        while (true) {
+
+            if (length == buffer.length) {
+
+                if (length == maximumSize) {
+                    if (input.read() == -1) {
+                        break;
+                    }
+                    throw tooLarge(-1);
+                }
+
+                buffer = Arrays.copyOf(buffer, Math.min(maximumSize, Math.max(buffer.length * 2, CHUNK_SIZE)));
+            }
+
+            int read = input.read(buffer, length, Math.min(CHUNK_SIZE, buffer.length - length));
+            if (read == -1) {
+                break;
+            }
+
+            length += read;
+        }
+
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    private static int fill(InputStream input, byte[] buffer, int offset, int length) throws IOException {
+
+        int total = 0;
+        while (total < length) {
+
+            int read = input.read(buffer, offset + total, length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+
+        return total;
+    }
+
+    private ContentTooLargeException tooLarge(long declaredLength) {
+
+        if (declaredLength == -1) {
+            return new ContentTooLargeException("Upload exceeds maximum size of " + maximumSize + " bytes");
+        }
+
+        return new ContentTooLargeException(
+                "Upload size of " + declaredLength + " bytes exceeds maximum size of " + maximumSize + " bytes");
+    }
+}
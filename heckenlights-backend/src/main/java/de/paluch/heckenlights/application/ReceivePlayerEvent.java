@@ -0,0 +1,97 @@
+package de.paluch.heckenlights.application;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import de.paluch.heckenlights.client.MidiRelayClient;
+import de.paluch.heckenlights.relay.PlayerEventRepresentation;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Receive player events pushed by the relay. The pushed state replaces the state held by {@link MidiRelayClient} and the
+ * {@link QueueScheduler} processes the queue right away, so the next track starts without waiting for the relay to be
+ * polled. Events are ignored unless {@code midirelay.push.enabled} is set.
+ * <p>
+ * The relay authenticates with the shared secret {@code midirelay.push.token}, events are rejected if no token is
+ * configured. Only the {@link LeaderElection leader} drives the relay, other instances do not accept events so the relay
+ * can retry against the leader.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Slf4j
+public class ReceivePlayerEvent {
+
+    public enum Outcome {
+        ACCEPTED, DISABLED, UNAUTHORIZED, NOT_LEADER
+    }
+
+    private final MidiRelayClient client;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LeaderElection leaderElection;
+    private final boolean enabled;
+    private final byte[] token;
+
+    @Autowired
+    public ReceivePlayerEvent(MidiRelayClient client, ApplicationEventPublisher eventPublisher,
+            LeaderElection leaderElection, @Value("${midirelay.push.enabled:false}") boolean enabled,
+            @Value("${midirelay.push.token:}") String token) {
+
+        this.client = client;
+        this.eventPublisher = eventPublisher;
+        this.leaderElection = leaderElection;
+        this.enabled = enabled;
+        this.token = StringUtils.hasText(token) ? token.getBytes(StandardCharsets.UTF_8) : null;
+
+        if (enabled && this.token == null) {
+            log.warn("midirelay.push.token is not set, rejecting all player events");
+        }
+    }
+
+    /**
+     * @param token token presented by the caller, may be {@literal null}.
+     * @param event
+     * @return the outcome, {@link Outcome#ACCEPTED} if the event was applied.
+     */
+    public Outcome receive(String token, PlayerEventRepresentation event) {
+
+        if (!enabled) {
+            return Outcome.DISABLED;
+        }
+
+        if (!isAuthorized(token)) {
+            return Outcome.UNAUTHORIZED;
+        }
+
+        if (event.getType() == null) {
+            throw new IllegalArgumentException("Event type must not be empty");
+        }
+
+        if (!leaderElection.isLeader()) {
+            return Outcome.NOT_LEADER;
+        }
+
+        log.debug("Received " + event.getType() + " " + event.getId());
+
+        client.update(event.getState());
+        eventPublisher.publishEvent(new WakeUpEvent(QueueScheduler.WakeReason.PLAYER_EVENT));
+        return Outcome.ACCEPTED;
+    }
+
+    private boolean isAuthorized(String presented) {
+
+        // constant-time comparison to not reveal the token through response times
+        return this.token != null && presented != null
+                && MessageDigest.isEqual(this.token, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+}
@@ -0,0 +1,68 @@
+package de.paluch.heckenlights.application;
+
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.springframework.context.ApplicationContext;
+
+import de.paluch.heckenlights.Installation;
+import de.paluch.heckenlights.Installations;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reconciles the in-memory queue index with MongoDB to pick up queue changes not made through this application and
+ * completes play commands whose claim has expired. Claims are expired by the {@link LeaderElection leader} only, the
+ * other instances adopt the gap between tracks the leader observes so their estimates match.
+ *
+ * @author Mark Paluch
+ */
+@DisallowConcurrentExecution
+@Slf4j
+public class ReconcileQueueJob implements Job {
+
+    private static final String APPLICATION_CONTEXT_KEY = "applicationContext";
+
+    @Override
+    public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+
+        try {
+            ApplicationContext context = (ApplicationContext) jobExecutionContext.getScheduler().getContext()
+                    .get(APPLICATION_CONTEXT_KEY);
+
+            boolean leader = context.getBean(LeaderElection.class).isLeader();
+
+            for (Installation installation : context.getBean(Installations.class).getInstallations()) {
+                reconcile(installation, leader);
+            }
+
+        } catch (Exception e) {
+            log.warn(e.getMessage(), e);
+        }
+    }
+
+    private void reconcile(Installation installation, boolean leader) {
+
+        try {
+            PlayCommandService playCommandService = installation.getBean(PlayCommandService.class);
+
+            if (leader) {
+
+                int expired = playCommandService.expireClaims();
+                if (expired != 0) {
+                    log.info("Completed " + expired + " play commands with expired claims in installation "
+                            + installation.getName());
+                }
+            } else {
+                playCommandService.reconcileTrackGap();
+            }
+
+            if (playCommandService.reconcileQueue()) {
+                installation.getContext().publishEvent(new WakeUpEvent(QueueScheduler.WakeReason.ENQUEUE));
+            }
+        } catch (Exception e) {
+            log.warn(e.getMessage(), e);
+        }
+    }
+}
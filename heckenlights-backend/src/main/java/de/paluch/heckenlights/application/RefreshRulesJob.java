@@ -7,7 +7,12 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.springframework.context.ApplicationContext;
 
+import de.paluch.heckenlights.Installation;
+import de.paluch.heckenlights.Installations;
+
 /**
+ * Polls for changed rules that are not watched by {@link RulesWatcher}, such as rules loaded from a URL.
+ *
  * @author <a href="mailto:mpaluch@paluch.biz">Mark Paluch</a>
  */
 @DisallowConcurrentExecution
@@ -24,14 +29,26 @@ public class RefreshRulesJob implements Job {
             ApplicationContext context = (ApplicationContext) jobExecutionContext.getScheduler().getContext()
                     .get(APPLICATION_CONTEXT_KEY);
 
-            RuleService rules = context.getBean(RuleService.class);
+            for (Installation installation : context.getBean(Installations.class).getInstallations()) {
+                refresh(installation);
+            }
 
-            if (rules.isChanged()) {
+        } catch (Exception e) {
+            log.warn(e.getMessage(), e);
+        }
+    }
 
-                log.info("Updating Rules");
+    private void refresh(Installation installation) {
+
+        try {
+            RuleService rules = installation.getBean(RuleService.class);
+
+            if (!installation.getBean(RulesWatcher.class).isWatching() && rules.isChanged()) {
+
+                log.info("Updating Rules of installation " + installation.getName());
                 rules.updateRules();
+                installation.getContext().publishEvent(new WakeUpEvent(QueueScheduler.WakeReason.RULES_CHANGED));
             }
-
         } catch (Exception e) {
             log.warn(e.getMessage(), e);
         }
@@ -1,8 +1,12 @@
 package de.paluch.heckenlights.application;
 
 import java.time.Clock;
-import java.time.LocalTime;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.stereotype.Component;
 
@@ -10,7 +14,6 @@ import com.google.common.collect.ImmutableSet;
 
 import de.paluch.heckenlights.model.Rule;
 import de.paluch.heckenlights.model.RuleState;
-import de.paluch.heckenlights.model.Rules;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 
@@ -30,69 +33,75 @@ public class ResolveRule {
     @NonNull
     Clock clock;
 
-    public Rule getRule() {
-
-        LocalTime zonedDateTime = LocalTime.now(clock);
+    private volatile ZoneOffsetWindow offsetWindow;
 
-        Rules rules = ruleService.getRules();
-
-        for (Rule rule : rules.getRules()) {
-            int hour = zonedDateTime.getHour();
-            int minute = zonedDateTime.getMinute();
+    /**
+     * Resolve the active rule. Rules are looked up in the {@link CompiledRules compiled rule table}, only the queue and
+     * duration conditions of the rules covering the current minute are evaluated.
+     *
+     * @return the active rule or a {@link FallbackRule} with the default action.
+     */
+    public Rule getRule() {
+        return ruleService.getCompiledRules().resolve(getLocalMillis(), ruleState);
+    }
 
-            boolean matchFrom = false;
-            boolean matchTo = false;
-            boolean matchQueueSize = false;
-            boolean matchPlayedDuration = false;
-            boolean matchLightsOnDuration = false;
+    /**
+     * Calculate the time until the rule resolution may change without a change of the queue, that is the next minute in
+     * which other rules cover the current time or the time until a rule requiring a minimal lights-on duration may apply.
+     *
+     * @return milliseconds until the next possible change or {@literal -1} if no rule depends on time.
+     */
+    public long getMillisUntilChange() {
+        return ruleService.getCompiledRules().getMillisUntilChange(getLocalMillis(), ruleState);
+    }
 
-            if (rule.getHourFrom() < hour || (rule.getHourFrom() == hour && rule.getMinuteFrom() <= minute)) {
-                matchFrom = true;
-            }
+    /**
+     * @return milliseconds since the epoch in the time zone of {@link #clock}.
+     */
+    private long getLocalMillis() {
 
-            if (rule.getHourTo() > hour || (rule.getHourTo() == hour && rule.getMinuteTo() >= minute)) {
-                matchTo = true;
-            }
+        long now = clock.millis();
+        ZoneOffsetWindow window = offsetWindow;
 
-            if (rule.getQueueIsEmpty() != null) {
-                if (rule.getQueueIsEmpty().booleanValue() && ruleState.getPlaylistSize() == 0) {
-                    matchQueueSize = true;
-                }
+        if (window == null || !window.contains(clock.getZone(), now)) {
+            window = offsetWindow = ZoneOffsetWindow.of(clock.getZone(), now);
+        }
 
-                if (!rule.getQueueIsEmpty().booleanValue() && ruleState.getPlaylistSize() != 0) {
-                    matchQueueSize = true;
-                }
-            } else {
-                matchQueueSize = true;
-            }
+        return now + window.offsetMillis;
+    }
 
-            if (rule.getMaxPlaylistPlayedDuration() != null) {
-                long ms = rules.getTimeunit().toMillis(rule.getMaxPlaylistPlayedDuration().longValue());
-                matchPlayedDuration = true;
-                if (ms < ruleState.getPlaylistPlayedTimeMs()) {
-                    matchPlayedDuration = false;
-                }
-            } else {
-                matchPlayedDuration = true;
-            }
+    /**
+     * Offset of a time zone between two transitions, avoids offset lookups per resolution.
+     */
+    private static class ZoneOffsetWindow {
+
+        final ZoneId zone;
+        final long from;
+        final long until;
+        final long offsetMillis;
+
+        ZoneOffsetWindow(ZoneId zone, long from, long until, long offsetMillis) {
+            this.zone = zone;
+            this.from = from;
+            this.until = until;
+            this.offsetMillis = offsetMillis;
+        }
 
-            if (rule.getMinLightsOnDuration() != null) {
-                long ms = rules.getTimeunit().toMillis(rule.getMinLightsOnDuration().longValue());
-                matchLightsOnDuration = false;
-                if (ruleState.getLightsOnTimeMs() >= ms) {
-                    matchLightsOnDuration = true;
-                }
-            } else {
-                matchLightsOnDuration = true;
-            }
+        static ZoneOffsetWindow of(ZoneId zone, long millis) {
 
-            if (matchFrom && matchQueueSize && matchTo && matchPlayedDuration && matchLightsOnDuration) {
-                return rule;
-            }
+            Instant instant = Instant.ofEpochMilli(millis);
+            ZoneRules rules = zone.getRules();
+            ZoneOffsetTransition previous = rules.previousTransition(instant.plusMillis(1));
+            ZoneOffsetTransition next = rules.nextTransition(instant);
 
+            return new ZoneOffsetWindow(zone, previous != null ? previous.toEpochSecond() * 1000 : Long.MIN_VALUE,
+                    next != null ? next.toEpochSecond() * 1000 : Long.MAX_VALUE,
+                    TimeUnit.SECONDS.toMillis(rules.getOffset(instant).getTotalSeconds()));
         }
 
-        return new FallbackRule(rules.getDefaultAction(), Rule.Counter.LightsOnDuration, Rule.Counter.PlaylistPlayedDuration);
+        boolean contains(ZoneId zone, long millis) {
+            return this.zone == zone && millis >= from && millis < until;
+        }
     }
 
     public static class FallbackRule extends Rule {
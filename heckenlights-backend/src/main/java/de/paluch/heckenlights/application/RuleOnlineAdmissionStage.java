@@ -0,0 +1,36 @@
+package de.paluch.heckenlights.application;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import de.paluch.heckenlights.model.OfflineException;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Rejects uploads outside the online hours of the active rule. Checked first as it covers most of the offline traffic
+ * without any I/O.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Order(10)
+@RequiredArgsConstructor
+class RuleOnlineAdmissionStage implements AdmissionStage {
+
+    @NonNull
+    GetOnlineState getOnlineState;
+
+    @Override
+    public String getName() {
+        return "rule";
+    }
+
+    @Override
+    public void check(Admission admission) throws OfflineException {
+
+        if (!getOnlineState.isOnlineByRule()) {
+            throw new OfflineException("System is offline");
+        }
+    }
+}
@@ -16,32 +16,39 @@
 package de.paluch.heckenlights.application;
 
 import java.io.IOException;
-import java.util.Collection;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
 
+import javax.xml.bind.DataBindingException;
 import javax.xml.bind.JAXB;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
-import de.paluch.heckenlights.model.Rule;
 import de.paluch.heckenlights.model.Rules;
 
 /**
+ * Holds the current rules as an immutable snapshot compiled at load time. Reloading parses, validates and compiles the
+ * rules before the snapshot is replaced, readers see either the previous or the new rules. Invalid rules leave the
+ * current rules in place.
+ *
  * @author Mark Paluch
  */
 @Component
 public class RuleService {
 
     private final Resource ruleLocation;
-    private final Rules rules = new Rules();
 
-    private long lastModified;
+    private volatile CompiledRules compiledRules;
+    private volatile long lastModified;
 
     public RuleService(@Value("${rules.location}") Resource ruleLocation) throws IOException {
 
         this.ruleLocation = ruleLocation;
-        this.lastModified = ruleLocation.lastModified();
 
         updateRules();
     }
@@ -54,23 +61,54 @@ public class RuleService {
         }
     }
 
-    public void updateRules() throws IOException {
+    /**
+     * Load, validate and compile the rules and publish them.
+     *
+     * @throws IOException if the rules cannot be read.
+     * @throws DataBindingException if the rules cannot be parsed.
+     * @throws IllegalArgumentException if the rules are invalid.
+     */
+    public synchronized void updateRules() throws IOException {
+
+        long modified = ruleLocation.lastModified();
+
+        Rules updated;
+        try (InputStream is = ruleLocation.getInputStream()) {
+            updated = JAXB.unmarshal(is, Rules.class);
+        }
+
+        if (updated.getTimezone() != null) {
+            ZoneId.of(updated.getTimezone());
+        }
 
-        Rules updated = JAXB.unmarshal(ruleLocation.getFile(), Rules.class);
-        lastModified = ruleLocation.lastModified();
-        updateRules(rules, updated);
+        updated.setRules(Collections.unmodifiableList(new ArrayList<>(updated.getRules())));
+        compiledRules = CompiledRules.compile(updated);
+        lastModified = modified;
     }
 
-    public final Rules getRules() {
-        return rules;
+    /**
+     * @return the current rules, must not be modified.
+     */
+    public Rules getRules() {
+        return compiledRules.getRules();
     }
 
-    private void updateRules(Rules instance, Rules updated) {
-        instance.getRules().clear();
-        instance.getRules().addAll(updated.getRules());
+    /**
+     * @return the rules file or {@literal null} if the rules are not loaded from the file system.
+     */
+    public Path getRulesFile() {
+
+        try {
+            return ruleLocation.getFile().toPath();
+        } catch (IOException e) {
+            return null;
+        }
+    }
 
-        instance.setDefaultAction(updated.getDefaultAction());
-        instance.setTimeunit(updated.getTimeunit());
-        instance.setTimezone(updated.getTimezone());
+    /**
+     * @return the rules compiled at load time.
+     */
+    CompiledRules getCompiledRules() {
+        return compiledRules;
     }
 }
@@ -0,0 +1,155 @@
+package de.paluch.heckenlights.application;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reloads the rules when the rules file changes, using a {@link WatchService} on its directory. Writes arriving within
+ * {@link #QUIET_MS} are coalesced into one reload. Rules not loaded from the file system are picked up by
+ * {@link RefreshRulesJob}.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RulesWatcher {
+
+    /**
+     * Time without further changes before the rules are reloaded, editors may write a file in several steps.
+     */
+    final static long QUIET_MS = 50;
+
+    @NonNull
+    RuleService ruleService;
+
+    @NonNull
+    ApplicationEventPublisher eventPublisher;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile WatchService watchService;
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void start() {
+
+        Path file = ruleService.getRulesFile();
+        if (file == null || !started.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            WatchService watchService = file.getFileSystem().newWatchService();
+            file.toAbsolutePath().getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+            this.watchService = watchService;
+        } catch (IOException e) {
+            log.warn("Cannot watch " + file + ", polling for changes: " + e.getMessage(), e);
+            return;
+        }
+
+        new ThreadFactoryBuilder().setNameFormat("rules-watcher-%d").setDaemon(true).build()
+                .newThread(() -> watch(file.getFileName())).start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+
+        WatchService watchService = this.watchService;
+        this.watchService = null;
+
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * @return {@literal true} if changes of the rules file are watched.
+     */
+    public boolean isWatching() {
+        return watchService != null;
+    }
+
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    private void watch(Path fileName) {
+
+        WatchService watchService = this.watchService;
+
+        try {
+            while (true) {
+
+                WatchKey key = watchService.take();
+                boolean changed = affects(key, fileName);
+
+                while (changed && (key = watchService.poll(QUIET_MS, TimeUnit.MILLISECONDS)) != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean affects(WatchKey key, Path fileName) {
+
+        boolean affected = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (fileName.equals(event.context())) {
+                affected = true;
+            }
+        }
+
+        key.reset();
+        return affected;
+    }
+
+    void reload() {
+
+        try {
+            ruleService.updateRules();
+            reloads.increment();
+            log.info("Updated Rules");
+            eventPublisher.publishEvent(new WakeUpEvent(QueueScheduler.WakeReason.RULES_CHANGED));
+        } catch (Exception e) {
+            failures.increment();
+            log.warn("Keeping current rules, cannot load changed rules: " + e.getMessage(), e);
+        }
+    }
+}
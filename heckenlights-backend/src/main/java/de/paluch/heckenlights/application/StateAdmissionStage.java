@@ -0,0 +1,40 @@
+package de.paluch.heckenlights.application;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import de.paluch.heckenlights.model.OfflineException;
+import de.paluch.heckenlights.repositories.StateService;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Checks the persistent online and queue switches. Checked last as it reads from MongoDB.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Order(50)
+@RequiredArgsConstructor
+class StateAdmissionStage implements AdmissionStage {
+
+    @NonNull
+    StateService stateService;
+
+    @Override
+    public String getName() {
+        return "state";
+    }
+
+    @Override
+    public void check(Admission admission) throws OfflineException {
+
+        if (!stateService.isOnline()) {
+            throw new OfflineException("System is offline");
+        }
+
+        if (!stateService.isQueueOpen()) {
+            throw new OfflineException("Queue closed");
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.paluch.heckenlights.application;
+
+import java.util.Arrays;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+/**
+ * Tempo map of a MIDI sequence to convert tick positions into microseconds. Works on PPQ and SMPTE division without a
+ * {@link javax.sound.midi.Sequencer} so it can be used concurrently from any thread. Instances are not thread-safe.
+ *
+ * @author Mark Paluch
+ */
+class TempoMap {
+
+    /**
+     * Tempo in microseconds per quarter note (120 bpm) until the first tempo change.
+     */
+    private static final int DEFAULT_TEMPO_MPQ = 500000;
+
+    private static final int META_TEMPO = 0x51;
+
+    private final float divisionType;
+    private final int resolution;
+
+    private long[] ticks = new long[8];
+    private int[] tempos = new int[8];
+    private int size;
+
+    TempoMap(float divisionType, int resolution) {
+
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Resolution must be greater than zero");
+        }
+
+        this.divisionType = divisionType;
+        this.resolution = resolution;
+    }
+
+    /**
+     * Create a {@link TempoMap} from {@link Sequence}. Tempo changes are read from the first track that carries the tempo map
+     * in format 0 and format 1 files, same as the {@link javax.sound.midi.Sequencer} does.
+     *
+     * @param sequence
+     * @return
+     */
+    static TempoMap of(Sequence sequence) {
+
+        TempoMap tempoMap = new TempoMap(sequence.getDivisionType(), sequence.getResolution());
+        Track[] tracks = sequence.getTracks();
+
+        if (tempoMap.isSmpte() || tracks.length == 0) {
+            return tempoMap;
+        }
+
+        Track track = tracks[0];
+        for (int i = 0; i < track.size(); i++) {
+
+            MidiMessage message = track.get(i).getMessage();
+            if (message instanceof MetaMessage && ((MetaMessage) message).getType() == META_TEMPO) {
+
+                byte[] data = ((MetaMessage) message).getData();
+                if (data.length == 3) {
+                    tempoMap.addTempoChange(track.get(i).getTick(), toTempo(data, 0));
+                }
+            }
+        }
+
+        return tempoMap;
+    }
+
+    /**
+     * Calculate the length of {@link Sequence} in microseconds.
+     *
+     * @param sequence
+     * @return
+     */
+    static long getMicrosecondLength(Sequence sequence) {
+        return of(sequence).getMicroseconds(sequence.getTickLength());
+    }
+
+    static int toTempo(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 16) | ((data[offset + 1] & 0xFF) << 8) | (data[offset + 2] & 0xFF);
+    }
+
+    /**
+     * Register a tempo change. Changes may be registered out of order, changes at the same tick are applied in registration
+     * order.
+     *
+     * @param tick
+     * @param microsecondsPerQuarterNote
+     */
+    void addTempoChange(long tick, int microsecondsPerQuarterNote) {
+
+        if (size == ticks.length) {
+            ticks = Arrays.copyOf(ticks, size * 2);
+            tempos = Arrays.copyOf(tempos, size * 2);
+        }
+
+        int index = size;
+        while (index > 0 && ticks[index - 1] > tick) {
+            ticks[index] = ticks[index - 1];
+            tempos[index] = tempos[index - 1];
+            index--;
+        }
+
+        ticks[index] = tick;
+        tempos[index] = microsecondsPerQuarterNote;
+        size++;
+    }
+
+    /**
+     * Convert a tick position into microseconds.
+     *
+     * @param tick
+     * @return
+     */
+    long getMicroseconds(long tick) {
+
+        if (isSmpte()) {
+            return (long) (tick * 1000000.0 / (divisionType * resolution));
+        }
+
+        // accumulate ticks * microseconds per quarter note and divide once to avoid rounding errors per tempo segment
+        long numerator = 0;
+        long lastTick = 0;
+        int tempo = DEFAULT_TEMPO_MPQ;
+
+        for (int i = 0; i < size && ticks[i] < tick; i++) {
+            numerator += (ticks[i] - lastTick) * tempo;
+            lastTick = ticks[i];
+            tempo = tempos[i];
+        }
+
+        numerator += (tick - lastTick) * tempo;
+
+        return numerator / resolution;
+    }
+
+    boolean isSmpte() {
+        return divisionType != Sequence.PPQ;
+    }
+
+    int getTempoChangeCount() {
+        return size;
+    }
+}
@@ -0,0 +1,227 @@
+package de.paluch.heckenlights.application;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import de.paluch.heckenlights.model.PlayCommandSummary;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import de.paluch.heckenlights.repositories.UploadQuotaService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sliding-window upload limiter per submitter (external session id and submission host). Each submitter has an
+ * immutable, sorted array of upload timestamps within the window that is replaced by compare-and-set so checks are
+ * lock-free and need no database access. Submitters are kept in a segmented cache that expires idle submitters.
+ * <p>
+ * With {@code cluster.enabled}, several instances accept uploads and the windows are kept in MongoDB through
+ * {@link UploadQuotaService} instead so a submitter gets its quota once and not once per instance.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@Slf4j
+public class UploadRateLimiter {
+
+    public final static int QUOTA = 10;
+    public final static int QUOTA_MINUTES = 30;
+
+    /**
+     * Uploads are rejected once more than {@link #QUOTA} uploads were stored, so one more upload is accepted.
+     */
+    private final static int PERMITS = QUOTA + 1;
+    private final static long WINDOW_MS = TimeUnit.MINUTES.toMillis(QUOTA_MINUTES);
+
+    private static final long[] EMPTY = new long[0];
+
+    private final PlayCommandService playCommandService;
+    private final UploadQuotaService uploadQuotaService;
+    private final Clock clock;
+    private final boolean clustered;
+    private final int permits;
+    private final long windowMs;
+    private final Cache<String, AtomicReference<long[]>> submitters;
+
+    @Autowired
+    public UploadRateLimiter(PlayCommandService playCommandService, UploadQuotaService uploadQuotaService, Clock clock,
+            @Value("${cluster.enabled:false}") boolean clustered) {
+        this(playCommandService, uploadQuotaService, clock, clustered, PERMITS, WINDOW_MS);
+    }
+
+    UploadRateLimiter(PlayCommandService playCommandService, Clock clock, int permits, long windowMs) {
+        this(playCommandService, null, clock, false, permits, windowMs);
+    }
+
+    UploadRateLimiter(PlayCommandService playCommandService, UploadQuotaService uploadQuotaService, Clock clock,
+            boolean clustered, int permits, long windowMs) {
+
+        this.playCommandService = playCommandService;
+        this.uploadQuotaService = uploadQuotaService;
+        this.clock = clock;
+        this.clustered = clustered;
+        this.permits = permits;
+        this.windowMs = windowMs;
+        this.submitters = CacheBuilder.newBuilder().concurrencyLevel(16).expireAfterAccess(windowMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Rebuild the windows from the commands stored within the window. Shared windows are kept in MongoDB already.
+     */
+    @PostConstruct
+    public void initialize() {
+
+        if (clustered) {
+            return;
+        }
+
+        long now = clock.millis();
+        List<PlayCommandSummary> commands = playCommandService.getCreatedBetween(new Date(now - windowMs), new Date(now));
+
+        for (PlayCommandSummary command : commands) {
+            if (command.getCreated() != null) {
+                record(key(command.getExternalSessionId(), command.getSubmissionHost()), command.getCreated().getTime(), now);
+            }
+        }
+
+        log.info("Rebuilt upload limits from " + commands.size() + " commands");
+    }
+
+    /**
+     * Acquire up to {@code requested} upload permits.
+     *
+     * @param externalSessionId
+     * @param submissionHost
+     * @param requested
+     * @return number of granted permits, {@literal 0} if the submitter exhausted its quota.
+     */
+    public int tryAcquire(String externalSessionId, String submissionHost, int requested) {
+
+        if (clustered) {
+            return uploadQuotaService.tryAcquire(key(externalSessionId, submissionHost), permits, requested,
+                    new Date(clock.millis()), windowMs);
+        }
+
+        AtomicReference<long[]> window = getWindow(key(externalSessionId, submissionHost));
+        long now = clock.millis();
+
+        while (true) {
+
+            long[] current = window.get();
+            int from = firstWithin(current, now);
+            int granted = Math.min(requested, permits - (current.length - from));
+
+            if (granted <= 0) {
+                return 0;
+            }
+
+            long[] next = Arrays.copyOfRange(current, from, current.length + granted);
+            Arrays.fill(next, current.length - from, next.length, now);
+
+            if (window.compareAndSet(current, next)) {
+                return granted;
+            }
+        }
+    }
+
+    /**
+     * Return permits that were not used, most recent permits first.
+     *
+     * @param externalSessionId
+     * @param submissionHost
+     * @param released
+     */
+    public void release(String externalSessionId, String submissionHost, int released) {
+
+        if (released <= 0) {
+            return;
+        }
+
+        if (clustered) {
+            uploadQuotaService.release(key(externalSessionId, submissionHost), released);
+            return;
+        }
+
+        AtomicReference<long[]> window = getWindow(key(externalSessionId, submissionHost));
+
+        while (true) {
+
+            long[] current = window.get();
+            long[] next = Arrays.copyOf(current, Math.max(0, current.length - released));
+
+            if (window.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param externalSessionId
+     * @param submissionHost
+     * @return number of permits available to the submitter.
+     */
+    public int getAvailable(String externalSessionId, String submissionHost) {
+
+        if (clustered) {
+            return uploadQuotaService.getAvailable(key(externalSessionId, submissionHost), permits,
+                    new Date(clock.millis()), windowMs);
+        }
+
+        long[] current = getWindow(key(externalSessionId, submissionHost)).get();
+        return permits - (current.length - firstWithin(current, clock.millis()));
+    }
+
+    private void record(String key, long timestamp, long now) {
+
+        AtomicReference<long[]> window = getWindow(key);
+        while (true) {
+
+            long[] current = window.get();
+            int from = firstWithin(current, now);
+            long[] next = Arrays.copyOfRange(current, from, current.length + 1);
+            next[next.length - 1] = timestamp;
+            Arrays.sort(next);
+
+            if (window.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    private int firstWithin(long[] timestamps, long now) {
+
+        long cutoff = now - windowMs;
+        int index = 0;
+        while (index < timestamps.length && timestamps[index] <= cutoff) {
+            index++;
+        }
+        return index;
+    }
+
+    private AtomicReference<long[]> getWindow(String key) {
+
+        try {
+            return submitters.get(key, () -> new AtomicReference<>(EMPTY));
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private static String key(String externalSessionId, String submissionHost) {
+        return externalSessionId + "/" + submissionHost;
+    }
+}
@@ -0,0 +1,14 @@
+package de.paluch.heckenlights.application;
+
+import lombok.Value;
+
+/**
+ * Application event to wake up the {@link QueueScheduler} because the queue or the state it depends on changed.
+ *
+ * @author Mark Paluch
+ */
+@Value
+public class WakeUpEvent {
+
+    QueueScheduler.WakeReason reason;
+}
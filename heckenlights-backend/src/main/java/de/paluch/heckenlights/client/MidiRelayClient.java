@@ -1,43 +1,70 @@
 package de.paluch.heckenlights.client;
 
-import java.util.concurrent.TimeUnit;
-
-import javax.ws.rs.Consumes;
-import javax.ws.rs.GET;
-import javax.ws.rs.HeaderParam;
-import javax.ws.rs.PUT;
-import javax.ws.rs.Path;
-import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.base.Throwables;
 
-import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
+import de.paluch.heckenlights.relay.MidiRelay;
+import de.paluch.heckenlights.relay.MidiRelayUnavailableException;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
 import lombok.extern.slf4j.Slf4j;
 
 /**
+ * Client for the midi-relay. Holds the last retrieved player state: {@link #getState()} returns it while it is fresh and
+ * otherwise retrieves the state, concurrent callers share a single request. {@link #getLatestState()} never waits for
+ * the relay, it returns the last known state and refreshes it in the background if it is no longer fresh. Commands that
+ * change the player state invalidate the held state.
+ * <p>
+ * Calls to the relay are non-blocking and bounded by the deadline of the {@link MidiRelay}, methods of this class that
+ * wait for the relay therefore return or fail within that deadline.
+ *
  * @author <a href="mailto:mpaluch@paluch.biz">Mark Paluch</a>
  * @since 01.12.13 20:52
  */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class MidiRelayClient {
 
-    @NonNull
-    MidiRelayClientProxy clientProxy;
+    private final MidiRelay relay;
+    private final Clock clock;
+    private final long freshMillis;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder staleServed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder pushed = new LongAdder();
+
+    private volatile Snapshot snapshot;
+
+    // guarded by this
+    private CompletableFuture<PlayerStateRepresentation> inFlight;
+    private long generation;
+
+    public MidiRelayClient(MidiRelay relay) {
+        this(relay, Clock.systemUTC(), 500);
+    }
 
-    private Cache<Long, PlayerStateRepresentation> semaphore = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES)
-            .build();
+    @Autowired
+    public MidiRelayClient(MidiRelay relay, Clock clock, @Value("${midirelay.state.freshMillis:500}") long freshMillis) {
+
+        this.relay = relay;
+        this.clock = clock;
+        this.freshMillis = freshMillis;
+    }
 
     public String getCurrentPlayId() {
 
         PlayerStateRepresentation state = getState();
-        if (state.isRunning() && state.getTrack() != null) {
+        if (state != null && state.isRunning() && state.getTrack() != null) {
             return state.getTrack().getId();
         }
 
@@ -47,62 +74,283 @@ public class MidiRelayClient {
     public int getRemainingTime() {
 
         PlayerStateRepresentation state = getState();
-        if (state.isRunning()) {
+        if (state != null && state.isRunning()) {
             return state.getEstimatedSecondsToPlay();
         }
 
         return 0;
     }
 
+    /**
+     * Retrieve the player state unless the held state is fresh. Waits for a request in progress instead of issuing
+     * another one.
+     *
+     * @return the player state or {@literal null} if the relay cannot be reached.
+     */
     public PlayerStateRepresentation getState() {
+
+        Snapshot current = snapshot;
+        if (current != null && current.isFresh(clock.millis(), freshMillis)) {
+            return current.state;
+        }
+
         try {
+            return refresh().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Return the last known player state without waiting for the relay. Triggers a refresh in the background if the
+     * state is no longer fresh.
+     *
+     * @return the last known player state or {@literal null} if the state was never retrieved.
+     */
+    public PlayerStateRepresentation getLatestState() {
 
-            long timeWindow = (System.currentTimeMillis() / 500);
-            PlayerStateRepresentation result = semaphore.getIfPresent(timeWindow);
-            if (result == null) {
-                result = clientProxy.getState();
-                semaphore.put(timeWindow, result);
+        Snapshot current = snapshot;
+        if (current == null || !current.isFresh(clock.millis(), freshMillis)) {
 
+            refresh();
+            if (current != null) {
+                staleServed.increment();
             }
-            return result;
-        } catch (Exception e) {
-            log.warn(e.getMessage());
-            return null;
         }
+
+        return current != null ? current.state : null;
+    }
+
+    /**
+     * Start a request for the player state unless one is in progress.
+     *
+     * @return the pending request, completes with {@literal null} if the relay cannot be reached.
+     */
+    private CompletableFuture<PlayerStateRepresentation> refresh() {
+
+        CompletableFuture<PlayerStateRepresentation> request;
+        long requestGeneration;
+
+        synchronized (this) {
+
+            if (inFlight != null) {
+                coalesced.increment();
+                return inFlight;
+            }
+
+            request = inFlight = new CompletableFuture<>();
+            requestGeneration = generation;
+        }
+
+        long started = clock.millis();
+        requests.increment();
+
+        CompletableFuture<PlayerStateRepresentation> response;
+        try {
+            response = relay.getState();
+        } catch (RuntimeException e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+
+        response.whenComplete((state, e) -> {
+
+            // rejected by the circuit breaker or bulkhead, the relay was not called
+            if (e != null && !(unwrap(e) instanceof MidiRelayUnavailableException)) {
+                failures.increment();
+                log.warn(unwrap(e).toString());
+            }
+
+            complete(request, requestGeneration, started, state);
+        });
+
+        return request;
+    }
+
+    private void complete(CompletableFuture<PlayerStateRepresentation> request, long requestGeneration, long started,
+            PlayerStateRepresentation state) {
+
+        synchronized (this) {
+
+            // results requested before an invalidation do not describe the current state
+            if (state != null && requestGeneration == generation) {
+                snapshot = new Snapshot(state, started);
+            }
+
+            if (inFlight == request) {
+                inFlight = null;
+            }
+        }
+
+        request.complete(state);
+    }
+
+    /**
+     * Hold a player state pushed by the relay. Requests in progress no longer update the held state.
+     *
+     * @param state the pushed state, {@literal null} to mark the held state as outdated.
+     */
+    public void update(PlayerStateRepresentation state) {
+
+        pushed.increment();
+
+        if (state == null) {
+            invalidate();
+            return;
+        }
+
+        synchronized (this) {
+
+            generation++;
+            inFlight = null;
+            snapshot = new Snapshot(state, clock.millis());
+        }
+    }
+
+    /**
+     * Mark the held state as outdated. Requests in progress no longer update the held state, the last known state remains
+     * available through {@link #getLatestState()}.
+     */
+    private synchronized void invalidate() {
+
+        generation++;
+        inFlight = null;
+
+        if (snapshot != null) {
+            snapshot = new Snapshot(snapshot.state, Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * @return number of state requests issued to the relay.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of callers that shared a request in progress.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of times {@link #getLatestState()} returned a state that was no longer fresh.
+     */
+    public long getStaleServed() {
+        return staleServed.sum();
+    }
+
+    /**
+     * @return number of player states pushed by the relay.
+     */
+    public long getPushed() {
+        return pushed.sum();
+    }
+
+    /**
+     * @return number of failed state requests, not counting requests rejected without calling the relay.
+     */
+    public long getFailures() {
+        return failures.sum();
     }
 
     public void play(String id, String fileName, byte[] body) {
-        clientProxy.play(id, fileName, body);
+        await(relay.play(id, fileName, body));
+        invalidate();
+    }
+
+    /**
+     * Upload a track to the relay without playing it. A previously staged track is replaced.
+     *
+     * @param id
+     * @param fileName
+     * @param body
+     */
+    public void stage(String id, String fileName, byte[] body) {
+        await(relay.stage(id, fileName, body));
+    }
+
+    /**
+     * Play a track the relay holds in its content cache.
+     *
+     * @param id
+     * @param fileName
+     * @param contentHash
+     * @return {@literal true} if the relay plays the track, {@literal false} if the track must be uploaded with
+     *         {@link #play(String, String, byte[])}.
+     */
+    public boolean playCached(String id, String fileName, String contentHash) {
+
+        boolean cached = await(relay.playCached(id, fileName, contentHash));
+        if (cached) {
+            invalidate();
+        }
+        return cached;
+    }
+
+    /**
+     * Stage a track the relay holds in its content cache.
+     *
+     * @param id
+     * @param fileName
+     * @param contentHash
+     * @return {@literal true} if the relay staged the track, {@literal false} if the track must be uploaded with
+     *         {@link #stage(String, String, byte[])}.
+     */
+    public boolean stageCached(String id, String fileName, String contentHash) {
+        return await(relay.stageCached(id, fileName, contentHash));
+    }
+
+    /**
+     * Start the staged track once the playing track has finished or immediately if the relay is idle.
+     *
+     * @param id
+     */
+    public void start(String id) {
+        await(relay.start(id));
+        invalidate();
     }
 
     public void switchOff() {
-        clientProxy.switchOff();
+        await(relay.switchOff());
+        invalidate();
     }
 
     public void switchOn() {
-        clientProxy.switchOn();
+        await(relay.switchOn());
+        invalidate();
     }
 
-    @Path("player")
-    public interface MidiRelayClientProxy {
-        @GET
-        @Produces(MediaType.APPLICATION_JSON)
-        PlayerStateRepresentation getState();
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static <T> T await(CompletableFuture<T> response) {
+
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
 
-        @GET
-        @Path("port/ON")
-        String switchOn();
+    private static class Snapshot {
 
-        @GET
-        @Path("port/OFF")
-        String switchOff();
+        final PlayerStateRepresentation state;
+        final long retrieved;
 
-        @PUT
-        @Path("play")
-        @Produces(MediaType.TEXT_PLAIN)
-        @Consumes(MediaType.APPLICATION_OCTET_STREAM)
-        public String play(@HeaderParam("X-Request-Id") String id, @HeaderParam("X-Request-FileName") String fileName,
-                byte[] body);
+        Snapshot(PlayerStateRepresentation state, long retrieved) {
+            this.state = state;
+            this.retrieved = retrieved;
+        }
 
+        boolean isFresh(long now, long freshMillis) {
+            return retrieved != Long.MIN_VALUE && now - retrieved < freshMillis;
+        }
     }
 }
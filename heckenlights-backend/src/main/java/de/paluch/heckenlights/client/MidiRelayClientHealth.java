@@ -4,10 +4,16 @@ import org.springframework.boot.actuate.health.AbstractHealthIndicator;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.stereotype.Component;
 
+import de.paluch.heckenlights.relay.CircuitBreakingMidiRelay;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
+import de.paluch.heckenlights.relay.PlayerStateTrackRepresentation;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 
 /**
+ * Reports the relay as down while its circuit is not closed. The details then show the last known player state instead
+ * of waiting for the relay.
+ *
  * @author <a href="mailto:mpaluch@paluch.biz">Mark Paluch</a>
  */
 @Component
@@ -17,13 +23,25 @@ public class MidiRelayClientHealth extends AbstractHealthIndicator {
     @NonNull
     MidiRelayClient midiRelayClient;
 
+    @NonNull
+    CircuitBreakingMidiRelay midiRelay;
+
     @Override
     protected void doHealthCheck(Health.Builder builder) throws Exception {
-        PlayerStateRepresentation state = midiRelayClient.getState();
-        if (state == null) {
+
+        CircuitBreakingMidiRelay.State circuit = midiRelay.getCircuitState();
+        PlayerStateRepresentation state = circuit == CircuitBreakingMidiRelay.State.CLOSED ? midiRelayClient.getState()
+                : midiRelayClient.getLatestState();
+
+        if (state == null || circuit != CircuitBreakingMidiRelay.State.CLOSED) {
             builder.down();
         } else {
             builder.up();
+        }
+
+        builder.withDetail("circuit", circuit);
+
+        if (state != null) {
             if (state.getStarted() != null) {
                 builder.withDetail("started", state.getStarted());
             }
@@ -36,7 +54,6 @@ public class MidiRelayClientHealth extends AbstractHealthIndicator {
                     builder.withDetail("fileName", track.getFileName());
                 }
             }
-
         }
     }
 }
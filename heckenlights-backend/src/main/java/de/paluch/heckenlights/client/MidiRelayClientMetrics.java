@@ -0,0 +1,46 @@
+package de.paluch.heckenlights.client;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import de.paluch.heckenlights.relay.CircuitBreakingMidiRelay;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exposes {@link MidiRelayClient} player state statistics and the state of the relay circuit on the metrics endpoint.
+ * {@code midirelay.circuit.state} is 0 while the circuit is closed, 1 while it is open and 2 while it is half-open.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@RequiredArgsConstructor
+public class MidiRelayClientMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "midirelay.state.";
+    private static final String CIRCUIT_PREFIX = "midirelay.circuit.";
+
+    @NonNull
+    MidiRelayClient midiRelayClient;
+
+    @NonNull
+    CircuitBreakingMidiRelay midiRelay;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+
+        return Arrays.<Metric<?>> asList(new Metric<>(PREFIX + "requests", midiRelayClient.getRequests()),
+                new Metric<>(PREFIX + "coalesced", midiRelayClient.getCoalesced()),
+                new Metric<>(PREFIX + "stale", midiRelayClient.getStaleServed()),
+                new Metric<>(PREFIX + "failures", midiRelayClient.getFailures()),
+                new Metric<>(PREFIX + "pushed", midiRelayClient.getPushed()),
+                new Metric<>(CIRCUIT_PREFIX + "state", midiRelay.getCircuitState().ordinal()),
+                new Metric<>(CIRCUIT_PREFIX + "opened", midiRelay.getOpened()),
+                new Metric<>(CIRCUIT_PREFIX + "rejected", midiRelay.getRejected()),
+                new Metric<>(CIRCUIT_PREFIX + "available", midiRelay.getAvailableCalls()));
+    }
+}
@@ -0,0 +1,12 @@
+package de.paluch.heckenlights.model;
+
+/**
+ * Thrown when an upload exceeds the maximum accepted size.
+ *
+ * @author Mark Paluch
+ */
+public class ContentTooLargeException extends Exception {
+    public ContentTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,36 @@
+package de.paluch.heckenlights.model;
+
+import lombok.Value;
+
+/**
+ * Progress of an asynchronously processed upload. {@link PlayStatus#PENDING} while the upload waits for processing,
+ * {@link PlayStatus#ENQUEUED} once it is stored or the status describing why it was rejected.
+ *
+ * @author Mark Paluch
+ */
+@Value
+public class EnqueueProgress {
+
+    String commandId;
+    PlayStatus playStatus;
+    String message;
+    String trackName;
+    int durationToPlay;
+
+    public static EnqueueProgress pending(String commandId) {
+        return new EnqueueProgress(commandId, PlayStatus.PENDING, null, null, 0);
+    }
+
+    public static EnqueueProgress completed(EnqueueResult result) {
+        return new EnqueueProgress(result.getCommandId(), PlayStatus.ENQUEUED, result.getException(), result.getTrackName(),
+                result.getDurationToPlay());
+    }
+
+    public static EnqueueProgress failed(String commandId, PlayStatus playStatus, String message) {
+        return new EnqueueProgress(commandId, playStatus, message, null, 0);
+    }
+
+    public boolean isPending() {
+        return playStatus == PlayStatus.PENDING;
+    }
+}
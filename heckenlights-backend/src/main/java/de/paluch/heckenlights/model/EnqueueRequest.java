@@ -17,6 +17,7 @@ public class EnqueueRequest {
     String fileName;
     PlayStatus playStatus;
     byte[] content;
+    String contentHash;
     String externalSessionId;
     String submissionHost;
     int duration;
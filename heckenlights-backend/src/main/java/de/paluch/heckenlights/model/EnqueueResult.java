@@ -13,4 +13,9 @@ public class EnqueueResult {
     int durationToPlay;
     String exception;
     String trackName;
+
+    /**
+     * Outcome of the enqueue, {@literal null} means {@link PlayStatus#ENQUEUED}.
+     */
+    PlayStatus playStatus;
 }
@@ -0,0 +1,65 @@
+package de.paluch.heckenlights.model;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import lombok.Value;
+
+/**
+ * Outcome of analyzing a MIDI file: the verdict whether the file is accepted for playback along with the data extracted
+ * from it. Addressed by the content hash so repeated uploads of the same file share one analysis.
+ *
+ * @author Mark Paluch
+ */
+@Value
+public class MidiAnalysis {
+
+    public enum Verdict {
+        ACCEPTED, INVALID, DURATION_EXCEEDED
+    }
+
+    String hash;
+    Verdict verdict;
+
+    /**
+     * Reason for a rejection, {@literal null} if accepted.
+     */
+    String reason;
+    int duration;
+    String trackName;
+    int eventCount;
+
+    public static MidiAnalysis accepted(String hash, MidiInfo midiInfo) {
+        return new MidiAnalysis(hash, Verdict.ACCEPTED, null, midiInfo.getDurationSeconds(), midiInfo.getTrackName(),
+                midiInfo.getEventCount());
+    }
+
+    public static MidiAnalysis invalid(String hash, String reason) {
+        return new MidiAnalysis(hash, Verdict.INVALID, reason, 0, null, 0);
+    }
+
+    public static MidiAnalysis durationExceeded(String hash, MidiInfo midiInfo, String reason) {
+        return new MidiAnalysis(hash, Verdict.DURATION_EXCEEDED, reason, midiInfo.getDurationSeconds(),
+                midiInfo.getTrackName(), midiInfo.getEventCount());
+    }
+
+    public boolean isAccepted() {
+        return verdict == Verdict.ACCEPTED;
+    }
+
+    /**
+     * Raise the rejection as exception, does nothing if the file was accepted.
+     *
+     * @throws InvalidMidiDataException
+     * @throws DurationExceededException
+     */
+    public void verify() throws InvalidMidiDataException, DurationExceededException {
+
+        switch (verdict) {
+            case INVALID:
+                throw new InvalidMidiDataException(reason);
+            case DURATION_EXCEEDED:
+                throw new DurationExceededException(reason);
+            default:
+        }
+    }
+}
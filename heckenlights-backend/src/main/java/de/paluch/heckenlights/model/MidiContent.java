@@ -0,0 +1,19 @@
+package de.paluch.heckenlights.model;
+
+import org.bson.types.ObjectId;
+
+import lombok.Value;
+
+/**
+ * Stored MIDI content, addressed by the hash of its bytes and shared across all play commands submitting the same file.
+ *
+ * @author Mark Paluch
+ */
+@Value
+public class MidiContent {
+
+    String hash;
+    ObjectId fileReference;
+    int duration;
+    String trackName;
+}
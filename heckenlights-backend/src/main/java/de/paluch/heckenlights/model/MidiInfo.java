@@ -0,0 +1,23 @@
+package de.paluch.heckenlights.model;
+
+import lombok.Value;
+
+/**
+ * Summary of a Standard MIDI File.
+ *
+ * @author Mark Paluch
+ */
+@Value
+public class MidiInfo {
+
+    int format;
+    int trackCount;
+    int eventCount;
+    long tickLength;
+    long microsecondLength;
+    String trackName;
+
+    public int getDurationSeconds() {
+        return (int) (microsecondLength / 1000000);
+    }
+}
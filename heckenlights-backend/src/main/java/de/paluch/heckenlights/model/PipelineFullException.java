@@ -0,0 +1,12 @@
+package de.paluch.heckenlights.model;
+
+/**
+ * Thrown when the enqueue pipeline cannot accept further work.
+ *
+ * @author Mark Paluch
+ */
+public class PipelineFullException extends Exception {
+    public PipelineFullException(String message) {
+        super(message);
+    }
+}
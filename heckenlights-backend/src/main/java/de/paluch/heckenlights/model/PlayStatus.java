@@ -5,5 +5,5 @@ package de.paluch.heckenlights.model;
  * @since 28.11.13 21:14
  */
 public enum PlayStatus {
-    ENQUEUED, PLAYING, EXECUTED, ERROR, DURATION_EXCEEDED, QUOTA, OFFLINE;
+    ENQUEUED, PLAYING, EXECUTED, ERROR, DURATION_EXCEEDED, QUOTA, OFFLINE, PENDING;
 }
@@ -0,0 +1,65 @@
+package de.paluch.heckenlights.model;
+
+import java.util.Date;
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * Upcoming time windows of the rules, starting with the window covering the time the timeline was computed. Windows
+ * follow the time ranges of the rules only, the action within a window may depend on the queue and on played and
+ * lights-on durations.
+ *
+ * @author Mark Paluch
+ */
+@Value
+public class Timeline {
+
+    public enum Online {
+
+        /**
+         * All actions of the window are online.
+         */
+        ONLINE,
+
+        /**
+         * No action of the window is online.
+         */
+        OFFLINE,
+
+        /**
+         * The window has online and offline actions, depending on the queue and durations.
+         */
+        CONDITIONAL
+    }
+
+    List<Window> windows;
+
+    /**
+     * @return the end of the current window or {@literal null} if the rules do not depend on time.
+     */
+    public Date getNextTransition() {
+        return windows.get(0).getUntil();
+    }
+
+    @Value
+    public static class Window {
+
+        /**
+         * Start of the window, {@literal null} if the rules do not depend on time.
+         */
+        Date from;
+
+        /**
+         * End of the window, {@literal null} if the window never ends.
+         */
+        Date until;
+
+        List<Rule.Action> actions;
+
+        /**
+         * Whether uploads are accepted and the queue is open as far as the rules are concerned.
+         */
+        Online online;
+    }
+}
@@ -10,5 +10,6 @@ public class TrackContent {
 
     String id;
     String filename;
+    String contentHash;
     byte[] content;
 }
@@ -0,0 +1,24 @@
+package de.paluch.heckenlights.repositories;
+
+import java.util.Date;
+
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * A named lease held by one backend instance until {@link #expires} unless renewed.
+ *
+ * @author Mark Paluch
+ */
+@Document(collection = "Lease")
+@Data
+@EqualsAndHashCode(of = "id")
+public class LeaseDocument {
+
+    String id;
+    String owner;
+    Date renewed;
+    Date expires;
+}
@@ -0,0 +1,80 @@
+package de.paluch.heckenlights.repositories;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.util.Date;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Leases stored in MongoDB. A lease is acquired with a single conditional upsert that succeeds only if the lease is
+ * absent, expired or already held by the caller.
+ *
+ * @author Mark Paluch
+ */
+@Service
+@RequiredArgsConstructor
+public class LeaseService {
+
+    @NonNull
+    MongoOperations mongoOperations;
+
+    /**
+     * Acquire or renew the lease {@code name} for {@code owner}.
+     *
+     * @param name
+     * @param owner
+     * @param now
+     * @param durationMillis
+     * @return the outcome, carrying the lease state before the attempt if the lease was acquired.
+     */
+    public Acquisition acquire(String name, String owner, Date now, long durationMillis) {
+
+        Query query = query(where("id").is(name).orOperator(where("owner").is(owner), where("expires").lt(now)));
+        Update update = new Update().set("owner", owner).set("renewed", now).set("expires",
+                new Date(now.getTime() + durationMillis));
+
+        try {
+            LeaseDocument previous = mongoOperations.findAndModify(query, update, FindAndModifyOptions.options().upsert(true),
+                    LeaseDocument.class);
+            return new Acquisition(true, previous);
+        } catch (DuplicateKeyException e) {
+            // lease exists and is held by another owner
+            return new Acquisition(false, null);
+        }
+    }
+
+    /**
+     * Release the lease {@code name} if held by {@code owner} so another instance can acquire it without waiting for
+     * expiry.
+     *
+     * @param name
+     * @param owner
+     * @param now
+     */
+    public void release(String name, String owner, Date now) {
+        mongoOperations.updateFirst(query(new Criteria("id").is(name).and("owner").is(owner)), Update.update("expires", now),
+                LeaseDocument.class);
+    }
+
+    @lombok.Value
+    public static class Acquisition {
+
+        boolean acquired;
+
+        /**
+         * Lease state before it was acquired, {@literal null} if the lease was created.
+         */
+        LeaseDocument previous;
+    }
+}
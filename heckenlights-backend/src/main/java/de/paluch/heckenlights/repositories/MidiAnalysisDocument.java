@@ -0,0 +1,35 @@
+package de.paluch.heckenlights.repositories;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import de.paluch.heckenlights.model.MidiAnalysis.Verdict;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Persisted MIDI analysis. The id is the SHA-256 hash of the file content. Entries expire after they were not accessed
+ * for {@link MidiAnalysisService#RETENTION_SECONDS}.
+ *
+ * @author Mark Paluch
+ */
+@Document(collection = "MidiAnalysis")
+@Data
+@EqualsAndHashCode(of = "id")
+public class MidiAnalysisDocument {
+
+    @Id
+    String id;
+
+    Verdict verdict;
+    String reason;
+    int duration;
+    String trackName;
+    int eventCount;
+
+    @Indexed(expireAfterSeconds = MidiAnalysisService.RETENTION_SECONDS)
+    Date lastAccessed;
+}
@@ -0,0 +1,88 @@
+package de.paluch.heckenlights.repositories;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import de.paluch.heckenlights.model.MidiAnalysis;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Persistent store for {@link MidiAnalysis} results so analyses survive restarts.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@RequiredArgsConstructor
+public class MidiAnalysisService {
+
+    /**
+     * Analyses expire 90 days after their last access.
+     */
+    public static final int RETENTION_SECONDS = 90 * 24 * 60 * 60;
+
+    @NonNull
+    MongoOperations mongoOperations;
+
+    /**
+     * Retrieve an analysis and mark it as accessed.
+     *
+     * @param hash
+     * @return the analysis or {@literal null} if the content was not analyzed yet.
+     */
+    public MidiAnalysis find(String hash) {
+
+        MidiAnalysisDocument document = mongoOperations.findAndModify(query(where("_id").is(hash)),
+                Update.update("lastAccessed", new Date()), FindAndModifyOptions.options().returnNew(true),
+                MidiAnalysisDocument.class);
+
+        return document != null ? toModel(document) : null;
+    }
+
+    /**
+     * @param limit
+     * @return the most recently accessed analyses, newest first.
+     */
+    public List<MidiAnalysis> findRecent(int limit) {
+
+        Query query = new Query().with(new Sort(Sort.Direction.DESC, "lastAccessed")).limit(limit);
+
+        return mongoOperations.find(query, MidiAnalysisDocument.class).stream().map(MidiAnalysisService::toModel)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Store or replace an analysis.
+     *
+     * @param analysis
+     */
+    public void save(MidiAnalysis analysis) {
+
+        MidiAnalysisDocument document = new MidiAnalysisDocument();
+        document.setId(analysis.getHash());
+        document.setVerdict(analysis.getVerdict());
+        document.setReason(analysis.getReason());
+        document.setDuration(analysis.getDuration());
+        document.setTrackName(analysis.getTrackName());
+        document.setEventCount(analysis.getEventCount());
+        document.setLastAccessed(new Date());
+
+        mongoOperations.save(document);
+    }
+
+    private static MidiAnalysis toModel(MidiAnalysisDocument document) {
+        return new MidiAnalysis(document.getId(), document.getVerdict(), document.getReason(), document.getDuration(),
+                document.getTrackName(), document.getEventCount());
+    }
+}
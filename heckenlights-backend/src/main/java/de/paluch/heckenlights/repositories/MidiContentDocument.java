@@ -0,0 +1,34 @@
+package de.paluch.heckenlights.repositories;
+
+import java.util.Date;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Content entry of a stored MIDI file. The id is the SHA-256 hash of the file content.
+ *
+ * @author Mark Paluch
+ */
+@CompoundIndexes({ @CompoundIndex(name = "MidiContent_references", def = "{references: 1, lastReferenced: 1}") })
+@Document(collection = "MidiContent")
+@Data
+@EqualsAndHashCode(of = "id")
+public class MidiContentDocument {
+
+    @Id
+    String id;
+
+    ObjectId attachedFile;
+    int duration;
+    String trackName;
+    int references;
+    Date created;
+    Date lastReferenced;
+}
@@ -0,0 +1,14 @@
+package de.paluch.heckenlights.repositories;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.repository.CrudRepository;
+
+/**
+ * @author Mark Paluch
+ */
+public interface MidiContentRepository extends CrudRepository<MidiContentDocument, String> {
+
+    List<MidiContentDocument> findByReferencesLessThanEqualAndLastReferencedBefore(int references, Date date);
+}
@@ -0,0 +1,158 @@
+package de.paluch.heckenlights.repositories;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.io.ByteArrayInputStream;
+import java.util.Date;
+
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsOperations;
+import org.springframework.stereotype.Component;
+
+import com.google.common.hash.Hashing;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.gridfs.GridFSFile;
+
+import de.paluch.heckenlights.model.MidiContent;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Content-addressed storage of MIDI files. Each distinct file is stored once in GridFS and reference-counted by the play
+ * commands using it.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MidiContentService {
+
+    @NonNull
+    MidiContentRepository midiContentRepository;
+    @NonNull
+    MongoOperations mongoOperations;
+    @NonNull
+    GridFsOperations gridFsOperations;
+
+    /**
+     * @param content
+     * @return the SHA-256 hash of {@code content} as lower-case hex string.
+     */
+    public static String hash(byte[] content) {
+        return Hashing.sha256().hashBytes(content).toString();
+    }
+
+    /**
+     * Acquire a reference to already stored content.
+     *
+     * @param hash
+     * @return the content or {@literal null} if the content is not known.
+     */
+    public MidiContent acquire(String hash) {
+
+        MidiContentDocument document = mongoOperations.findAndModify(query(where("_id").is(hash)),
+                new Update().inc("references", 1).set("lastReferenced", new Date()),
+                FindAndModifyOptions.options().returnNew(true), MidiContentDocument.class);
+
+        return document != null ? toModel(document) : null;
+    }
+
+    /**
+     * Store new content and acquire a reference to it. If the same content was stored concurrently, the stored content is
+     * discarded in favor of the existing entry.
+     *
+     * @param hash
+     * @param fileName
+     * @param contentType
+     * @param content
+     * @param duration
+     * @param trackName
+     * @return
+     */
+    public MidiContent create(String hash, String fileName, String contentType, byte[] content, int duration,
+            String trackName) {
+
+        DBObject metadata = new BasicDBObject();
+        metadata.put("contentHash", hash);
+        metadata.put("created", new Date());
+        GridFSFile fsFile = gridFsOperations.store(new ByteArrayInputStream(content), fileName, contentType, metadata);
+
+        MidiContentDocument document = new MidiContentDocument();
+        document.setId(hash);
+        document.setAttachedFile((ObjectId) fsFile.getId());
+        document.setDuration(duration);
+        document.setTrackName(trackName);
+        document.setReferences(1);
+        document.setCreated(new Date());
+        document.setLastReferenced(document.getCreated());
+
+        try {
+            mongoOperations.insert(document);
+            return toModel(document);
+        } catch (DuplicateKeyException e) {
+
+            deleteFile(document.getAttachedFile());
+
+            MidiContent existing = acquire(hash);
+            if (existing == null) {
+                throw new IllegalStateException("Content " + hash + " was removed concurrently");
+            }
+            return existing;
+        }
+    }
+
+    /**
+     * Release a reference acquired by {@link #acquire(String)} or {@link #create(String, String, String, byte[], int,
+     * String)}.
+     *
+     * @param hash
+     */
+    public void release(String hash) {
+        mongoOperations.updateFirst(query(where("_id").is(hash)), new Update().inc("references", -1), MidiContentDocument.class);
+    }
+
+    /**
+     * Remove content without references that was not referenced after {@code before} along with its GridFS file.
+     *
+     * @param before
+     * @return number of removed entries.
+     */
+    public int purgeOrphans(Date before) {
+
+        int count = 0;
+        for (MidiContentDocument candidate : midiContentRepository
+                .findByReferencesLessThanEqualAndLastReferencedBefore(0, before)) {
+
+            MidiContentDocument removed = mongoOperations.findAndRemove(
+                    query(where("_id").is(candidate.getId()).and("references").lte(0).and("lastReferenced").lt(before)),
+                    MidiContentDocument.class);
+
+            if (removed != null) {
+                deleteFile(removed.getAttachedFile());
+                count++;
+            }
+        }
+
+        if (count != 0) {
+            log.info("Removed " + count + " orphaned content entries");
+        }
+
+        return count;
+    }
+
+    private void deleteFile(ObjectId fileId) {
+        gridFsOperations.delete(query(where("_id").is(fileId)));
+    }
+
+    private static MidiContent toModel(MidiContentDocument document) {
+        return new MidiContent(document.getId(), document.getAttachedFile(), document.getDuration(), document.getTrackName());
+    }
+}
@@ -38,10 +38,14 @@ public class PlayCommandDocument {
     PlayStatus playStatus;
 
     ObjectId attachedFile;
+    String contentHash;
     int duration;
     String externalSessionId;
     String submissionHost;
     String exception;
     String fileName;
     List<ObjectId> captures = new ArrayList<>();
+
+    String claimOwner;
+    Date claimExpires;
 }
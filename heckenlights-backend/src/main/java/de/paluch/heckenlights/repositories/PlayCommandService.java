@@ -3,37 +3,40 @@ package de.paluch.heckenlights.repositories;
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 import static org.springframework.data.mongodb.core.query.Query.query;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.PostConstruct;
 
 import org.apache.commons.io.IOUtils;
 import org.bson.types.ObjectId;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.mongodb.gridfs.GridFsOperations;
 import org.springframework.stereotype.Component;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.mongodb.BasicDBObject;
-import com.mongodb.DBObject;
 import com.mongodb.gridfs.GridFSDBFile;
-import com.mongodb.gridfs.GridFSFile;
 
 import de.paluch.heckenlights.client.MidiRelayClient;
-import de.paluch.heckenlights.client.PlayerStateRepresentation;
 import de.paluch.heckenlights.model.EnqueueRequest;
 import de.paluch.heckenlights.model.PlayCommandSummary;
 import de.paluch.heckenlights.model.PlayStatus;
 import de.paluch.heckenlights.model.TrackContent;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * @author <a href="mailto:mpaluch@paluch.biz">Mark Paluch</a>
@@ -41,6 +44,7 @@ import lombok.RequiredArgsConstructor;
  */
 @Component
 @RequiredArgsConstructor
+@Slf4j
 public class PlayCommandService {
 
     @NonNull
@@ -49,40 +53,144 @@ public class PlayCommandService {
     MidiRelayClient client;
     @NonNull
     GridFsOperations gridFsOperations;
+    @NonNull
+    MongoOperations mongoOperations;
+    @NonNull
+    QueueEta queueEta;
+    @NonNull
+    QueueIndex queueIndex;
+
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+
+    /**
+     * Load the enqueued tracks into the {@link QueueIndex} and the {@link QueueEta}.
+     */
+    @PostConstruct
+    public void initializeQueue() {
+
+        List<PlayCommandDocument> documents = playCommandRepository.findByPlayStatusOrderByCreatedAsc(PlayStatus.ENQUEUED);
+
+        synchronized (queueIndex) {
+            queueIndex.reset(documents);
+            resetQueueEta(documents);
+        }
+
+        reconcileTrackGap();
+    }
+
+    /**
+     * Compare the {@link QueueIndex} with the enqueued tracks in MongoDB and reload it if the queue was changed
+     * externally. Skipped if the index changes while MongoDB is queried.
+     *
+     * @return {@literal true} if the index was reloaded.
+     */
+    public boolean reconcileQueue() {
 
-    private final static int COMMAND_OVERHEAD_SEC = 5;
+        long modifications = queueIndex.getModifications();
+        List<PlayCommandDocument> documents = playCommandRepository.findByPlayStatusOrderByCreatedAsc(PlayStatus.ENQUEUED);
 
-    public ObjectId createFile(String fileName, String contentType, byte[] content, String parentId) {
-        // audio/midi
-        DBObject metadata = new BasicDBObject();
-        metadata.put("parentId", parentId);
-        metadata.put("created", new Date());
-        GridFSFile fsFile = gridFsOperations.store(new ByteArrayInputStream(content), fileName, contentType, metadata);
+        synchronized (queueIndex) {
 
-        return (ObjectId) fsFile.getId();
+            if (queueIndex.getModifications() != modifications || queueIndex.matches(documents)) {
+                return false;
+            }
+
+            log.info("Queue changed externally, reloading queue index");
+            queueIndex.reset(documents);
+            resetQueueEta(documents);
+            return true;
+        }
     }
 
+    /**
+     * @return number of enqueued tracks as tracked in memory, does not query the database.
+     */
+    public int getEnqueuedCount() {
+        return queueEta.size();
+    }
+
+    /**
+     * @return seconds until a track enqueued now would start. Based on the last known relay state, does not wait for the
+     *         relay.
+     */
     public int estimateTimeToPlayQueue() {
-        List<PlayCommandDocument> queuedCommands = playCommandRepository.findByPlayStatusOrderByCreatedAsc(PlayStatus.ENQUEUED);
-        int result = 0;
+        return queueEta.getTimeToPlayQueue(getCurrentRemaining(client.getLatestState()));
+    }
+
+    /**
+     * @return the expected gap between two tracks in seconds.
+     */
+    public int getTrackGapSeconds() {
+        return queueEta.getGapSeconds();
+    }
+
+    /**
+     * Record an observed gap between the end of a track and the start of the next one.
+     *
+     * @param millis
+     */
+    public void observeTrackGap(long millis) {
+
+        queueEta.observeGap(millis);
+        mongoOperations.updateFirst(query(where("id").is("State")),
+                Update.update("trackGapSeconds", queueEta.getAverageGapSeconds()), StateDocument.class);
+    }
+
+    /**
+     * Adopt the gap between two tracks stored by the instance that observes the relay.
+     */
+    public void reconcileTrackGap() {
 
-        for (PlayCommandDocument queuedCommand : queuedCommands) {
-            result += queuedCommand.getDuration() + COMMAND_OVERHEAD_SEC;
+        StateDocument state = mongoOperations.findById("State", StateDocument.class);
+        if (state != null && state.getTrackGapSeconds() != null) {
+            queueEta.setAverageGapSeconds(state.getTrackGapSeconds());
         }
+    }
+
+    public void storeEnqueueRequest(EnqueueRequest enqueue, ObjectId fileReference) {
 
-        PlayerStateRepresentation state = client.getState();
-        if (state != null && state.isRunning()) {
-            result += state.getEstimatedSecondsToPlay();
+        PlayCommandDocument document = toDocument(enqueue, fileReference);
+        playCommandRepository.save(document);
+
+        synchronized (queueIndex) {
+            queueIndex.add(document);
+            queueEta.enqueue(document.getId(), document.getDuration());
         }
+    }
 
-        return result;
+    /**
+     * Store multiple enqueue requests with a single bulk insert.
+     *
+     * @param requests
+     * @param fileReferences file references, one per request.
+     */
+    public void storeEnqueueRequests(List<EnqueueRequest> requests, List<ObjectId> fileReferences) {
+
+        if (requests.size() != fileReferences.size()) {
+            throw new IllegalArgumentException("Requests and file references must have the same size");
+        }
+
+        List<PlayCommandDocument> documents = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            documents.add(toDocument(requests.get(i), fileReferences.get(i)));
+        }
+
+        mongoOperations.insert(documents, PlayCommandDocument.class);
+
+        synchronized (queueIndex) {
+            for (PlayCommandDocument document : documents) {
+                queueIndex.add(document);
+                queueEta.enqueue(document.getId(), document.getDuration());
+            }
+        }
     }
 
-    public void storeEnqueueRequest(EnqueueRequest enqueue, ObjectId fileReference) {
+    private static PlayCommandDocument toDocument(EnqueueRequest enqueue, ObjectId fileReference) {
 
         PlayCommandDocument command = new PlayCommandDocument();
 
         command.setAttachedFile(fileReference);
+        command.setContentHash(enqueue.getContentHash());
         command.setCreated(enqueue.getCreated());
         command.setDuration(enqueue.getDuration());
         command.setId(enqueue.getCommandId());
@@ -92,18 +200,19 @@ public class PlayCommandService {
         command.setFileName(enqueue.getFileName());
         command.setTrackName(enqueue.getTrackName());
 
-        playCommandRepository.save(command);
+        return command;
     }
 
+    /**
+     * @return the enqueued commands, oldest first. Served from the {@link QueueIndex}.
+     */
     public List<PlayCommandSummary> getEnquedCommands() {
-        List<PlayCommandDocument> documents = getPlayCommandDocuments(ImmutableList.of(PlayStatus.ENQUEUED), 100);
-        List<PlayCommandSummary> result = Lists.newArrayList();
 
-        for (PlayCommandDocument playCommandDocument : documents) {
-            PlayCommandSummary summaryModel = toSummaryModel(playCommandDocument);
-
-            result.add(summaryModel);
+        List<PlayCommandSummary> result = Lists.newArrayList();
+        for (PlayCommandDocument playCommandDocument : queueIndex.getDocuments(100)) {
+            result.add(toSummaryModel(playCommandDocument));
         }
+
         return result;
     }
 
@@ -112,26 +221,28 @@ public class PlayCommandService {
         List<PlayCommandDocument> documents = getPlayCommandDocuments(states, limit);
         List<PlayCommandSummary> result = Lists.newArrayList();
 
-        int timeToStart = 0;
-        int timeBetweenTracks = 3;
-        PlayerStateRepresentation state = client.getState();
+        PlayerStateRepresentation state = client.getLatestState();
+        int currentRemaining = getCurrentRemaining(state);
 
         if (state != null && state.getTrack() != null) {
-            timeToStart = appendCurrentTrack(result, state) + timeBetweenTracks;
+            appendCurrentTrack(result, state);
         }
 
+        int gap = queueEta.getGapSeconds();
+        int timeToStart = currentRemaining > 0 ? currentRemaining + gap : 0;
+
         for (PlayCommandDocument playCommandDocument : documents) {
             PlayCommandSummary summaryModel = toSummaryModel(playCommandDocument);
-            int trackTimeToPlay = playCommandDocument.getDuration();
+            Integer eta = queueEta.getTimeToStart(playCommandDocument.getId(), currentRemaining);
 
-            summaryModel.setTimeToStart(timeToStart);
+            summaryModel.setTimeToStart(eta != null ? eta : timeToStart);
             if (state != null && state.getTrack() != null) {
                 if (summaryModel.getId().equals(state.getTrack().getId())) {
                     continue;
                 }
             }
 
-            timeToStart += trackTimeToPlay + timeBetweenTracks;
+            timeToStart += playCommandDocument.getDuration() + gap;
 
             summaryModel.setCaptures(getDateOfFiles(playCommandDocument.getCaptures()));
 
@@ -144,27 +255,47 @@ public class PlayCommandService {
         return result;
     }
 
-    private int appendCurrentTrack(List<PlayCommandSummary> result, PlayerStateRepresentation state) {
-        int timeToStart = 0;
+    private void appendCurrentTrack(List<PlayCommandSummary> result, PlayerStateRepresentation state) {
 
         if (state.getTrack() == null || state.getTrack().getId() == null) {
-            return timeToStart;
+            return;
+        }
+
+        PlayCommandDocument playCommandDocument = queueIndex.getRemoved(state.getTrack().getId());
+        if (playCommandDocument == null) {
+            playCommandDocument = playCommandRepository.findOne(state.getTrack().getId());
         }
 
-        PlayCommandDocument playCommandDocument = playCommandRepository.findOne(state.getTrack().getId());
         if (playCommandDocument != null) {
             PlayCommandSummary currentTrack = toSummaryModel(playCommandDocument);
             currentTrack.setPlayStatus(PlayStatus.PLAYING);
             currentTrack.setTimeToStart(0);
             currentTrack.setRemaining(state.getEstimatedSecondsToPlay());
-            timeToStart = state.getEstimatedSecondsToPlay();
             result.add(currentTrack);
         }
-        return timeToStart;
+    }
+
+    /**
+     * Retrieve a track without reading its content.
+     *
+     * @param id
+     * @return the track or {@literal null} if the play command does not exist.
+     */
+    public TrackContent getTrack(String id) throws IOException {
+        return getTrack(id, false);
     }
 
     public TrackContent getTrackContent(String id) throws IOException {
-        PlayCommandDocument playCommandDocument = playCommandRepository.findOne(id);
+        return getTrack(id, true);
+    }
+
+    private TrackContent getTrack(String id, boolean readContent) throws IOException {
+
+        PlayCommandDocument playCommandDocument = queueIndex.get(id);
+        if (playCommandDocument == null) {
+            playCommandDocument = playCommandRepository.findOne(id);
+        }
+
         if (playCommandDocument == null) {
             return null;
         }
@@ -176,13 +307,16 @@ public class PlayCommandService {
 
         TrackContent result = new TrackContent();
         result.setId(id);
+        result.setContentHash(playCommandDocument.getContentHash());
+        result.setFilename(playCommandDocument.getFileName() != null ? playCommandDocument.getFileName()
+                : file.getFilename());
 
-        try (ByteArrayOutputStream buffer = new ByteArrayOutputStream(); InputStream is = file.getInputStream()) {
-
-            IOUtils.copy(is, buffer);
-            result.setContent(buffer.toByteArray());
-            result.setFilename(file.getFilename());
+        if (readContent) {
+            try (ByteArrayOutputStream buffer = new ByteArrayOutputStream(); InputStream is = file.getInputStream()) {
 
+                IOUtils.copy(is, buffer);
+                result.setContent(buffer.toByteArray());
+            }
         }
 
         return result;
@@ -192,7 +326,17 @@ public class PlayCommandService {
         List<PlayCommandDocument> documents = new ArrayList<>();
 
         for (PlayStatus playStatus : states) {
-            documents.addAll(playCommandRepository.findByPlayStatusOrderByCreatedAsc(playStatus, new PageRequest(0, limit)));
+
+            if (playStatus == PlayStatus.ENQUEUED) {
+                documents.addAll(queueIndex.getDocuments(limit));
+                continue;
+            }
+
+            // the playing track is taken from the relay state
+            if (playStatus != PlayStatus.PLAYING) {
+                documents.addAll(
+                        playCommandRepository.findByPlayStatusOrderByCreatedAsc(playStatus, new PageRequest(0, limit)));
+            }
         }
         return documents;
     }
@@ -220,15 +364,97 @@ public class PlayCommandService {
         return result;
     }
 
-    public void setStateExecuted(String id) {
-        PlayCommandDocument playCommandDocument = playCommandRepository.findOne(id);
-        if (playCommandDocument == null) {
-            throw new IllegalStateException("Cannot find playCommand " + id);
+    /**
+     * Claim an enqueued command for playback. Transitions the command from {@link PlayStatus#ENQUEUED} to
+     * {@link PlayStatus#PLAYING} with this instance as claim owner. The claim expires after {@code leaseMillis}, expired
+     * claims are completed by {@link #expireClaims()}.
+     *
+     * @param id
+     * @param leaseMillis
+     * @return {@literal true} if claimed, {@literal false} if the command is no longer enqueued.
+     */
+    public boolean claim(String id, long leaseMillis) {
+
+        Query query = query(where("id").is(id).and("playStatus").is(PlayStatus.ENQUEUED));
+        query.fields().include("id");
+
+        Update update = new Update().set("playStatus", PlayStatus.PLAYING).set("claimOwner", instanceId)
+                .set("claimExpires", new Date(System.currentTimeMillis() + leaseMillis));
+
+        PlayCommandDocument claimed = mongoOperations.findAndModify(query, update, PlayCommandDocument.class);
+
+        synchronized (queueIndex) {
+            queueIndex.remove(id);
+            queueEta.remove(id);
+        }
+
+        return claimed != null;
+    }
+
+    /**
+     * Complete a claimed command. Transitions the command from {@link PlayStatus#PLAYING} to {@link PlayStatus#EXECUTED} if
+     * claimed by this instance.
+     *
+     * @param id
+     * @return {@literal true} if completed, {@literal false} if the claim was lost.
+     */
+    public boolean complete(String id) {
+        return transition(id, PlayStatus.EXECUTED) != null;
+    }
+
+    /**
+     * Return a claimed command to the queue, e.g. because it could not be played. Transitions the command from
+     * {@link PlayStatus#PLAYING} to {@link PlayStatus#ENQUEUED} if claimed by this instance.
+     *
+     * @param id
+     */
+    public void release(String id) {
+
+        PlayCommandDocument released = transition(id, PlayStatus.ENQUEUED);
+        if (released != null) {
+            synchronized (queueIndex) {
+                queueIndex.add(released);
+                queueEta.enqueue(released.getId(), released.getDuration());
+            }
         }
+    }
 
-        playCommandDocument.setPlayStatus(PlayStatus.EXECUTED);
-        playCommandRepository.save(playCommandDocument);
+    private PlayCommandDocument transition(String id, PlayStatus playStatus) {
 
+        Query query = query(where("id").is(id).and("playStatus").is(PlayStatus.PLAYING).and("claimOwner").is(instanceId));
+        Update update = new Update().set("playStatus", playStatus).unset("claimOwner").unset("claimExpires");
+
+        return mongoOperations.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                PlayCommandDocument.class);
+    }
+
+    /**
+     * Complete commands whose claim has expired, e.g. because the claiming instance stopped while playing.
+     *
+     * @return number of completed commands.
+     */
+    public int expireClaims() {
+
+        Query query = query(where("playStatus").is(PlayStatus.PLAYING).and("claimExpires").lt(new Date()));
+        Update update = new Update().set("playStatus", PlayStatus.EXECUTED).unset("claimOwner").unset("claimExpires");
+
+        return mongoOperations.updateMulti(query, update, PlayCommandDocument.class).getN();
+    }
+
+    /**
+     * @return the id of this instance used as claim owner.
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    private static int getCurrentRemaining(PlayerStateRepresentation state) {
+        return state != null && state.isRunning() ? state.getEstimatedSecondsToPlay() : 0;
+    }
+
+    private void resetQueueEta(List<PlayCommandDocument> documents) {
+        queueEta.reset(Lists.transform(documents, PlayCommandDocument::getId),
+                Lists.transform(documents, PlayCommandDocument::getDuration));
     }
 
     private PlayCommandSummary toSummaryModel(PlayCommandDocument from) {
@@ -248,14 +474,18 @@ public class PlayCommandService {
         return result;
     }
 
-    public int getEnquedCommandCount(String externalSessionId, String submissionHost, long withinLastMinutes) {
+    /**
+     * @param from
+     * @param to
+     * @return commands created between {@code from} and {@code to} regardless of their status, oldest first.
+     */
+    public List<PlayCommandSummary> getCreatedBetween(Date from, Date to) {
 
-        Calendar instance = Calendar.getInstance();
-        instance.add(Calendar.MINUTE, (int) (withinLastMinutes * -1));
-        Date date = instance.getTime();
+        List<PlayCommandSummary> result = Lists.newArrayList();
+        for (PlayCommandDocument document : playCommandRepository.findByCreatedBetweenOrderByCreatedAsc(from, to)) {
+            result.add(toSummaryModel(document));
+        }
 
-        List<PlayCommandDocument> documents = playCommandRepository
-                .findByExternalSessionIdAndSubmissionHostAndCreatedGreaterThan(externalSessionId, submissionHost, date);
-        return documents.size();
+        return result;
     }
 }
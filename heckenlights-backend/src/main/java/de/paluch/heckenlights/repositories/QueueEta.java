@@ -0,0 +1,206 @@
+package de.paluch.heckenlights.repositories;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory estimate of queue start times. Keeps the enqueued tracks in play order along with a running prefix sum of
+ * their durations so the start time of a track and the time to play the whole queue are available in constant time. The
+ * gap between two tracks is learned from observed relay timings or adopted from the instance that observes them.
+ *
+ * @author Mark Paluch
+ */
+@Component
+public class QueueEta {
+
+    /**
+     * Gap between two tracks until a gap was observed.
+     */
+    private static final int INITIAL_GAP_SECONDS = 5;
+
+    /**
+     * Weight of a new gap observation in the moving average.
+     */
+    private static final double GAP_WEIGHT = 0.2;
+
+    private final Map<String, Entry> queue = new LinkedHashMap<>();
+
+    // totals of all tracks ever enqueued respective dequeued, the difference is the queue content
+    private long enqueuedSeconds;
+    private long enqueuedCount;
+    private long dequeuedSeconds;
+    private long dequeuedCount;
+
+    private double gapSeconds = INITIAL_GAP_SECONDS;
+
+    /**
+     * Replace the queue content.
+     *
+     * @param ids track ids in play order.
+     * @param durations durations in seconds, one per track.
+     */
+    public synchronized void reset(List<String> ids, List<Integer> durations) {
+
+        queue.clear();
+        enqueuedSeconds = enqueuedCount = dequeuedSeconds = dequeuedCount = 0;
+
+        for (int i = 0; i < ids.size(); i++) {
+            enqueue(ids.get(i), durations.get(i));
+        }
+    }
+
+    /**
+     * Append a track to the queue.
+     *
+     * @param id
+     * @param duration duration in seconds.
+     */
+    public synchronized void enqueue(String id, int duration) {
+
+        if (queue.containsKey(id)) {
+            return;
+        }
+
+        queue.put(id, new Entry(enqueuedSeconds, enqueuedCount, duration));
+        enqueuedSeconds += duration;
+        enqueuedCount++;
+    }
+
+    /**
+     * Remove a track from the queue. Removing the head of the queue is constant time.
+     *
+     * @param id
+     */
+    public synchronized void remove(String id) {
+
+        Entry removed = queue.remove(id);
+        if (removed == null) {
+            return;
+        }
+
+        if (removed.sequence == dequeuedCount) {
+            dequeuedSeconds += removed.duration;
+            dequeuedCount++;
+            return;
+        }
+
+        // removed from the middle, shift all successors
+        for (Entry entry : queue.values()) {
+            if (entry.sequence > removed.sequence) {
+                entry.secondsBefore -= removed.duration;
+                entry.sequence--;
+            }
+        }
+
+        enqueuedSeconds -= removed.duration;
+        enqueuedCount--;
+    }
+
+    /**
+     * @param id
+     * @param currentRemaining remaining seconds of the currently playing track, {@literal 0} if none is playing.
+     * @return seconds until the track starts or {@literal null} if the track is not enqueued.
+     */
+    public synchronized Integer getTimeToStart(String id, int currentRemaining) {
+
+        Entry entry = queue.get(id);
+        if (entry == null) {
+            return null;
+        }
+
+        return getTimeToStart(entry.secondsBefore, entry.sequence, currentRemaining);
+    }
+
+    /**
+     * @param currentRemaining remaining seconds of the currently playing track, {@literal 0} if none is playing.
+     * @return seconds until a track enqueued now would start.
+     */
+    public synchronized int getTimeToPlayQueue(int currentRemaining) {
+        return getTimeToStart(enqueuedSeconds, enqueuedCount, currentRemaining);
+    }
+
+    private int getTimeToStart(long secondsBefore, long sequence, int currentRemaining) {
+
+        double gap = gapSeconds;
+        double lead = currentRemaining > 0 ? currentRemaining + gap : 0;
+
+        return (int) Math.round(lead + (secondsBefore - dequeuedSeconds) + (sequence - dequeuedCount) * gap);
+    }
+
+    /**
+     * Check whether the queue matches {@code ids}.
+     *
+     * @param ids track ids in play order.
+     * @return {@literal true} if the queue contains exactly {@code ids} in that order.
+     */
+    public synchronized boolean matches(List<String> ids) {
+
+        if (ids.size() != queue.size()) {
+            return false;
+        }
+
+        Iterator<String> iterator = queue.keySet().iterator();
+        for (String id : ids) {
+            if (!id.equals(iterator.next())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Record an observed gap between the end of a track and the start of the next one.
+     *
+     * @param millis
+     */
+    public synchronized void observeGap(long millis) {
+        gapSeconds = gapSeconds * (1 - GAP_WEIGHT) + (millis / 1000.0) * GAP_WEIGHT;
+    }
+
+    public synchronized int getGapSeconds() {
+        return (int) Math.round(gapSeconds);
+    }
+
+    /**
+     * @return the learned gap between two tracks in seconds without rounding.
+     */
+    public synchronized double getAverageGapSeconds() {
+        return gapSeconds;
+    }
+
+    /**
+     * Adopt a gap learned elsewhere.
+     *
+     * @param gapSeconds
+     */
+    public synchronized void setAverageGapSeconds(double gapSeconds) {
+        this.gapSeconds = gapSeconds;
+    }
+
+    public synchronized List<String> getIds() {
+        return new ArrayList<>(queue.keySet());
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    private static class Entry {
+
+        long secondsBefore;
+        long sequence;
+        final int duration;
+
+        Entry(long secondsBefore, long sequence, int duration) {
+            this.secondsBefore = secondsBefore;
+            this.sequence = sequence;
+            this.duration = duration;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package de.paluch.heckenlights.repositories;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of the enqueued play commands ordered by their creation time with a lookup by id. The index is updated
+ * by {@link PlayCommandService} whenever it changes the queue and reconciled with MongoDB periodically. Writers that
+ * must keep the index consistent with other structures synchronize on the index.
+ *
+ * @author Mark Paluch
+ */
+@Component
+public class QueueIndex {
+
+    private static final Comparator<Key> ORDER = Comparator.<Key> comparingLong(key -> key.created)
+            .thenComparingLong(key -> key.sequence);
+
+    private final NavigableMap<Key, PlayCommandDocument> queue = new TreeMap<>(ORDER);
+    private final Map<String, Key> keys = new HashMap<>();
+
+    private long sequence;
+    private long modifications;
+    private PlayCommandDocument lastRemoved;
+
+    /**
+     * Replace the index content.
+     *
+     * @param documents enqueued documents.
+     */
+    public synchronized void reset(List<PlayCommandDocument> documents) {
+
+        queue.clear();
+        keys.clear();
+        documents.forEach(this::add);
+    }
+
+    /**
+     * Add a document. Documents already indexed are ignored.
+     *
+     * @param document
+     */
+    public synchronized void add(PlayCommandDocument document) {
+
+        if (keys.containsKey(document.getId())) {
+            return;
+        }
+
+        Key key = new Key(document.getCreated() != null ? document.getCreated().getTime() : 0, sequence++);
+        queue.put(key, document);
+        keys.put(document.getId(), key);
+        modifications++;
+    }
+
+    /**
+     * Remove a document.
+     *
+     * @param id
+     * @return the removed document or {@literal null} if not indexed.
+     */
+    public synchronized PlayCommandDocument remove(String id) {
+
+        Key key = keys.remove(id);
+        if (key == null) {
+            return null;
+        }
+
+        modifications++;
+        lastRemoved = queue.remove(key);
+        return lastRemoved;
+    }
+
+    /**
+     * @param id
+     * @return the indexed document or {@literal null}.
+     */
+    public synchronized PlayCommandDocument get(String id) {
+
+        Key key = keys.get(id);
+        return key != null ? queue.get(key) : null;
+    }
+
+    /**
+     * @param id
+     * @return the last removed document if it has the given {@code id}, otherwise {@literal null}. Used to look up the
+     *         playing track.
+     */
+    public synchronized PlayCommandDocument getRemoved(String id) {
+        return lastRemoved != null && lastRemoved.getId().equals(id) ? lastRemoved : null;
+    }
+
+    /**
+     * @param limit
+     * @return the first {@code limit} documents, oldest first.
+     */
+    public synchronized List<PlayCommandDocument> getDocuments(int limit) {
+
+        List<PlayCommandDocument> result = new ArrayList<>(Math.min(limit, queue.size()));
+        for (PlayCommandDocument document : queue.values()) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(document);
+        }
+
+        return result;
+    }
+
+    /**
+     * Check whether the index contains exactly {@code documents} in that order.
+     *
+     * @param documents
+     * @return
+     */
+    public synchronized boolean matches(List<PlayCommandDocument> documents) {
+
+        if (documents.size() != queue.size()) {
+            return false;
+        }
+
+        Iterator<PlayCommandDocument> iterator = queue.values().iterator();
+        for (PlayCommandDocument document : documents) {
+            if (!document.getId().equals(iterator.next().getId())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the number of changes made to the index. Used to detect concurrent changes while reconciling.
+     */
+    public synchronized long getModifications() {
+        return modifications;
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    private static class Key {
+
+        final long created;
+        final long sequence;
+
+        Key(long created, long sequence) {
+            this.created = created;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -19,4 +19,9 @@ public class StateDocument {
     boolean online;
     boolean queueOpen;
     boolean queueProcessorActive;
+
+    /**
+     * Average gap between two tracks as learned by the leader, shared with the other instances.
+     */
+    Double trackGapSeconds;
 }
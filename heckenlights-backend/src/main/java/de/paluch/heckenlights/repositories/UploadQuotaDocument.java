@@ -0,0 +1,31 @@
+package de.paluch.heckenlights.repositories;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Upload timestamps of one submitter within the quota window, shared by all backend instances.
+ *
+ * @author Mark Paluch
+ */
+@Document(collection = "UploadQuota")
+@Data
+@EqualsAndHashCode(of = "id")
+public class UploadQuotaDocument {
+
+    String id;
+    List<Date> uploads = new ArrayList<>();
+
+    /**
+     * Idle submitters expire once their uploads left any quota window.
+     */
+    @Indexed(expireAfterSeconds = 86400)
+    Date updated;
+}
@@ -0,0 +1,112 @@
+package de.paluch.heckenlights.repositories;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.WriteResult;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Sliding-window upload quotas stored in MongoDB so the quota of a submitter applies across all backend instances. Each
+ * submitter has one {@link UploadQuotaDocument}. Permits are added with a conditional update that matches only while
+ * the window has room, so concurrent instances never grant more than the permitted uploads.
+ *
+ * @author Mark Paluch
+ */
+@Service
+@RequiredArgsConstructor
+public class UploadQuotaService {
+
+    /**
+     * Attempts to add permits while other instances update the same submitter.
+     */
+    private static final int MAX_ATTEMPTS = 5;
+
+    @NonNull
+    MongoOperations mongoOperations;
+
+    /**
+     * Acquire up to {@code requested} of {@code permits} upload permits within the window.
+     *
+     * @param key submitter key.
+     * @param permits
+     * @param requested
+     * @param now
+     * @param windowMs
+     * @return number of granted permits, {@literal 0} if the submitter exhausted its quota.
+     */
+    public int tryAcquire(String key, int permits, int requested, Date now, long windowMs) {
+
+        mongoOperations.upsert(query(where("id").is(key)),
+                new Update().pull("uploads", new BasicDBObject("$lte", new Date(now.getTime() - windowMs))).set("updated",
+                        now),
+                UploadQuotaDocument.class);
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+
+            UploadQuotaDocument document = mongoOperations.findById(key, UploadQuotaDocument.class);
+            int used = document != null && document.getUploads() != null ? document.getUploads().size() : 0;
+            int granted = Math.min(requested, permits - used);
+
+            if (granted <= 0) {
+                return 0;
+            }
+
+            Date[] uploads = new Date[granted];
+            Arrays.fill(uploads, now);
+
+            // matches only while the window holds at most permits - granted uploads
+            WriteResult result = mongoOperations.updateFirst(
+                    query(where("id").is(key).and("uploads." + (permits - granted)).exists(false)),
+                    new Update().push("uploads").each((Object[]) uploads), UploadQuotaDocument.class);
+
+            if (result.getN() == 1) {
+                return granted;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Return permits that were not used, most recent permits first.
+     *
+     * @param key submitter key.
+     * @param released
+     */
+    public void release(String key, int released) {
+
+        for (int i = 0; i < released; i++) {
+            mongoOperations.updateFirst(query(where("id").is(key)), new Update().pop("uploads", Update.Position.LAST),
+                    UploadQuotaDocument.class);
+        }
+    }
+
+    /**
+     * @param key submitter key.
+     * @param permits
+     * @param now
+     * @param windowMs
+     * @return number of permits available to the submitter.
+     */
+    public int getAvailable(String key, int permits, Date now, long windowMs) {
+
+        UploadQuotaDocument document = mongoOperations.findById(key, UploadQuotaDocument.class);
+        if (document == null || document.getUploads() == null) {
+            return permits;
+        }
+
+        Date cutoff = new Date(now.getTime() - windowMs);
+        return permits - (int) document.getUploads().stream().filter(upload -> upload.after(cutoff)).count();
+    }
+}
@@ -0,0 +1,26 @@
+package de.paluch.heckenlights.web;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import lombok.Data;
+
+/**
+ * @author Mark Paluch
+ */
+@XmlRootElement(name = "batch")
+@XmlAccessorType(XmlAccessType.NONE)
+@Data
+public class EnqueueBatchResponseRepresentation {
+
+    @XmlElement(name = "enqueued")
+    List<EnqueueResponseRepresentation> enqueued = new ArrayList<>();
+
+    @XmlElement(name = "message")
+    String message;
+}
@@ -1,36 +1,60 @@
 package de.paluch.heckenlights.web;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.sound.midi.InvalidMidiDataException;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import de.paluch.heckenlights.Installation;
+import de.paluch.heckenlights.application.EnqueueBatch;
+import de.paluch.heckenlights.application.EnqueuePipeline;
 import de.paluch.heckenlights.application.EnqueueTrack;
 import de.paluch.heckenlights.application.GetOnlineState;
 import de.paluch.heckenlights.application.GetPlaylist;
+import de.paluch.heckenlights.application.GetTimeline;
 import de.paluch.heckenlights.application.IsQueueOpen;
+import de.paluch.heckenlights.application.ReadMidiUpload;
+import de.paluch.heckenlights.application.ReceivePlayerEvent;
 import de.paluch.heckenlights.client.YouTubeClient;
+import de.paluch.heckenlights.model.ContentTooLargeException;
 import de.paluch.heckenlights.model.DurationExceededException;
+import de.paluch.heckenlights.model.EnqueueProgress;
 import de.paluch.heckenlights.model.EnqueueRequest;
 import de.paluch.heckenlights.model.EnqueueResult;
 import de.paluch.heckenlights.model.OfflineException;
+import de.paluch.heckenlights.model.PipelineFullException;
 import de.paluch.heckenlights.model.PlayCommandSummary;
 import de.paluch.heckenlights.model.PlayStatus;
 import de.paluch.heckenlights.model.QuotaExceededException;
+import de.paluch.heckenlights.model.Timeline;
+import de.paluch.heckenlights.relay.PlayerEventRepresentation;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -45,33 +69,142 @@ import lombok.experimental.FieldDefaults;
 @FieldDefaults(makeFinal = true)
 public class HeckenlightsEndpoint {
 
-    @NonNull
-    EnqueueTrack enqueueTrack;
-    @NonNull
-    GetPlaylist getPlaylist;
-    @NonNull
-    GetOnlineState getOnlineState;
-    @NonNull
-    IsQueueOpen isQueueOpen;
+    private static final String INSTALLATION = "installations/{installation}/";
+
     @NonNull
     YouTubeClient youTubeClient;
+    @NonNull
+    ReadMidiUpload readMidiUpload;
 
-    @RequestMapping(value = "/", produces = { MediaType.TEXT_XML, MediaType.APPLICATION_JSON }, method = RequestMethod.POST)
-    public ResponseEntity<EnqueueResponseRepresentation> uploadFile(
+    @RequestMapping(value = { "/", INSTALLATION }, produces = { MediaType.TEXT_XML, MediaType.APPLICATION_JSON },
+            method = RequestMethod.POST)
+    public ResponseEntity<EnqueueResponseRepresentation> uploadFile(Installation installation,
             @RequestHeader(value = "X-Submission-Host", required = false) String submissionHost,
             @RequestHeader(value = "X-External-SessionId", required = false) String sessionId,
-            @RequestHeader(value = "X-Request-FileName", required = false) String fileName, @RequestBody byte[] input)
-            throws IOException, InvalidMidiDataException, DurationExceededException {
+            @RequestHeader(value = "X-Request-FileName", required = false) String fileName, @RequestBody byte[] input) {
 
         if (input == null || input.length == 0) {
             return new ResponseEntity<>(new EnqueueResponseRepresentation(PlayStatus.ERROR, "No data attached"),
                     HttpStatus.BAD_REQUEST);
         }
 
+        return enqueue(installation, Mapper.createModel(submissionHost, sessionId, fileName, input));
+    }
+
+    /**
+     * Upload variant that reads the request body as stream. The declared length, the maximum size and the MIDI header are
+     * checked while the body arrives so invalid uploads are rejected without buffering them completely.
+     */
+    @RequestMapping(value = { "stream", INSTALLATION + "stream" },
+            produces = { MediaType.TEXT_XML, MediaType.APPLICATION_JSON }, method = RequestMethod.POST)
+    public ResponseEntity<EnqueueResponseRepresentation> uploadFileStream(Installation installation,
+            @RequestHeader(value = "X-Submission-Host", required = false) String submissionHost,
+            @RequestHeader(value = "X-External-SessionId", required = false) String sessionId,
+            @RequestHeader(value = "X-Request-FileName", required = false) String fileName, HttpServletRequest request)
+            throws IOException {
+
+        byte[] input;
         try {
+            input = readMidiUpload.read(request.getInputStream(), request.getContentLengthLong());
+        } catch (InvalidMidiDataException e) {
+            return new ResponseEntity<>(new EnqueueResponseRepresentation(PlayStatus.ERROR, e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (ContentTooLargeException e) {
+            return new ResponseEntity<>(new EnqueueResponseRepresentation(PlayStatus.ERROR, e.getMessage()),
+                    HttpStatus.PAYLOAD_TOO_LARGE);
+        }
 
-            EnqueueRequest model = Mapper.createModel(submissionHost, sessionId, fileName, input);
-            EnqueueResult enqueResult = enqueueTrack.enqueueWithQuotaCheck(model);
+        return enqueue(installation, Mapper.createModel(submissionHost, sessionId, fileName, input));
+    }
+
+    /**
+     * Upload multiple files with one request. Accepts multipart {@code file} parts that are MIDI files or zip archives of
+     * MIDI files and responds with one result per file.
+     */
+    @RequestMapping(value = { "batch", INSTALLATION + "batch" }, consumes = MediaType.MULTIPART_FORM_DATA,
+            produces = { MediaType.TEXT_XML, MediaType.APPLICATION_JSON }, method = RequestMethod.POST)
+    public ResponseEntity<EnqueueBatchResponseRepresentation> uploadBatch(Installation installation,
+            @RequestHeader(value = "X-Submission-Host", required = false) String submissionHost,
+            @RequestHeader(value = "X-External-SessionId", required = false) String sessionId,
+            @RequestParam("file") List<MultipartFile> files) throws IOException {
+
+        EnqueueBatch enqueueBatch = installation.getBean(EnqueueBatch.class);
+        EnqueueBatchResponseRepresentation result = new EnqueueBatchResponseRepresentation();
+        List<EnqueueRequest> requests = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+
+        for (MultipartFile file : files) {
+
+            if (file.getOriginalFilename() != null && file.getOriginalFilename().toLowerCase().endsWith(".zip")) {
+                try (ZipInputStream zip = new ZipInputStream(file.getInputStream())) {
+
+                    ZipEntry entry;
+                    while ((entry = zip.getNextEntry()) != null
+                            && result.getEnqueued().size() <= enqueueBatch.getMaximumSize()) {
+                        if (!entry.isDirectory()) {
+                            readBatchFile(submissionHost, sessionId, entry.getName(), zip, entry.getSize(), result, requests,
+                                    positions);
+                        }
+                    }
+                }
+            } else {
+                try (InputStream input = file.getInputStream()) {
+                    readBatchFile(submissionHost, sessionId, file.getOriginalFilename(), input, file.getSize(), result,
+                            requests, positions);
+                }
+            }
+
+            if (result.getEnqueued().size() > enqueueBatch.getMaximumSize()) {
+                result.getEnqueued().clear();
+                result.setMessage("Batch exceeds maximum of " + enqueueBatch.getMaximumSize() + " files");
+                return new ResponseEntity<>(result, HttpStatus.PAYLOAD_TOO_LARGE);
+            }
+        }
+
+        try {
+
+            List<EnqueueResult> enqueueResults = enqueueBatch.enqueueWithQuotaCheck(requests);
+            for (int i = 0; i < enqueueResults.size(); i++) {
+                result.getEnqueued().set(positions.get(i), Mapper.toResult(enqueueResults.get(i)));
+            }
+
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        } catch (QuotaExceededException e) {
+            result.getEnqueued().clear();
+            result.setMessage(e.getMessage());
+            return new ResponseEntity<>(result, HttpStatus.TOO_MANY_REQUESTS);
+
+        } catch (OfflineException e) {
+            result.getEnqueued().clear();
+            result.setMessage(e.getMessage());
+            return new ResponseEntity<>(result, HttpStatus.LOCKED);
+        }
+    }
+
+    /**
+     * Read a single file of a batch. Unreadable files are reported right away, readable files are collected for enqueueing
+     * and a placeholder is added to keep the file order.
+     */
+    private void readBatchFile(String submissionHost, String sessionId, String fileName, InputStream input, long size,
+            EnqueueBatchResponseRepresentation result, List<EnqueueRequest> requests, List<Integer> positions)
+            throws IOException {
+
+        try {
+            byte[] content = readMidiUpload.read(input, size);
+
+            positions.add(result.getEnqueued().size());
+            requests.add(Mapper.createModel(submissionHost, sessionId, fileName, content));
+            result.getEnqueued().add(null);
+        } catch (InvalidMidiDataException | ContentTooLargeException e) {
+            result.getEnqueued().add(new EnqueueResponseRepresentation(PlayStatus.ERROR, fileName + ": " + e.getMessage()));
+        }
+    }
+
+    private ResponseEntity<EnqueueResponseRepresentation> enqueue(Installation installation, EnqueueRequest model) {
+
+        try {
+
+            EnqueueResult enqueResult = installation.getBean(EnqueueTrack.class).enqueueWithQuotaCheck(model);
 
             EnqueueResponseRepresentation result = Mapper.toResult(enqueResult);
             return new ResponseEntity<>(result, HttpStatus.OK);
@@ -91,17 +224,82 @@ public class HeckenlightsEndpoint {
             return new ResponseEntity<>(new EnqueueResponseRepresentation(PlayStatus.OFFLINE, e.getMessage()),
                     HttpStatus.LOCKED);
 
+        } catch (ContentTooLargeException e) {
+            return new ResponseEntity<>(new EnqueueResponseRepresentation(PlayStatus.ERROR, e.getMessage()),
+                    HttpStatus.PAYLOAD_TOO_LARGE);
         }
     }
 
-    @RequestMapping(value = "/", produces = { MediaType.TEXT_XML, MediaType.APPLICATION_JSON }, method = RequestMethod.GET)
-    public PlayCommandsRepresentation find(@QueryParam("playStatus") PlayStatus playStatus) {
-        List<PlayCommandSummary> playlist = getPlaylist.getPlaylist(playStatus);
+    /**
+     * Accept an upload for asynchronous processing. Responds with {@code 202 Accepted} and the location to poll for the
+     * outcome.
+     */
+    @RequestMapping(value = { "async", INSTALLATION + "async" }, produces = { MediaType.TEXT_XML, MediaType.APPLICATION_JSON },
+            method = RequestMethod.POST)
+    public ResponseEntity<EnqueueResponseRepresentation> uploadFileAsync(Installation installation,
+            @RequestHeader(value = "X-Submission-Host", required = false) String submissionHost,
+            @RequestHeader(value = "X-External-SessionId", required = false) String sessionId,
+            @RequestHeader(value = "X-Request-FileName", required = false) String fileName, @RequestBody byte[] input) {
+
+        if (input == null || input.length == 0) {
+            return new ResponseEntity<>(new EnqueueResponseRepresentation(PlayStatus.ERROR, "No data attached"),
+                    HttpStatus.BAD_REQUEST);
+        }
+
+        try {
+
+            EnqueueRequest model = Mapper.createModel(submissionHost, sessionId, fileName, input);
+            EnqueueProgress progress = installation.getBean(EnqueuePipeline.class).submit(model);
+
+            URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}")
+                    .buildAndExpand(progress.getCommandId()).toUri();
+
+            return ResponseEntity.accepted().location(location).body(Mapper.toResult(progress));
+        } catch (InvalidMidiDataException e) {
+            return new ResponseEntity<>(new EnqueueResponseRepresentation(PlayStatus.ERROR, e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+
+        } catch (DurationExceededException e) {
+            return new ResponseEntity<>(new EnqueueResponseRepresentation(PlayStatus.DURATION_EXCEEDED, e.getMessage()),
+                    HttpStatus.BAD_REQUEST);
+
+        } catch (OfflineException e) {
+            return new ResponseEntity<>(new EnqueueResponseRepresentation(PlayStatus.OFFLINE, e.getMessage()),
+                    HttpStatus.LOCKED);
+
+        } catch (PipelineFullException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(new EnqueueResponseRepresentation(PlayStatus.QUOTA, e.getMessage()));
+        }
+    }
+
+    /**
+     * Poll the outcome of an asynchronous upload. Responds with {@code 202 Accepted} while the upload is pending.
+     */
+    @RequestMapping(value = { "async/{id}", INSTALLATION + "async/{id}" },
+            produces = { MediaType.TEXT_XML, MediaType.APPLICATION_JSON }, method = RequestMethod.GET)
+    public ResponseEntity<EnqueueResponseRepresentation> getAsyncResult(Installation installation,
+            @PathVariable("id") String id) {
+
+        EnqueueProgress progress = installation.getBean(EnqueuePipeline.class).getProgress(id);
+        if (progress == null) {
+            throw new NotFoundException("Upload with id " + id + " not found");
+        }
+
+        return new ResponseEntity<>(Mapper.toResult(progress), progress.isPending() ? HttpStatus.ACCEPTED : HttpStatus.OK);
+    }
+
+    @RequestMapping(value = { "/", INSTALLATION }, produces = { MediaType.TEXT_XML, MediaType.APPLICATION_JSON },
+            method = RequestMethod.GET)
+    public PlayCommandsRepresentation find(Installation installation, @QueryParam("playStatus") PlayStatus playStatus) {
+
+        GetOnlineState getOnlineState = installation.getBean(GetOnlineState.class);
+        List<PlayCommandSummary> playlist = installation.getBean(GetPlaylist.class).getPlaylist(playStatus);
         boolean isOnline = getOnlineState.isOnline();
 
         PlayCommandsRepresentation result = new PlayCommandsRepresentation();
         result.setOnline(isOnline);
-        result.setQueueOpen(isQueueOpen.isQueueOpen());
+        result.setQueueOpen(installation.getBean(IsQueueOpen.class).isQueueOpen());
         result.setProcessingPlayback(getOnlineState.isProcessingPlayback());
 
         for (PlayCommandSummary summaryModel : playlist) {
@@ -114,9 +312,10 @@ public class HeckenlightsEndpoint {
         return result;
     }
 
-    @RequestMapping(value = "{id}", produces = { MediaType.TEXT_XML, MediaType.APPLICATION_JSON }, method = RequestMethod.GET)
-    public PlayCommandRepresentation find(@PathVariable("id") String id) {
-        PlayCommandSummary playCommand = getPlaylist.getPlayCommand(id);
+    @RequestMapping(value = { "{id}", INSTALLATION + "{id}" }, produces = { MediaType.TEXT_XML, MediaType.APPLICATION_JSON },
+            method = RequestMethod.GET)
+    public PlayCommandRepresentation find(Installation installation, @PathVariable("id") String id) {
+        PlayCommandSummary playCommand = installation.getBean(GetPlaylist.class).getPlayCommand(id);
         if (playCommand == null) {
             throw new NotFoundException("PlayCommand with id " + id + " not found");
         }
@@ -127,6 +326,49 @@ public class HeckenlightsEndpoint {
         return result;
     }
 
+    /**
+     * Upcoming rule windows. Cacheable until the next transition so clients can refresh when the queue opens or closes
+     * instead of polling the playlist.
+     */
+    @GetMapping(value = { "timeline", INSTALLATION + "timeline" }, produces = { MediaType.TEXT_XML,
+            MediaType.APPLICATION_JSON })
+    public ResponseEntity<TimelineRepresentation> getTimeline(Installation installation) {
+
+        GetTimeline getTimeline = installation.getBean(GetTimeline.class);
+        Timeline timeline = getTimeline.getTimeline();
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(getTimeline.getMaxAgeSeconds(timeline), TimeUnit.SECONDS).cachePublic())
+                .eTag(Integer.toHexString(timeline.getWindows().hashCode())).body(Mapper.toTimeline(timeline));
+    }
+
+    /**
+     * Callback for player events pushed by the relay, authenticated by the {@code X-Relay-Token} header.
+     */
+    @PostMapping(value = { "relay/events", INSTALLATION + "relay/events" }, consumes = MediaType.APPLICATION_JSON)
+    public ResponseEntity<Void> receivePlayerEvent(Installation installation,
+            @RequestHeader(value = "X-Relay-Token", required = false) String token,
+            @RequestBody PlayerEventRepresentation event) {
+
+        ReceivePlayerEvent.Outcome outcome;
+        try {
+            outcome = installation.getBean(ReceivePlayerEvent.class).receive(token, event);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        switch (outcome) {
+            case DISABLED:
+                return ResponseEntity.notFound().build();
+            case UNAUTHORIZED:
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+            case NOT_LEADER:
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            default:
+                return ResponseEntity.noContent().build();
+        }
+    }
+
     @GetMapping(value = "youtube-streaming-id", produces = { MediaType.TEXT_PLAIN })
     public String getYoutubeStreamingId() {
         return youTubeClient.getYouTubeStreamingId();
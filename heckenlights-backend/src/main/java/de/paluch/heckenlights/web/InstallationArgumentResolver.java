@@ -0,0 +1,66 @@
+package de.paluch.heckenlights.web;
+
+import java.util.Map;
+
+import javax.ws.rs.NotFoundException;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.HandlerMapping;
+
+import de.paluch.heckenlights.Installation;
+import de.paluch.heckenlights.Installations;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Resolves the {@link Installation} a request is addressed to from the {@code installation} path variable or the
+ * {@code X-Installation} header. Requests without either are served by the default installation.
+ *
+ * @author Mark Paluch
+ */
+@Component
+@RequiredArgsConstructor
+public class InstallationArgumentResolver implements HandlerMethodArgumentResolver {
+
+    public static final String PATH_VARIABLE = "installation";
+    public static final String HEADER = "X-Installation";
+
+    @NonNull
+    Installations installations;
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return Installation.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+            NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+
+        Map<String, String> variables = (Map<String, String>) webRequest
+                .getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+
+        String name = variables != null ? variables.get(PATH_VARIABLE) : null;
+        if (name == null) {
+            name = webRequest.getHeader(HEADER);
+        }
+
+        if (name == null) {
+            return installations.getDefault();
+        }
+
+        Installation installation = installations.getInstallation(name);
+        if (installation == null) {
+            throw new NotFoundException("Installation " + name + " not found");
+        }
+
+        return installation;
+    }
+}
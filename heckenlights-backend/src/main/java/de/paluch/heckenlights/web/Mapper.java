@@ -7,10 +7,12 @@ import org.apache.commons.io.FilenameUtils;
 
 import com.google.common.collect.Lists;
 
+import de.paluch.heckenlights.model.EnqueueProgress;
 import de.paluch.heckenlights.model.EnqueueRequest;
 import de.paluch.heckenlights.model.EnqueueResult;
 import de.paluch.heckenlights.model.PlayCommandSummary;
 import de.paluch.heckenlights.model.PlayStatus;
+import de.paluch.heckenlights.model.Timeline;
 
 /**
  * @author <a href="mailto:mpaluch@paluch.biz">Mark Paluch</a>
@@ -49,13 +51,41 @@ class Mapper {
         return result;
     }
 
+    static TimelineRepresentation toTimeline(Timeline model) {
+
+        TimelineRepresentation result = new TimelineRepresentation();
+        result.setNextTransition(model.getNextTransition());
+
+        for (Timeline.Window window : model.getWindows()) {
+
+            TimelineWindowRepresentation representation = new TimelineWindowRepresentation();
+            representation.setFrom(window.getFrom());
+            representation.setUntil(window.getUntil());
+            representation.setActions(window.getActions());
+            representation.setOnline(window.getOnline());
+            result.getWindows().add(representation);
+        }
+
+        return result;
+    }
+
     static EnqueueResponseRepresentation toResult(EnqueueResult model) {
         EnqueueResponseRepresentation result = new EnqueueResponseRepresentation();
         result.setEnqueuedCommandId(model.getCommandId());
         result.setMessage(model.getException());
         result.setDurationToPlay(model.getDurationToPlay());
         result.setTrackName(model.getTrackName());
-        result.setPlayStatus(PlayStatus.ENQUEUED);
+        result.setPlayStatus(model.getPlayStatus() != null ? model.getPlayStatus() : PlayStatus.ENQUEUED);
+        return result;
+    }
+
+    static EnqueueResponseRepresentation toResult(EnqueueProgress model) {
+        EnqueueResponseRepresentation result = new EnqueueResponseRepresentation();
+        result.setEnqueuedCommandId(model.getCommandId());
+        result.setMessage(model.getMessage());
+        result.setDurationToPlay(model.getDurationToPlay());
+        result.setTrackName(model.getTrackName());
+        result.setPlayStatus(model.getPlayStatus());
         return result;
     }
 
@@ -0,0 +1,27 @@
+package de.paluch.heckenlights.web;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import lombok.Data;
+
+/**
+ * @author Mark Paluch
+ */
+@XmlRootElement(name = "timeline")
+@XmlAccessorType(XmlAccessType.NONE)
+@Data
+public class TimelineRepresentation {
+
+    @XmlElement(name = "nextTransition")
+    Date nextTransition;
+
+    @XmlElement(name = "window")
+    List<TimelineWindowRepresentation> windows = new ArrayList<>();
+}
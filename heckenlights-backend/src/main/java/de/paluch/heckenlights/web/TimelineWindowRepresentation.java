@@ -0,0 +1,35 @@
+package de.paluch.heckenlights.web;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+
+import de.paluch.heckenlights.model.Rule;
+import de.paluch.heckenlights.model.Timeline;
+import lombok.Data;
+
+/**
+ * @author Mark Paluch
+ */
+@XmlAccessorType(XmlAccessType.NONE)
+@Data
+public class TimelineWindowRepresentation {
+
+    @XmlElement(name = "from")
+    Date from;
+
+    @XmlElement(name = "until")
+    Date until;
+
+    @XmlElementWrapper(name = "actions")
+    @XmlElement(name = "action")
+    List<Rule.Action> actions = new ArrayList<>();
+
+    @XmlElement(name = "online")
+    Timeline.Online online;
+}
@@ -0,0 +1,26 @@
+package de.paluch.heckenlights.web;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author Mark Paluch
+ */
+@Configuration
+@RequiredArgsConstructor
+class WebConfiguration extends WebMvcConfigurerAdapter {
+
+    @NonNull
+    InstallationArgumentResolver installationArgumentResolver;
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> argumentResolvers) {
+        argumentResolvers.add(installationArgumentResolver);
+    }
+}
@@ -0,0 +1,68 @@
+package de.paluch.heckenlights;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+/**
+ * @author Mark Paluch
+ */
+public class InstallationsTest {
+
+    private Map<String, Object> properties = new HashMap<>();
+    private StandardEnvironment environment = new StandardEnvironment();
+
+    @Before
+    public void before() throws Exception {
+
+        properties.put("spring.data.mongodb.database", "heckenlights");
+        properties.put("midirelay.readTimeout", "5000");
+        properties.put("installations.north.midirelay.url", "http://north:9595");
+        properties.put("installations.north.rules.location", "file:north-rules.xml");
+        properties.put("installations.north.spring.data.mongodb.database", "heckenlights-north");
+        properties.put("installations.north.midirelay.readTimeout", "2000");
+        properties.put("installations.south.midirelay.url", "http://south:9595");
+
+        environment.getPropertySources().addFirst(new MapPropertySource("test", properties));
+    }
+
+    @Test
+    public void resolvesInstallationProperties() throws Exception {
+
+        Map<String, Object> north = create("north").getProperties("north");
+
+        assertThat(north).containsEntry("midirelay.url", "http://north:9595")
+                .containsEntry("spring.data.mongodb.database", "heckenlights-north")
+                .containsEntry("midirelay.readTimeout", "2000").doesNotContainKey("installations.south.midirelay.url");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void requiresDatabasePerInstallation() throws Exception {
+        create("south").getProperties("south");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsDatabaseOfDefaultInstallation() throws Exception {
+
+        properties.put("installations.north.spring.data.mongodb.database", "heckenlights");
+
+        create("north").getProperties("north");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDefaultName() throws Exception {
+        create(Installations.DEFAULT);
+    }
+
+    private Installations create(String... names) {
+        return new Installations(mock(ApplicationContext.class), environment, names);
+    }
+}
@@ -0,0 +1,156 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import de.paluch.heckenlights.model.ContentTooLargeException;
+import de.paluch.heckenlights.model.OfflineException;
+import de.paluch.heckenlights.model.QuotaExceededException;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import de.paluch.heckenlights.repositories.StateService;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AdmissionChainTest {
+
+    private static final byte[] MIDI = { 'M', 'T', 'h', 'd', 0, 0, 0, 6 };
+
+    @Mock
+    private GetOnlineState getOnlineState;
+
+    @Mock
+    private ReadMidiUpload readMidiUpload;
+
+    @Mock
+    private PlayCommandService playCommandService;
+
+    @Mock
+    private UploadRateLimiter uploadRateLimiter;
+
+    @Mock
+    private StateService stateService;
+
+    private AdmissionChain sut;
+
+    @Before
+    public void before() throws Exception {
+
+        sut = new AdmissionChain(Arrays.asList(new RuleOnlineAdmissionStage(getOnlineState),
+                new ContentAdmissionStage(readMidiUpload), new QueueDepthAdmissionStage(playCommandService),
+                new QuotaAdmissionStage(uploadRateLimiter), new StateAdmissionStage(stateService)));
+
+        when(getOnlineState.isOnlineByRule()).thenReturn(true);
+        when(readMidiUpload.getMaximumSize()).thenReturn(100);
+        when(uploadRateLimiter.tryAcquire("session", "host", 5)).thenReturn(5);
+        when(stateService.isOnline()).thenReturn(true);
+        when(stateService.isQueueOpen()).thenReturn(true);
+    }
+
+    @Test
+    public void admitsWithinQueueAndQuota() throws Exception {
+
+        when(playCommandService.getEnqueuedCount()).thenReturn(18);
+        when(uploadRateLimiter.tryAcquire("session", "host", 3)).thenReturn(2);
+
+        int allowance = sut.admit(new Admission("session", "host", MIDI, 5));
+
+        assertThat(allowance).isEqualTo(2);
+        verify(uploadRateLimiter, never()).release("session", "host", 2);
+    }
+
+    @Test
+    public void rejectsOfflineRuleWithoutFurtherChecks() throws Exception {
+
+        when(getOnlineState.isOnlineByRule()).thenReturn(false);
+
+        try {
+            sut.admit(new Admission("session", "host", MIDI, 1));
+            fail("Missing OfflineException");
+        } catch (OfflineException e) {
+            verifyZeroInteractions(readMidiUpload, playCommandService, uploadRateLimiter, stateService);
+        }
+    }
+
+    @Test
+    public void rejectsContentBeforeQueueAndQuota() throws Exception {
+
+        try {
+            sut.admit(new Admission("session", "host", "no midi".getBytes(), 1));
+            fail("Missing InvalidMidiDataException");
+        } catch (InvalidMidiDataException e) {
+            verifyZeroInteractions(playCommandService, uploadRateLimiter, stateService);
+        }
+
+        try {
+            sut.admit(new Admission("session", "host", new byte[101], 1));
+            fail("Missing ContentTooLargeException");
+        } catch (ContentTooLargeException e) {
+            verifyZeroInteractions(playCommandService, uploadRateLimiter, stateService);
+        }
+    }
+
+    @Test
+    public void rejectsFullQueueWithoutQuota() throws Exception {
+
+        when(playCommandService.getEnqueuedCount()).thenReturn(21);
+
+        try {
+            sut.admit(new Admission("session", "host", null, 1));
+            fail("Missing QuotaExceededException");
+        } catch (QuotaExceededException e) {
+            assertThat(e).hasMessageContaining("Queue limit");
+            verifyZeroInteractions(uploadRateLimiter, stateService);
+        }
+    }
+
+    @Test
+    public void releasesQuotaWhenClosed() throws Exception {
+
+        when(stateService.isQueueOpen()).thenReturn(false);
+
+        try {
+            sut.admit(new Admission("session", "host", null, 5));
+            fail("Missing OfflineException");
+        } catch (OfflineException e) {
+            verify(uploadRateLimiter).release("session", "host", 5);
+        }
+    }
+
+    @Test
+    public void recordsStatistics() throws Exception {
+
+        when(getOnlineState.isOnlineByRule()).thenReturn(false, true);
+
+        try {
+            sut.admit(new Admission("session", "host", MIDI, 5));
+            fail("Missing OfflineException");
+        } catch (OfflineException e) {
+        }
+        sut.admit(new Admission("session", "host", MIDI, 5));
+
+        List<AdmissionChain.StageStatistics> statistics = sut.getStatistics();
+
+        assertThat(statistics).extracting("name").containsExactly("rule", "content", "queue", "quota", "state");
+        assertThat(statistics.get(0).getChecked()).isEqualTo(2);
+        assertThat(statistics.get(0).getRejected()).isEqualTo(1);
+        assertThat(statistics.get(4).getChecked()).isEqualTo(1);
+        assertThat(statistics.get(4).getRejected()).isEqualTo(0);
+    }
+}
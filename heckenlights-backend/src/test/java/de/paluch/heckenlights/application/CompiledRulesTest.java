@@ -0,0 +1,110 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+import de.paluch.heckenlights.model.Rule;
+import de.paluch.heckenlights.model.RuleState;
+import de.paluch.heckenlights.model.Rules;
+
+/**
+ * @author Mark Paluch
+ */
+public class CompiledRulesTest {
+
+    private Rules rules = new Rules();
+    private RuleState ruleState = new RuleState();
+
+    @Before
+    public void before() throws Exception {
+
+        rules.setTimeunit(TimeUnit.MINUTES);
+        rules.setDefaultAction(Rule.Action.OFFLINE);
+    }
+
+    @Test
+    public void minuteOfWeekStartsOnMonday() throws Exception {
+
+        assertThat(CompiledRules.minuteOfWeek(localMillis("2016-12-05T00:00:00"))).isEqualTo(0);
+        assertThat(CompiledRules.minuteOfWeek(localMillis("2016-12-11T23:59:59"))).isEqualTo(7 * 24 * 60 - 1);
+        assertThat(CompiledRules.minuteOfWeek(localMillis("1969-12-29T00:01:00"))).isEqualTo(1);
+    }
+
+    @Test
+    public void appliesRulesOnConfiguredDaysOnly() throws Exception {
+
+        Rule weekend = rule("17:00", "22:00", Rule.Action.PLAYLIST);
+        weekend.setDays(Sets.newHashSet(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY));
+        rules.getRules().add(weekend);
+        rules.getRules().add(rule("17:00", "22:00", Rule.Action.LIGHTS_ON));
+
+        CompiledRules sut = CompiledRules.compile(rules);
+
+        // 2016-12-10 is a Saturday
+        assertThat(sut.resolve(localMillis("2016-12-10T18:00:00"), ruleState).getAction()).isEqualTo(Rule.Action.PLAYLIST);
+        assertThat(sut.resolve(localMillis("2016-12-12T18:00:00"), ruleState).getAction())
+                .isEqualTo(Rule.Action.LIGHTS_ON);
+    }
+
+    @Test
+    public void doesNotWrapAroundMidnight() throws Exception {
+
+        rules.getRules().add(rule("22:00", "02:00", Rule.Action.LIGHTS_ON));
+
+        CompiledRules sut = CompiledRules.compile(rules);
+
+        assertThat(sut.resolve(localMillis("2016-12-12T23:00:00"), ruleState).getAction()).isEqualTo(Rule.Action.OFFLINE);
+        assertThat(sut.resolve(localMillis("2016-12-12T01:00:00"), ruleState).getAction()).isEqualTo(Rule.Action.OFFLINE);
+        assertThat(sut.getMillisUntilChange(localMillis("2016-12-12T01:00:00"), ruleState)).isEqualTo(-1);
+    }
+
+    @Test
+    public void ruleWithoutToNeverMatches() throws Exception {
+
+        rules.getRules().add(rule("05:00", null, Rule.Action.LIGHTS_ON));
+        rules.getRules().add(rule(null, "06:00", Rule.Action.PLAYLIST));
+
+        CompiledRules sut = CompiledRules.compile(rules);
+
+        assertThat(sut.resolve(localMillis("2016-12-12T00:00:00"), ruleState).getAction()).isEqualTo(Rule.Action.PLAYLIST);
+        assertThat(sut.resolve(localMillis("2016-12-12T05:30:00"), ruleState).getAction()).isEqualTo(Rule.Action.PLAYLIST);
+        assertThat(sut.resolve(localMillis("2016-12-12T06:01:00"), ruleState).getAction()).isEqualTo(Rule.Action.OFFLINE);
+    }
+
+    @Test
+    public void millisUntilChangeCrossesEndOfWeek() throws Exception {
+
+        Rule monday = rule("00:00", "00:59", Rule.Action.LIGHTS_ON);
+        monday.setDays(Sets.newHashSet(DayOfWeek.MONDAY));
+        rules.getRules().add(monday);
+
+        CompiledRules sut = CompiledRules.compile(rules);
+
+        assertThat(sut.getMillisUntilChange(localMillis("2016-12-11T23:59:30"), ruleState))
+                .isEqualTo(TimeUnit.SECONDS.toMillis(30));
+        assertThat(sut.getMillisUntilChange(localMillis("2016-12-12T01:00:00"), ruleState))
+                .isEqualTo(TimeUnit.DAYS.toMillis(7) - TimeUnit.HOURS.toMillis(1));
+    }
+
+    private static Rule rule(String from, String to, Rule.Action action) {
+
+        Rule rule = new Rule();
+        rule.setFrom(from);
+        rule.setTo(to);
+        rule.setAction(action);
+        return rule;
+    }
+
+    private static long localMillis(String dateTime) {
+        return LocalDateTime.parse(dateTime).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
@@ -0,0 +1,161 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.ApplicationEventPublisher;
+
+import de.paluch.heckenlights.model.EnqueueRequest;
+import de.paluch.heckenlights.model.EnqueueResult;
+import de.paluch.heckenlights.model.MidiAnalysis;
+import de.paluch.heckenlights.model.MidiAnalysis.Verdict;
+import de.paluch.heckenlights.model.MidiContent;
+import de.paluch.heckenlights.model.PlayStatus;
+import de.paluch.heckenlights.model.QuotaExceededException;
+import de.paluch.heckenlights.repositories.MidiContentService;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class EnqueueBatchTest {
+
+    @Mock
+    private EnqueueTrack enqueueTrack;
+
+    @Mock
+    private MidiAnalysisCache midiAnalysisCache;
+
+    @Mock
+    private MidiContentService midiContentService;
+
+    @Mock
+    private PlayCommandService playCommandService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private EnqueueBatch sut;
+
+    @Before
+    public void before() throws Exception {
+
+        sut = new EnqueueBatch(enqueueTrack, midiAnalysisCache, midiContentService, playCommandService,
+                eventPublisher, 2, 10);
+
+        when(enqueueTrack.checkAdmission(anyString(), anyString(), any(byte[].class), anyInt())).thenReturn(10);
+        when(midiAnalysisCache.analyze(anyString(), any(byte[].class))).then(invocation -> {
+
+            String hash = invocation.getArgumentAt(0, String.class);
+            String content = new String(invocation.getArgumentAt(1, byte[].class));
+
+            if (content.startsWith("invalid")) {
+                return MidiAnalysis.invalid(hash, "invalid");
+            }
+            return new MidiAnalysis(hash, Verdict.ACCEPTED, null, 20, content, 1);
+        });
+        when(enqueueTrack.prepare(any(EnqueueRequest.class), any(MidiAnalysis.class))).then(invocation -> {
+
+            EnqueueRequest request = invocation.getArgumentAt(0, EnqueueRequest.class);
+            MidiAnalysis analysis = invocation.getArgumentAt(1, MidiAnalysis.class);
+            request.setCommandId(analysis.getTrackName());
+            request.setTrackName(analysis.getTrackName());
+            request.setDuration(analysis.getDuration());
+            return new MidiContent(analysis.getHash(), new ObjectId(), analysis.getDuration(), analysis.getTrackName());
+        });
+        when(playCommandService.estimateTimeToPlayQueue()).thenReturn(100);
+        when(playCommandService.getTrackGapSeconds()).thenReturn(5);
+    }
+
+    @After
+    public void after() throws Exception {
+        sut.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void enqueuesBatchWithSingleInsert() throws Exception {
+
+        List<EnqueueResult> results = sut.enqueueWithQuotaCheck(Arrays.asList(request("a"), request("invalid"), request("b")));
+
+        assertThat(results).extracting("trackName").containsExactly("a", null, "b");
+        assertThat(results).extracting("playStatus").containsExactly(null, PlayStatus.ERROR, null);
+        assertThat(results).extracting("durationToPlay").containsExactly(100, 0, 125);
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(playCommandService).storeEnqueueRequests(captor.capture(), anyListOf(ObjectId.class));
+        assertThat(captor.getValue()).extracting("trackName").containsExactly("a", "b");
+        verify(enqueueTrack, times(1)).checkAdmission("session", "host", null, 3);
+        verify(enqueueTrack).releaseAdmission("session", "host", 8);
+    }
+
+    @Test
+    public void limitsToAllowance() throws Exception {
+
+        when(enqueueTrack.checkAdmission(anyString(), anyString(), any(byte[].class), anyInt())).thenReturn(1);
+
+        List<EnqueueResult> results = sut.enqueueWithQuotaCheck(Arrays.asList(request("a"), request("b")));
+
+        assertThat(results).extracting("playStatus").containsExactly(null, PlayStatus.QUOTA);
+    }
+
+    @Test(expected = QuotaExceededException.class)
+    public void rejectsBatchWithoutQuota() throws Exception {
+
+        when(enqueueTrack.checkAdmission(anyString(), anyString(), any(byte[].class), anyInt())).thenThrow(new QuotaExceededException("quota"));
+
+        sut.enqueueWithQuotaCheck(Arrays.asList(request("a")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void releasesContentOnFailure() throws Exception {
+
+        doThrow(new IllegalStateException()).when(playCommandService).storeEnqueueRequests(any(List.class),
+                any(List.class));
+
+        try {
+            sut.enqueueWithQuotaCheck(Arrays.asList(request("a"), request("b")));
+            fail("Missing IllegalStateException");
+        } catch (IllegalStateException e) {
+            verify(midiContentService).release(eq(MidiContentService.hash("a".getBytes())));
+            verify(midiContentService).release(eq(MidiContentService.hash("b".getBytes())));
+            verify(enqueueTrack).releaseAdmission("session", "host", 10);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOversizedBatch() throws Exception {
+        sut.enqueueWithQuotaCheck(Arrays.asList(new EnqueueRequest[11]));
+    }
+
+    private EnqueueRequest request(String content) {
+
+        EnqueueRequest request = new EnqueueRequest();
+        request.setContent(content.getBytes());
+        request.setExternalSessionId("session");
+        request.setSubmissionHost("host");
+        return request;
+    }
+}
@@ -0,0 +1,181 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.common.io.Resources;
+
+import de.paluch.heckenlights.model.EnqueueProgress;
+import de.paluch.heckenlights.model.EnqueueRequest;
+import de.paluch.heckenlights.model.EnqueueResult;
+import de.paluch.heckenlights.model.OfflineException;
+import de.paluch.heckenlights.model.PipelineFullException;
+import de.paluch.heckenlights.model.PlayStatus;
+import de.paluch.heckenlights.model.QuotaExceededException;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class EnqueuePipelineTest {
+
+    @Mock
+    private EnqueueTrack enqueueTrack;
+
+    @Mock
+    private MidiAnalysisCache midiAnalysisCache;
+
+    @Mock
+    private GetOnlineState getOnlineState;
+
+    private EnqueuePipeline sut;
+
+    private byte[] content;
+
+    @Before
+    public void before() throws Exception {
+
+        sut = new EnqueuePipeline(enqueueTrack, midiAnalysisCache, getOnlineState, 1, 1);
+        content = Resources.toByteArray(Resources.getResource("P-Christmas_Carols_-_Winter_Wonderland.mid"));
+
+        when(getOnlineState.isOnlineByRule()).thenReturn(true);
+    }
+
+    @After
+    public void after() throws Exception {
+        sut.shutdown();
+    }
+
+    @Test
+    public void completesAsynchronously() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        when(enqueueTrack.enqueueWithQuotaCheck(any(EnqueueRequest.class))).then(invocation -> {
+
+            release.await(5, TimeUnit.SECONDS);
+
+            EnqueueRequest request = invocation.getArgumentAt(0, EnqueueRequest.class);
+            EnqueueResult result = new EnqueueResult();
+            result.setCommandId(request.getCommandId());
+            result.setTrackName("Seq-1");
+            return result;
+        });
+
+        EnqueueProgress pending = sut.submit(request());
+
+        assertThat(pending.isPending()).isTrue();
+        assertThat(sut.getProgress(pending.getCommandId()).isPending()).isTrue();
+
+        release.countDown();
+        EnqueueProgress done = await(pending.getCommandId());
+
+        assertThat(done.getPlayStatus()).isEqualTo(PlayStatus.ENQUEUED);
+        assertThat(done.getTrackName()).isEqualTo("Seq-1");
+    }
+
+    @Test
+    public void recordsFailure() throws Exception {
+
+        when(enqueueTrack.enqueueWithQuotaCheck(any(EnqueueRequest.class)))
+                .thenThrow(new QuotaExceededException("Quota"));
+
+        EnqueueProgress pending = sut.submit(request());
+        EnqueueProgress done = await(pending.getCommandId());
+
+        assertThat(done.getPlayStatus()).isEqualTo(PlayStatus.QUOTA);
+        assertThat(done.getMessage()).isEqualTo("Quota");
+    }
+
+    @Test
+    public void rejectsWhenFull() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        when(enqueueTrack.enqueueWithQuotaCheck(any(EnqueueRequest.class))).then(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return new EnqueueResult();
+        });
+
+        sut.submit(request());
+        sut.submit(request());
+
+        try {
+            sut.submit(request());
+            fail("Missing PipelineFullException");
+        } catch (PipelineFullException e) {
+            assertThat(e).hasMessageContaining("full");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test(expected = InvalidMidiDataException.class)
+    public void rejectsNonMidiContent() throws Exception {
+
+        EnqueueRequest request = request();
+        request.setContent("not a midi file".getBytes());
+
+        sut.submit(request);
+    }
+
+    @Test
+    public void rejectsWhenOffline() throws Exception {
+
+        when(getOnlineState.isOnlineByRule()).thenReturn(false);
+
+        try {
+            sut.submit(request());
+            fail("Missing OfflineException");
+        } catch (OfflineException e) {
+            verifyZeroInteractions(enqueueTrack);
+        }
+    }
+
+    @Test
+    public void assignsCommandIdAndHash() throws Exception {
+
+        when(enqueueTrack.enqueueWithQuotaCheck(any(EnqueueRequest.class))).thenReturn(new EnqueueResult());
+
+        EnqueueRequest request = request();
+        EnqueueProgress pending = sut.submit(request);
+
+        assertThat(request.getCommandId()).isEqualTo(pending.getCommandId());
+        assertThat(request.getContentHash()).hasSize(64);
+        verify(midiAnalysisCache).getIfPresent(request.getContentHash());
+    }
+
+    private EnqueueRequest request() {
+
+        EnqueueRequest request = new EnqueueRequest();
+        request.setContent(content);
+        return request;
+    }
+
+    private EnqueueProgress await(String commandId) throws InterruptedException {
+
+        for (int i = 0; i < 500; i++) {
+            EnqueueProgress progress = sut.getProgress(commandId);
+            if (!progress.isPending()) {
+                return progress;
+            }
+            Thread.sleep(10);
+        }
+
+        throw new AssertionError("Upload " + commandId + " still pending");
+    }
+}
@@ -1,19 +1,38 @@
 package de.paluch.heckenlights.application;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 import java.io.InputStream;
 
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.bson.types.ObjectId;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.util.StreamUtils;
 
 import de.paluch.heckenlights.model.EnqueueRequest;
 import de.paluch.heckenlights.model.EnqueueResult;
+import de.paluch.heckenlights.model.MidiAnalysis;
+import de.paluch.heckenlights.model.MidiAnalysis.Verdict;
+import de.paluch.heckenlights.model.MidiContent;
+import de.paluch.heckenlights.model.QuotaExceededException;
+import de.paluch.heckenlights.model.RuleState;
+import de.paluch.heckenlights.repositories.MidiAnalysisService;
+import de.paluch.heckenlights.repositories.MidiContentService;
 import de.paluch.heckenlights.repositories.PlayCommandService;
 
 /**
@@ -24,15 +43,32 @@ import de.paluch.heckenlights.repositories.PlayCommandService;
 @RunWith(MockitoJUnitRunner.class)
 public class EnqueueTrackTest {
 
-    @InjectMocks
+    private static final ObjectId FILE_REFERENCE = new ObjectId();
+
     private EnqueueTrack sut;
 
     @Mock
     private PlayCommandService playCommandService;
 
+    @Mock
+    private MidiContentService midiContentService;
+
+    @Mock
+    private MidiAnalysisService midiAnalysisService;
+
+    @Mock
+    private AdmissionChain admissionChain;
+
+    @Mock
+    private UploadRateLimiter uploadRateLimiter;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @Before
     public void before() throws Exception {
-        sut = new EnqueueTrack(playCommandService, null, null, null);
+        sut = new EnqueueTrack(playCommandService, midiContentService, new MidiAnalysisCache(midiAnalysisService, 10),
+                new RuleState(), admissionChain, uploadRateLimiter, eventPublisher);
     }
 
     @Test
@@ -42,11 +78,114 @@ public class EnqueueTrackTest {
         InputStream is = getClass().getResourceAsStream("/P-Christmas_Carols_-_Winter_Wonderland.mid");
         model.setContent(StreamUtils.copyToByteArray(is));
 
+        when(midiContentService.create(anyString(), anyString(), anyString(), any(byte[].class), anyInt(), anyString()))
+                .then(invocation -> new MidiContent(invocation.getArgumentAt(0, String.class), FILE_REFERENCE,
+                        invocation.getArgumentAt(4, Integer.class), invocation.getArgumentAt(5, String.class)));
+
         model.setDuration(12);
         EnqueueResult result = sut.populate(model);
 
         assertThat(model.getTrackName()).isEqualTo("Seq-1");
         assertThat(result.getTrackName()).isEqualTo("Seq-1");
         assertThat(result.getDurationToPlay()).isEqualTo(0);
+        assertThat(model.getDuration()).isEqualTo(107);
+        assertThat(model.getContentHash()).hasSize(64);
+
+        verify(playCommandService).storeEnqueueRequest(model, FILE_REFERENCE);
+        verify(eventPublisher).publishEvent(new WakeUpEvent(QueueScheduler.WakeReason.ENQUEUE));
+    }
+
+    @Test
+    public void reusesKnownContent() throws Exception {
+
+        EnqueueRequest model = new EnqueueRequest();
+        model.setContent("not scanned again".getBytes());
+        String hash = MidiContentService.hash(model.getContent());
+
+        when(midiAnalysisService.find(hash)).thenReturn(new MidiAnalysis(hash, Verdict.ACCEPTED, null, 42, "known", 1));
+        when(midiContentService.acquire(hash)).thenReturn(new MidiContent("hash", FILE_REFERENCE, 42, "known"));
+
+        EnqueueResult result = sut.populate(model);
+
+        assertThat(result.getTrackName()).isEqualTo("known");
+        assertThat(model.getDuration()).isEqualTo(42);
+        assertThat(model.getContentHash()).isEqualTo("hash");
+
+        verify(midiContentService, never()).create(anyString(), anyString(), anyString(), any(byte[].class), anyInt(),
+                anyString());
+        verify(playCommandService).storeEnqueueRequest(model, FILE_REFERENCE);
+    }
+
+    @Test
+    public void releasesContentOnFailure() throws Exception {
+
+        EnqueueRequest model = new EnqueueRequest();
+        model.setContent("known".getBytes());
+
+        when(midiAnalysisService.find(anyString()))
+                .thenReturn(new MidiAnalysis("hash", Verdict.ACCEPTED, null, 42, "known", 1));
+        when(midiContentService.acquire(anyString())).thenReturn(new MidiContent("hash", FILE_REFERENCE, 42, "known"));
+        doThrow(new IllegalStateException()).when(playCommandService).storeEnqueueRequest(model, FILE_REFERENCE);
+
+        try {
+            sut.populate(model);
+            fail("Missing IllegalStateException");
+        } catch (IllegalStateException e) {
+            verify(midiContentService).release("hash");
+        }
+    }
+
+    @Test
+    public void rejectsInvalidContentWithoutStoring() throws Exception {
+
+        EnqueueRequest model = new EnqueueRequest();
+        model.setContent("not a midi file".getBytes());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                sut.populate(model);
+                fail("Missing InvalidMidiDataException");
+            } catch (InvalidMidiDataException e) {
+                assertThat(e).hasMessageContaining("MThd");
+            }
+        }
+
+        verify(midiAnalysisService).save(any(MidiAnalysis.class));
+        verifyZeroInteractions(midiContentService, playCommandService);
+    }
+
+    @Test
+    public void rejectsExhaustedQuotaWithoutDatabaseAccess() throws Exception {
+
+        when(admissionChain.admit(any(Admission.class))).thenThrow(new QuotaExceededException("quota"));
+
+        EnqueueRequest model = new EnqueueRequest();
+        model.setExternalSessionId("session");
+        model.setSubmissionHost("host");
+
+        try {
+            sut.enqueueWithQuotaCheck(model);
+            fail("Missing QuotaExceededException");
+        } catch (QuotaExceededException e) {
+            verifyZeroInteractions(playCommandService, midiContentService, midiAnalysisService, uploadRateLimiter);
+        }
+    }
+
+    @Test
+    public void releasesQuotaOnInvalidContent() throws Exception {
+
+        when(admissionChain.admit(any(Admission.class))).thenReturn(1);
+
+        EnqueueRequest model = new EnqueueRequest();
+        model.setExternalSessionId("session");
+        model.setSubmissionHost("host");
+        model.setContent("not a midi file".getBytes());
+
+        try {
+            sut.enqueueWithQuotaCheck(model);
+            fail("Missing InvalidMidiDataException");
+        } catch (InvalidMidiDataException e) {
+            verify(uploadRateLimiter).release("session", "host", 1);
+        }
     }
 }
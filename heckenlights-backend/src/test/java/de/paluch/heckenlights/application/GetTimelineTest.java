@@ -0,0 +1,140 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import de.paluch.heckenlights.model.Rule;
+import de.paluch.heckenlights.model.Rules;
+import de.paluch.heckenlights.model.Timeline;
+
+/**
+ * @author Mark Paluch
+ */
+public class GetTimelineTest {
+
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    private AtomicLong now = new AtomicLong();
+    private GetTimeline sut;
+
+    @Before
+    public void before() throws Exception {
+
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(invocation -> now.get());
+        when(clock.getZone()).thenReturn(BERLIN);
+
+        sut = new GetTimeline(new RuleService(new ClassPathResource("rules.xml")), clock, 300);
+    }
+
+    @Test
+    public void startsWithCurrentWindow() throws Exception {
+
+        now.set(millis("2016-12-05T10:00"));
+
+        Timeline timeline = sut.getTimeline();
+
+        assertThat(timeline.getWindows()).hasSize(28);
+        assertThat(timeline.getNextTransition()).isEqualTo(date("2016-12-05T17:00"));
+
+        Timeline.Window current = timeline.getWindows().get(0);
+        assertThat(current.getFrom()).isEqualTo(date("2016-12-05T08:01"));
+        assertThat(current.getActions()).containsExactly(Rule.Action.OFFLINE);
+        assertThat(current.getOnline()).isEqualTo(Timeline.Online.OFFLINE);
+
+        Timeline.Window last = timeline.getWindows().get(27);
+        assertThat(last.getUntil()).isEqualTo(date("2016-12-12T08:01"));
+    }
+
+    @Test
+    public void classifiesWindowsByPossibleActions() throws Exception {
+
+        now.set(millis("2016-12-05T10:00"));
+
+        Timeline timeline = sut.getTimeline();
+
+        Timeline.Window evening = timeline.getWindows().get(1);
+        assertThat(evening.getFrom()).isEqualTo(date("2016-12-05T17:00"));
+        assertThat(evening.getUntil()).isEqualTo(date("2016-12-05T22:01"));
+        assertThat(evening.getActions()).containsExactly(Rule.Action.PLAYLIST_AUTO_ENQEUE, Rule.Action.LIGHTS_ON);
+        assertThat(evening.getOnline()).isEqualTo(Timeline.Online.ONLINE);
+
+        Timeline.Window morning = timeline.getWindows().get(3);
+        assertThat(morning.getFrom()).isEqualTo(date("2016-12-06T05:00"));
+        assertThat(morning.getActions()).containsExactly(Rule.Action.PLAYLIST, Rule.Action.LIGHTS_ON,
+                Rule.Action.OFFLINE);
+        assertThat(morning.getOnline()).isEqualTo(Timeline.Online.CONDITIONAL);
+    }
+
+    @Test
+    public void reusesTimelineUntilNextTransition() throws Exception {
+
+        now.set(millis("2016-12-05T10:00"));
+        Timeline first = sut.getTimeline();
+
+        now.set(millis("2016-12-05T16:59"));
+        assertThat(sut.getTimeline()).isSameAs(first);
+        assertThat(sut.getMaxAgeSeconds(first)).isEqualTo(60);
+
+        now.set(millis("2016-12-05T17:00"));
+        Timeline next = sut.getTimeline();
+
+        assertThat(next).isNotSameAs(first);
+        assertThat(next.getWindows().get(0)).isEqualTo(first.getWindows().get(1));
+    }
+
+    @Test
+    public void limitsMaxAge() throws Exception {
+
+        now.set(millis("2016-12-05T10:00"));
+
+        assertThat(sut.getMaxAgeSeconds(sut.getTimeline())).isEqualTo(300);
+    }
+
+    @Test
+    public void followsDaylightSavingTime() throws Exception {
+
+        // clocks advance from 02:00 to 03:00 on 2017-03-26
+        now.set(millis("2017-03-25T23:00"));
+
+        Timeline.Window night = sut.getTimeline().getWindows().get(0);
+
+        assertThat(night.getFrom()).isEqualTo(date("2017-03-25T22:01"));
+        assertThat(night.getUntil()).isEqualTo(date("2017-03-26T05:00"));
+        assertThat(night.getUntil().getTime() - night.getFrom().getTime())
+                .isEqualTo(TimeUnit.HOURS.toMillis(6) - TimeUnit.MINUTES.toMillis(1));
+    }
+
+    @Test
+    public void singleWindowIfRulesDoNotDependOnTime() throws Exception {
+
+        Rules rules = new Rules();
+        rules.setDefaultAction(Rule.Action.LIGHTS_ON);
+
+        Timeline timeline = GetTimeline.compute(CompiledRules.compile(rules), millis("2016-12-05T10:00"), BERLIN);
+
+        assertThat(timeline.getWindows()).hasSize(1);
+        assertThat(timeline.getNextTransition()).isNull();
+        assertThat(timeline.getWindows().get(0).getOnline()).isEqualTo(Timeline.Online.ONLINE);
+    }
+
+    private static long millis(String local) {
+        return date(local).getTime();
+    }
+
+    private static Date date(String local) {
+        return Date.from(LocalDateTime.parse(local).atZone(BERLIN).toInstant());
+    }
+}
@@ -0,0 +1,181 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import de.paluch.heckenlights.repositories.LeaseDocument;
+import de.paluch.heckenlights.repositories.LeaseService;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+
+/**
+ * Several instances electing a leader through one lease store.
+ *
+ * @author Mark Paluch
+ */
+public class LeaderElectionTest {
+
+    private static final long LEASE_MS = TimeUnit.SECONDS.toMillis(15);
+    private static final long RENEW_MS = TimeUnit.SECONDS.toMillis(5);
+
+    private AtomicLong now = new AtomicLong(1000000);
+    private LeaseDocument lease;
+    private LeaseService leaseService = mock(LeaseService.class);
+    private ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private List<LeaderElection> instances = new ArrayList<>();
+
+    @Before
+    public void before() throws Exception {
+
+        // same semantics as the conditional upsert against MongoDB
+        when(leaseService.acquire(anyString(), anyString(), any(Date.class), anyLong())).then(invocation -> {
+
+            String owner = invocation.getArgumentAt(1, String.class);
+            Date at = invocation.getArgumentAt(2, Date.class);
+
+            synchronized (this) {
+
+                if (lease != null && !lease.getOwner().equals(owner) && !lease.getExpires().before(at)) {
+                    return new LeaseService.Acquisition(false, null);
+                }
+
+                LeaseDocument previous = lease;
+                lease = new LeaseDocument();
+                lease.setId(LeaderElection.LEASE_NAME);
+                lease.setOwner(owner);
+                lease.setRenewed(at);
+                lease.setExpires(new Date(at.getTime() + invocation.getArgumentAt(3, Long.class)));
+                return new LeaseService.Acquisition(true, previous);
+            }
+        });
+
+        doAnswer(invocation -> {
+
+            synchronized (this) {
+                if (lease != null && lease.getOwner().equals(invocation.getArgumentAt(1, String.class))) {
+                    lease.setExpires(invocation.getArgumentAt(2, Date.class));
+                }
+            }
+            return null;
+        }).when(leaseService).release(anyString(), anyString(), any(Date.class));
+
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(invocation -> now.get());
+
+        for (int i = 0; i < 3; i++) {
+
+            PlayCommandService playCommandService = mock(PlayCommandService.class);
+            when(playCommandService.getInstanceId()).thenReturn("instance-" + i);
+
+            instances.add(new LeaderElection(leaseService, playCommandService, eventPublisher, clock, true, 15, 5));
+        }
+    }
+
+    @Test
+    public void electsSingleLeader() throws Exception {
+
+        renewAll();
+        renewAll();
+
+        assertThat(leaders()).containsExactly(instances.get(0));
+        verify(eventPublisher).publishEvent(new LeadershipEvent(true));
+    }
+
+    @Test
+    public void failsOverWithinBound() throws Exception {
+
+        renewAll();
+        LeaderElection failed = instances.remove(0);
+
+        long failedAt = now.get();
+        while (leaders().isEmpty()) {
+            now.addAndGet(RENEW_MS);
+            renewAll();
+        }
+
+        assertThat(leaders()).hasSize(1);
+        assertThat(failed.isLeader()).isFalse();
+
+        LeaderElection leader = leaders().get(0);
+        assertThat(leader.getTakeovers()).isEqualTo(1);
+        assertThat(leader.getLastFailoverMs()).isEqualTo(now.get() - failedAt).isLessThanOrEqualTo(LEASE_MS + RENEW_MS);
+        assertThat(leader.getFailoverBoundMs()).isEqualTo(LEASE_MS + RENEW_MS);
+    }
+
+    @Test
+    public void releaseHandsOverOnNextRenew() throws Exception {
+
+        renewAll();
+        instances.remove(0).shutdown();
+
+        now.addAndGet(RENEW_MS);
+        renewAll();
+
+        assertThat(leaders()).containsExactly(instances.get(0));
+    }
+
+    @Test
+    public void stepsDownIfLeaseCannotBeRenewed() throws Exception {
+
+        renewAll();
+        LeaderElection leader = instances.get(0);
+
+        doThrow(new DataAccessResourceFailureException("database down")).when(leaseService).acquire(anyString(),
+                anyString(), any(Date.class), anyLong());
+
+        now.addAndGet(RENEW_MS);
+        leader.renew();
+        assertThat(leader.isLeader()).isTrue();
+
+        now.addAndGet(LEASE_MS);
+        leader.renew();
+        assertThat(leader.isLeader()).isFalse();
+        verify(eventPublisher).publishEvent(new LeadershipEvent(false));
+    }
+
+    @Test
+    public void alwaysLeaderIfNotClustered() throws Exception {
+
+        PlayCommandService playCommandService = mock(PlayCommandService.class);
+        LeaderElection sut = new LeaderElection(leaseService, playCommandService, eventPublisher, Clock.systemUTC(),
+                false, 15, 5);
+
+        sut.start();
+
+        assertThat(sut.isLeader()).isTrue();
+        assertThat(sut.isClustered()).isFalse();
+    }
+
+    private void renewAll() {
+        instances.forEach(LeaderElection::renew);
+    }
+
+    private List<LeaderElection> leaders() {
+
+        List<LeaderElection> leaders = new ArrayList<>();
+        for (LeaderElection instance : instances) {
+            if (instance.isLeader()) {
+                leaders.add(instance);
+            }
+        }
+        return leaders;
+    }
+}
@@ -0,0 +1,124 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import com.google.common.io.Resources;
+
+import de.paluch.heckenlights.model.MidiAnalysis;
+import de.paluch.heckenlights.model.MidiAnalysis.Verdict;
+import de.paluch.heckenlights.repositories.MidiAnalysisService;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class MidiAnalysisCacheTest {
+
+    @Mock
+    private MidiAnalysisService midiAnalysisService;
+
+    private MidiAnalysisCache sut;
+
+    @Before
+    public void before() throws Exception {
+        sut = new MidiAnalysisCache(midiAnalysisService, 2);
+    }
+
+    @Test
+    public void analyzesAndStoresOnce() throws Exception {
+
+        byte[] content = Resources.toByteArray(Resources.getResource("P-Christmas_Carols_-_Winter_Wonderland.mid"));
+
+        MidiAnalysis first = sut.analyze("a", content);
+        MidiAnalysis second = sut.analyze("a", content);
+
+        assertThat(first).isSameAs(second);
+        assertThat(first.getVerdict()).isEqualTo(Verdict.ACCEPTED);
+        assertThat(first.getDuration()).isEqualTo(107);
+        assertThat(first.getTrackName()).isEqualTo("Seq-1");
+
+        verify(midiAnalysisService).save(first);
+        assertThat(sut.getStats().hitCount()).isEqualTo(1);
+        assertThat(sut.getStats().missCount()).isEqualTo(1);
+        assertThat(sut.getAnalyses()).isEqualTo(1);
+    }
+
+    @Test
+    public void cachesRejections() throws Exception {
+
+        MidiAnalysis analysis = sut.analyze("a", "not a midi file".getBytes());
+        sut.analyze("a", "not a midi file".getBytes());
+
+        assertThat(analysis.getVerdict()).isEqualTo(Verdict.INVALID);
+        assertThat(analysis.getReason()).isNotEmpty();
+        assertThat(sut.getAnalyses()).isEqualTo(1);
+    }
+
+    @Test
+    public void loadsFromPersistentStore() throws Exception {
+
+        MidiAnalysis stored = new MidiAnalysis("a", Verdict.DURATION_EXCEEDED, "too long", 500, "long", 1);
+        when(midiAnalysisService.find("a")).thenReturn(stored);
+
+        assertThat(sut.analyze("a", new byte[0])).isEqualTo(stored);
+
+        verify(midiAnalysisService, never()).save(any(MidiAnalysis.class));
+        assertThat(sut.getPersistentHits()).isEqualTo(1);
+        assertThat(sut.getAnalyses()).isEqualTo(0);
+    }
+
+    @Test
+    public void analyzesIfPersistentStoreIsUnavailable() throws Exception {
+
+        when(midiAnalysisService.find("a")).thenThrow(new DataAccessResourceFailureException("down"));
+
+        assertThat(sut.analyze("a", new byte[0]).getVerdict()).isEqualTo(Verdict.INVALID);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+
+        sut.analyze("a", new byte[0]);
+        sut.analyze("b", new byte[0]);
+        sut.analyze("a", new byte[0]);
+        sut.analyze("c", new byte[0]);
+
+        assertThat(sut.getSize()).isEqualTo(2);
+        assertThat(sut.getStats().evictionCount()).isEqualTo(1);
+
+        sut.analyze("b", new byte[0]);
+
+        ArgumentCaptor<MidiAnalysis> captor = ArgumentCaptor.forClass(MidiAnalysis.class);
+        verify(midiAnalysisService, times(4)).save(captor.capture());
+        assertThat(captor.getAllValues()).extracting("hash").containsExactly("a", "b", "c", "b");
+    }
+
+    @Test
+    public void initializeLoadsRecentAnalyses() throws Exception {
+
+        MidiAnalysis newest = MidiAnalysis.invalid("a", "newest");
+        MidiAnalysis older = MidiAnalysis.invalid("b", "older");
+        when(midiAnalysisService.findRecent(2)).thenReturn(Arrays.asList(newest, older));
+
+        sut.initialize();
+        sut.analyze("c", new byte[0]);
+
+        assertThat(sut.analyze("a", new byte[0])).isSameAs(newest);
+        assertThat(sut.analyze("b", new byte[0])).isNotSameAs(older);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.paluch.heckenlights.application;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.io.Resources;
+
+/**
+ * Compares duration calculation using a shared {@link Sequencer} (the previous {@link EnqueueTrack} approach) with
+ * {@link TempoMap}. Run {@link #main(String[])} from the test classpath.
+ *
+ * @author Mark Paluch
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class MidiDurationBenchmark {
+
+    @Benchmark
+    public long sequencer(SharedSequencer shared, Uploads uploads) throws Exception {
+
+        synchronized (shared) {
+            shared.sequencer.setSequence(uploads.next());
+            return shared.sequencer.getMicrosecondLength();
+        }
+    }
+
+    @Benchmark
+    public long tempoMap(Uploads uploads) {
+        return TempoMap.getMicrosecondLength(uploads.next());
+    }
+
+    /**
+     * Single sequencer shared by all threads, previously held in a static field of {@link EnqueueTrack}.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedSequencer {
+
+        Sequencer sequencer;
+
+        @Setup
+        public void setup() throws Exception {
+            sequencer = MidiSystem.getSequencer(false);
+            sequencer.open();
+        }
+
+        @TearDown
+        public void tearDown() {
+            sequencer.close();
+        }
+    }
+
+    /**
+     * Per-thread uploads. Alternates between two instances so the sequencer cannot short-circuit {@code setSequence}.
+     */
+    @State(Scope.Thread)
+    public static class Uploads {
+
+        Sequence[] sequences = new Sequence[2];
+        int index;
+
+        @Setup
+        public void setup() throws Exception {
+            for (int i = 0; i < sequences.length; i++) {
+                sequences[i] = MidiSystem.getSequence(Resources.getResource(PopulateQueueTest.RESOURCE_NAME));
+            }
+        }
+
+        Sequence next() {
+            return sequences[index++ & 1];
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(MidiDurationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
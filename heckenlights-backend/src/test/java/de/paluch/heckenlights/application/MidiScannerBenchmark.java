@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.paluch.heckenlights.application;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.io.Resources;
+
+/**
+ * Compares upload analysis through {@link MidiSystem#getSequence} with {@link MidiScanner}. Run {@link #main(String[])}
+ * from the test classpath, add {@code -prof gc} to the JMH arguments to compare allocation rates.
+ *
+ * @author Mark Paluch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MidiScannerBenchmark {
+
+    private byte[] content;
+
+    @Setup
+    public void setup() throws Exception {
+        content = Resources.toByteArray(Resources.getResource(PopulateQueueTest.RESOURCE_NAME));
+    }
+
+    @Benchmark
+    public void sequence(Blackhole blackhole) throws Exception {
+
+        Sequence sequence = MidiSystem.getSequence(new ByteArrayInputStream(content));
+        blackhole.consume(TempoMap.getMicrosecondLength(sequence));
+        blackhole.consume(getSequenceName(sequence));
+    }
+
+    @Benchmark
+    public Object scanner() throws Exception {
+        return MidiScanner.scan(content);
+    }
+
+    private static String getSequenceName(Sequence sequence) {
+
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+
+                MidiMessage message = track.get(i).getMessage();
+                if (message instanceof MetaMessage) {
+
+                    MetaMessage metaMessage = (MetaMessage) message;
+                    if (metaMessage.getType() == 3 || metaMessage.getType() == 6) {
+                        return new String(metaMessage.getData(), StandardCharsets.US_ASCII);
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(MidiScannerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,154 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+import com.google.common.io.Resources;
+
+import de.paluch.heckenlights.model.MidiInfo;
+
+/**
+ * @author Mark Paluch
+ */
+public class MidiScannerTest {
+
+    @Test
+    public void scanFile() throws Exception {
+
+        byte[] content = Resources.toByteArray(Resources.getResource(PopulateQueueTest.RESOURCE_NAME));
+        Sequence sequence = MidiSystem.getSequence(Resources.getResource(PopulateQueueTest.RESOURCE_NAME));
+
+        MidiInfo info = MidiScanner.scan(content);
+
+        assertThat(info.getFormat()).isEqualTo(1);
+        assertThat(info.getTrackCount()).isEqualTo(sequence.getTracks().length);
+        assertThat(info.getTickLength()).isEqualTo(sequence.getTickLength());
+        assertThat(info.getMicrosecondLength()).isEqualTo(sequence.getMicrosecondLength());
+        assertThat(info.getDurationSeconds()).isEqualTo(107);
+        assertThat(info.getTrackName()).isEqualTo("Seq-1");
+        assertThat(info.getEventCount()).isEqualTo(Arrays.stream(sequence.getTracks()).mapToInt(Track::size).sum());
+    }
+
+    @Test
+    public void scanBufferRegion() throws Exception {
+
+        byte[] content = Resources.toByteArray(Resources.getResource(PopulateQueueTest.RESOURCE_NAME));
+        byte[] padded = new byte[content.length + 10];
+        System.arraycopy(content, 0, padded, 5, content.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(padded, 5, content.length);
+        MidiInfo info = MidiScanner.scan(buffer);
+
+        assertThat(info.getTrackName()).isEqualTo("Seq-1");
+        assertThat(info.getDurationSeconds()).isEqualTo(107);
+        assertThat(buffer.position()).isEqualTo(5);
+    }
+
+    @Test
+    public void tempoChangesAndRunningStatus() throws Exception {
+
+        Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        Track track = sequence.createTrack();
+        track.add(meta(0x03, "  ", 0));
+        track.add(meta(0x06, "Marker", 0));
+        track.add(tempo(0, 600000));
+        track.add(tempo(960, 300000));
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), 0));
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 64, 100), 0));
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 0), 1920));
+
+        MidiInfo info = MidiScanner.scan(toBytes(sequence));
+
+        assertThat(info.getFormat()).isEqualTo(0);
+        assertThat(info.getMicrosecondLength()).isEqualTo(1800000).isEqualTo(sequence.getMicrosecondLength());
+        assertThat(info.getTrackName()).isEqualTo("Marker");
+    }
+
+    @Test
+    public void smpteDivision() throws Exception {
+
+        Sequence sequence = new Sequence(Sequence.SMPTE_25, 40);
+        Track track = sequence.createTrack();
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), 0));
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), 12000));
+
+        MidiInfo info = MidiScanner.scan(toBytes(sequence));
+
+        assertThat(info.getDurationSeconds()).isEqualTo(12);
+        assertThat(info.getTrackName()).isNull();
+    }
+
+    @Test
+    public void rejectsInvalidContent() throws Exception {
+
+        byte[] content = Resources.toByteArray(Resources.getResource(PopulateQueueTest.RESOURCE_NAME));
+
+        assertInvalid("RIFF".getBytes());
+        assertInvalid("This is not a MIDI file at all".getBytes());
+        assertInvalid(Arrays.copyOf(content, 14));
+        assertInvalid(Arrays.copyOf(content, content.length / 2));
+
+        byte[] withoutStatus = toBytes(sequenceWithNote());
+        // first event of the track: delta time 0, replace the status byte of note on with a data byte
+        int track = 14 + 8;
+        withoutStatus[track + 1] = 0x10;
+        assertInvalid(withoutStatus);
+    }
+
+    @Test
+    public void hasHeader() throws Exception {
+
+        assertThat(MidiScanner.hasHeader("MThd".getBytes())).isTrue();
+        assertThat(MidiScanner.hasHeader("MTh".getBytes())).isFalse();
+        assertThat(MidiScanner.hasHeader("RIFF....".getBytes())).isFalse();
+        assertThat(MidiScanner.hasHeader(null)).isFalse();
+    }
+
+    private static void assertInvalid(byte[] content) {
+        try {
+            MidiScanner.scan(content);
+            fail("Missing InvalidMidiDataException");
+        } catch (InvalidMidiDataException e) {
+            assertThat(e.getMessage()).isNotEmpty();
+        }
+    }
+
+    private static Sequence sequenceWithNote() throws Exception {
+
+        Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        Track track = sequence.createTrack();
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), 0));
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), 480));
+        return sequence;
+    }
+
+    private static byte[] toBytes(Sequence sequence) throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MidiSystem.write(sequence, sequence.getTracks().length == 1 ? 0 : 1, out);
+        return out.toByteArray();
+    }
+
+    private static MidiEvent meta(int type, String text, long tick) throws Exception {
+        return new MidiEvent(new MetaMessage(type, text.getBytes(), text.length()), tick);
+    }
+
+    private static MidiEvent tempo(long tick, int mpq) throws Exception {
+        byte[] data = { (byte) (mpq >> 16), (byte) (mpq >> 8), (byte) mpq };
+        return new MidiEvent(new MetaMessage(0x51, data, data.length), tick);
+    }
+}
@@ -1,29 +1,41 @@
 package de.paluch.heckenlights.application;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.nio.file.Paths;
 
+import javax.sound.midi.InvalidMidiDataException;
+
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import com.google.common.io.Files;
 import com.google.common.io.Resources;
 
 import de.paluch.heckenlights.model.EnqueueRequest;
+import de.paluch.heckenlights.model.EnqueueResult;
 
 @RunWith(MockitoJUnitRunner.class)
 public class PopulateQueueTest {
 
     public static final String RESOURCE_NAME = "P-Christmas_Carols_-_Winter_Wonderland.mid";
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private PopulateQueue sut;
 
     @Mock
@@ -53,6 +65,29 @@ public class PopulateQueueTest {
         assertThat(value.getSubmissionHost()).isEqualTo(PopulateQueue.class.getSimpleName());
     }
 
+    @Test
+    public void skipsInvalidFiles() throws Exception {
+
+        File directory = temporaryFolder.newFolder();
+        Files.write("not a midi file".getBytes(), new File(directory, "invalid.mid"));
+        Files.copy(Paths.get(Resources.getResource(RESOURCE_NAME).toURI()).toFile(), new File(directory, RESOURCE_NAME));
+        sut.setMidiDirectory(directory.getCanonicalPath());
+
+        when(enqueueTrack.populate(any(EnqueueRequest.class))).then(invocation -> {
+
+            EnqueueRequest request = invocation.getArgumentAt(0, EnqueueRequest.class);
+            if (!MidiScanner.hasHeader(request.getContent())) {
+                throw new InvalidMidiDataException("invalid");
+            }
+            return new EnqueueResult();
+        });
+
+        sut.populateQueue();
+
+        verify(enqueueTrack, times(2)).populate(enqueueCaptor.capture());
+        assertThat(enqueueCaptor.getAllValues()).extracting("fileName").containsOnly("invalid.mid", RESOURCE_NAME);
+    }
+
     @Test
     public void testNoFiles() throws Exception {
         sut.setMidiDirectory("non-existent");
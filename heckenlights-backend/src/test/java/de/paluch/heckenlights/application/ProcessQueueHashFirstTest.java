@@ -0,0 +1,144 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.util.StreamUtils;
+
+import com.google.common.collect.ImmutableList;
+
+import de.paluch.heckenlights.client.MidiRelayClient;
+import de.paluch.heckenlights.client.StandInMidiRelay;
+import de.paluch.heckenlights.model.PlayCommandSummary;
+import de.paluch.heckenlights.model.Rule;
+import de.paluch.heckenlights.model.RuleState;
+import de.paluch.heckenlights.model.TrackContent;
+import de.paluch.heckenlights.repositories.MidiContentService;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import de.paluch.heckenlights.repositories.StateService;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ProcessQueueHashFirstTest {
+
+    private static final long TRACK_DURATION_MS = 107000;
+
+    @Mock
+    private PlayCommandService playCommandService;
+
+    @Mock
+    private PopulateQueue populateQueue;
+
+    @Mock
+    private ResolveRule resolveRule;
+
+    @Mock
+    private StateService stateService;
+
+    private AtomicLong now = new AtomicLong(1000000);
+    private Clock clock;
+    private StandInMidiRelay relay;
+
+    @Before
+    public void before() throws Exception {
+
+        clock = mock(Clock.class);
+        when(clock.millis()).then(invocation -> now.get());
+
+        relay = new StandInMidiRelay(clock);
+
+        when(stateService.isQueueProcessorActive()).thenReturn(true);
+        when(playCommandService.claim(anyString(), anyLong())).thenReturn(true);
+        when(playCommandService.complete(anyString())).thenReturn(true);
+        when(resolveRule.getRule()).thenReturn(new ResolveRule.FallbackRule(Rule.Action.PLAYLIST));
+
+        byte[] content;
+        try (InputStream is = getClass().getResourceAsStream("/P-Christmas_Carols_-_Winter_Wonderland.mid")) {
+            content = StreamUtils.copyToByteArray(is);
+        }
+
+        String hash = MidiContentService.hash(content);
+
+        when(playCommandService.getTrack(anyString())).then(
+                invocation -> track(invocation.getArgumentAt(0, String.class), hash, null));
+        when(playCommandService.getTrackContent(anyString())).then(
+                invocation -> track(invocation.getArgumentAt(0, String.class), hash, content));
+    }
+
+    @Test
+    public void playsRepeatedTrackFromRelayCache() throws Exception {
+
+        ProcessQueue sut = new ProcessQueue(new MidiRelayClient(relay), playCommandService, populateQueue,
+                new RuleState(), resolveRule, stateService, clock, false, true);
+
+        when(playCommandService.getEnquedCommands()).thenReturn(ImmutableList.of(command("first")))
+                .thenReturn(ImmutableList.of(command("second")));
+
+        sut.processQueue();
+
+        now.addAndGet(TRACK_DURATION_MS + 10);
+        sut.processQueue();
+
+        assertThat(relay.getPlayed()).containsExactly("first", "second");
+        assertThat(relay.getUploads()).isEqualTo(1);
+        assertThat(sut.getCacheHits()).isEqualTo(1);
+        verify(playCommandService).getTrackContent("first");
+        verify(playCommandService, never()).getTrackContent("second");
+    }
+
+    @Test
+    public void stagesRepeatedTrackFromRelayCache() throws Exception {
+
+        ProcessQueue sut = new ProcessQueue(new MidiRelayClient(relay), playCommandService, populateQueue,
+                new RuleState(), resolveRule, stateService, clock, true, true);
+
+        when(playCommandService.getEnquedCommands()).thenReturn(ImmutableList.of(command("first"), command("second")))
+                .thenReturn(ImmutableList.of(command("second")))
+                .thenReturn(Collections.<PlayCommandSummary> emptyList());
+
+        sut.processQueue();
+
+        now.addAndGet(1000);
+        sut.processQueue();
+
+        assertThat(sut.getStaged()).isEqualTo(1);
+        assertThat(sut.getCacheHits()).isEqualTo(1);
+        assertThat(relay.getUploads()).isEqualTo(1);
+        verify(playCommandService, never()).getTrackContent("second");
+    }
+
+    private static TrackContent track(String id, String hash, byte[] content) {
+
+        TrackContent trackContent = new TrackContent();
+        trackContent.setId(id);
+        trackContent.setFilename("winter.mid");
+        trackContent.setContentHash(hash);
+        trackContent.setContent(content);
+        return trackContent;
+    }
+
+    private static PlayCommandSummary command(String id) {
+
+        PlayCommandSummary command = new PlayCommandSummary();
+        command.setId(id);
+        command.setDuration((int) (TRACK_DURATION_MS / 1000));
+        return command;
+    }
+}
@@ -0,0 +1,129 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.util.StreamUtils;
+
+import com.google.common.collect.ImmutableList;
+
+import de.paluch.heckenlights.client.MidiRelayClient;
+import de.paluch.heckenlights.client.StandInMidiRelay;
+import de.paluch.heckenlights.model.PlayCommandSummary;
+import de.paluch.heckenlights.model.Rule;
+import de.paluch.heckenlights.model.RuleState;
+import de.paluch.heckenlights.model.TrackContent;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import de.paluch.heckenlights.repositories.StateService;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ProcessQueuePrestageTest {
+
+    private static final long TRACK_DURATION_MS = 107000;
+
+    @Mock
+    private PlayCommandService playCommandService;
+
+    @Mock
+    private PopulateQueue populateQueue;
+
+    @Mock
+    private ResolveRule resolveRule;
+
+    @Mock
+    private StateService stateService;
+
+    private AtomicLong now = new AtomicLong(1000000);
+    private StandInMidiRelay relay;
+    private ProcessQueue sut;
+
+    @Before
+    public void before() throws Exception {
+
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(invocation -> now.get());
+
+        relay = new StandInMidiRelay(clock);
+        sut = new ProcessQueue(new MidiRelayClient(relay), playCommandService, populateQueue, new RuleState(),
+                resolveRule, stateService, clock, true);
+
+        when(stateService.isQueueProcessorActive()).thenReturn(true);
+        when(playCommandService.claim(anyString(), anyLong())).thenReturn(true);
+        when(playCommandService.complete(anyString())).thenReturn(true);
+        when(resolveRule.getRule()).thenReturn(new ResolveRule.FallbackRule(Rule.Action.PLAYLIST));
+
+        byte[] content;
+        try (InputStream is = getClass().getResourceAsStream("/P-Christmas_Carols_-_Winter_Wonderland.mid")) {
+            content = StreamUtils.copyToByteArray(is);
+        }
+
+        when(playCommandService.getTrackContent(anyString())).then(invocation -> {
+
+            TrackContent trackContent = new TrackContent();
+            trackContent.setId(invocation.getArgumentAt(0, String.class));
+            trackContent.setFilename("winter.mid");
+            trackContent.setContent(content);
+            return trackContent;
+        });
+    }
+
+    @Test
+    public void startsStagedTrackWithoutGap() throws Exception {
+
+        PlayCommandSummary first = command("first");
+        PlayCommandSummary second = command("second");
+
+        when(playCommandService.getEnquedCommands()).thenReturn(ImmutableList.of(first, second))
+                .thenReturn(ImmutableList.of(second)).thenReturn(Collections.<PlayCommandSummary> emptyList());
+
+        long start = now.get();
+        sut.processQueue();
+        assertThat(relay.getPlayed()).containsExactly("first");
+
+        now.addAndGet(1000);
+        sut.processQueue();
+        assertThat(sut.getStaged()).isEqualTo(1);
+        assertThat(sut.getExpectedEnd().getTime()).isEqualTo(start + TRACK_DURATION_MS - 2000);
+
+        now.set(start + TRACK_DURATION_MS - 2000);
+        sut.processQueue();
+        verify(playCommandService).claim(eq("second"), anyLong());
+        assertThat(relay.getPlayed()).containsExactly("first");
+
+        now.set(start + TRACK_DURATION_MS + 10);
+        sut.processQueue();
+
+        assertThat(relay.getPlayed()).containsExactly("first", "second");
+        verify(playCommandService).complete("first");
+        verify(playCommandService, never()).complete("second");
+        assertThat(sut.getLastGapMs()).isEqualTo(0);
+        assertThat(sut.getStaged()).isEqualTo(1);
+    }
+
+    private static PlayCommandSummary command(String id) {
+
+        PlayCommandSummary command = new PlayCommandSummary();
+        command.setId(id);
+        command.setDuration((int) (TRACK_DURATION_MS / 1000));
+        return command;
+    }
+}
@@ -1,6 +1,10 @@
 package de.paluch.heckenlights.application;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -10,7 +14,9 @@ import static org.mockito.Mockito.when;
 import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.Date;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -22,11 +28,11 @@ import org.springframework.test.util.ReflectionTestUtils;
 import com.google.common.collect.ImmutableList;
 
 import de.paluch.heckenlights.client.MidiRelayClient;
-import de.paluch.heckenlights.client.PlayerStateRepresentation;
 import de.paluch.heckenlights.model.PlayCommandSummary;
 import de.paluch.heckenlights.model.Rule;
 import de.paluch.heckenlights.model.RuleState;
 import de.paluch.heckenlights.model.TrackContent;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
 import de.paluch.heckenlights.repositories.PlayCommandService;
 import de.paluch.heckenlights.repositories.StateService;
 
@@ -57,7 +63,7 @@ public class ProcessQueueTest {
 
         when(stateService.isQueueProcessorActive()).thenReturn(true);
         sut = new ProcessQueue(client, playCommandService, populateQueue, ruleState, resolveRule, stateService,
-                Clock.systemDefaultZone());
+                Clock.systemDefaultZone(), false);
     }
 
     @Test
@@ -88,6 +94,30 @@ public class ProcessQueueTest {
         verifyNoMoreInteractions(client);
     }
 
+    @Test
+    public void observesGapBetweenTracks() throws Exception {
+
+        when(resolveRule.getRule()).thenReturn(new ResolveRule.FallbackRule(Rule.Action.PLAYLIST));
+
+        PlayerStateRepresentation first = new PlayerStateRepresentation();
+        first.setRunning(true);
+        first.setStarted(new Date(0));
+        first.setEstimatedEnd(new Date(100000));
+
+        PlayerStateRepresentation second = new PlayerStateRepresentation();
+        second.setRunning(true);
+        second.setStarted(new Date(103000));
+        second.setEstimatedEnd(new Date(200000));
+
+        when(client.getState()).thenReturn(first, first, second);
+
+        sut.processQueue();
+        sut.processQueue();
+        sut.processQueue();
+
+        verify(playCommandService).observeTrackGap(3000);
+    }
+
     @Test
     public void testNotPlaying() throws Exception {
 
@@ -99,6 +129,7 @@ public class ProcessQueueTest {
 
         PlayCommandSummary playCommandSummary = new PlayCommandSummary();
         playCommandSummary.setId("the-id");
+        playCommandSummary.setDuration(42);
 
         TrackContent trackContent = new TrackContent();
         trackContent.setId(playCommandSummary.getId());
@@ -107,11 +138,66 @@ public class ProcessQueueTest {
 
         when(playCommandService.getEnquedCommands()).thenReturn(ImmutableList.of(playCommandSummary));
         when(playCommandService.getTrackContent(playCommandSummary.getId())).thenReturn(trackContent);
+        when(playCommandService.claim(eq("the-id"), anyLong())).thenReturn(true);
 
         sut.processQueue();
 
         verify(client).play(trackContent.getId(), trackContent.getFilename(), trackContent.getContent());
+        verify(playCommandService).claim("the-id", 42000 + TimeUnit.MINUTES.toMillis(2));
+        assertThat(sut.getExpectedEnd()).isInSameMinuteWindowAs(new Date(System.currentTimeMillis() + 42000));
+
+        sut.processQueue();
 
+        verify(playCommandService).complete("the-id");
+    }
+
+    @Test
+    public void playsNextTrackIfClaimedElsewhere() throws Exception {
+
+        when(resolveRule.getRule()).thenReturn(new ResolveRule.FallbackRule(Rule.Action.PLAYLIST));
+        when(client.getState()).thenReturn(new PlayerStateRepresentation());
+
+        PlayCommandSummary first = new PlayCommandSummary();
+        first.setId("first");
+        PlayCommandSummary second = new PlayCommandSummary();
+        second.setId("second");
+
+        TrackContent trackContent = new TrackContent();
+        trackContent.setId("second");
+
+        when(playCommandService.getEnquedCommands()).thenReturn(ImmutableList.of(first, second));
+        when(playCommandService.claim(eq("second"), anyLong())).thenReturn(true);
+        when(playCommandService.getTrackContent("second")).thenReturn(trackContent);
+
+        sut.processQueue();
+
+        verify(playCommandService, never()).getTrackContent("first");
+        verify(client).play("second", null, null);
+    }
+
+    @Test
+    public void releasesClaimIfPlayFails() throws Exception {
+
+        when(resolveRule.getRule()).thenReturn(new ResolveRule.FallbackRule(Rule.Action.PLAYLIST));
+        when(client.getState()).thenReturn(new PlayerStateRepresentation());
+
+        PlayCommandSummary playCommandSummary = new PlayCommandSummary();
+        playCommandSummary.setId("the-id");
+
+        TrackContent trackContent = new TrackContent();
+        trackContent.setId("the-id");
+
+        when(playCommandService.getEnquedCommands()).thenReturn(ImmutableList.of(playCommandSummary));
+        when(playCommandService.claim(eq("the-id"), anyLong())).thenReturn(true);
+        when(playCommandService.getTrackContent("the-id")).thenReturn(trackContent);
+        doThrow(new IllegalStateException()).when(client).play("the-id", null, null);
+
+        try {
+            sut.processQueue();
+            fail("Missing IllegalStateException");
+        } catch (IllegalStateException e) {
+            verify(playCommandService).release("the-id");
+        }
     }
 
     @Test
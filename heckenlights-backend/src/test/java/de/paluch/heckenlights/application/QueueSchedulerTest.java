@@ -0,0 +1,204 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import de.paluch.heckenlights.application.QueueScheduler.WakeReason;
+import de.paluch.heckenlights.application.QueueScheduler.WakeUp;
+import de.paluch.heckenlights.client.MidiRelayClient;
+import de.paluch.heckenlights.model.Rule;
+import de.paluch.heckenlights.model.RuleState;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import de.paluch.heckenlights.repositories.StateService;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class QueueSchedulerTest {
+
+    private static final long NOW = 1000000;
+
+    @Mock
+    private ProcessQueue processQueue;
+
+    @Mock
+    private ResolveRule resolveRule;
+
+    @Mock
+    private LeaderElection leaderElection;
+
+    @Mock
+    private PlayCommandService playCommandService;
+
+    private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private QueueScheduler sut;
+
+    @Before
+    public void before() throws Exception {
+
+        sut = new QueueScheduler(processQueue, resolveRule, leaderElection, playCommandService,
+                Clock.fixed(Instant.ofEpochMilli(NOW), ZoneId.of("UTC")), executor, 15);
+        when(resolveRule.getMillisUntilChange()).thenReturn(-1L);
+        when(leaderElection.isLeader()).thenReturn(true);
+    }
+
+    @After
+    public void after() throws Exception {
+        sut.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void safetyPollIfNothingIsExpected() throws Exception {
+        assertThat(sut.getNextWakeUp()).isEqualTo(new WakeUp(NOW + 15000, WakeReason.SAFETY_POLL));
+    }
+
+    @Test
+    public void wakesUpAtTrackEnd() throws Exception {
+
+        when(processQueue.getExpectedEnd()).thenReturn(new Date(NOW + 5000));
+
+        assertThat(sut.getNextWakeUp()).isEqualTo(new WakeUp(NOW + 5000, WakeReason.TRACK_END));
+    }
+
+    @Test
+    public void retriesOverdueTrackEnd() throws Exception {
+
+        when(processQueue.getExpectedEnd()).thenReturn(new Date(NOW - 5000));
+
+        assertThat(sut.getNextWakeUp()).isEqualTo(new WakeUp(NOW + 1000, WakeReason.TRACK_END));
+    }
+
+    @Test
+    public void pushedTrackEndFallsBackToHeartbeat() throws Exception {
+
+        QueueScheduler push = new QueueScheduler(processQueue, resolveRule, leaderElection, playCommandService,
+                Clock.fixed(Instant.ofEpochMilli(NOW), ZoneId.of("UTC")), executor, 15, true, 5000);
+
+        when(processQueue.getTrackStarted()).thenReturn(new Date(NOW - 60000));
+        push.wakeUp(WakeReason.PLAYER_EVENT);
+
+        when(processQueue.getExpectedEnd()).thenReturn(new Date(NOW + 5000));
+        assertThat(push.getNextWakeUp()).isEqualTo(new WakeUp(NOW + 10000, WakeReason.TRACK_END));
+
+        when(processQueue.getExpectedEnd()).thenReturn(new Date(NOW - 5000));
+        assertThat(push.getNextWakeUp()).isEqualTo(new WakeUp(NOW + 5000, WakeReason.TRACK_END));
+        push.shutdown();
+    }
+
+    @Test
+    public void retriesTrackEndIfPlayerEventsAreNotReceived() throws Exception {
+
+        QueueScheduler push = new QueueScheduler(processQueue, resolveRule, leaderElection, playCommandService,
+                Clock.fixed(Instant.ofEpochMilli(NOW), ZoneId.of("UTC")), executor, 15, true, 5000);
+
+        when(processQueue.getExpectedEnd()).thenReturn(new Date(NOW - 5000));
+        assertThat(push.getNextWakeUp()).isEqualTo(new WakeUp(NOW + 1000, WakeReason.TRACK_END));
+
+        // event received before the playing track started
+        push.wakeUp(WakeReason.PLAYER_EVENT);
+        when(processQueue.getTrackStarted()).thenReturn(new Date(NOW + 1));
+        assertThat(push.getNextWakeUp()).isEqualTo(new WakeUp(NOW + 1000, WakeReason.TRACK_END));
+        push.shutdown();
+    }
+
+    @Test
+    public void wakesUpAtRuleBoundary() throws Exception {
+
+        when(processQueue.getExpectedEnd()).thenReturn(new Date(NOW + 5000));
+        when(resolveRule.getMillisUntilChange()).thenReturn(3000L);
+
+        assertThat(sut.getNextWakeUp()).isEqualTo(new WakeUp(NOW + 3000, WakeReason.RULE_BOUNDARY));
+    }
+
+    @Test
+    public void processesQueueOnWakeUp() throws Exception {
+
+        sut.onWakeUp(new WakeUpEvent(WakeReason.ENQUEUE));
+
+        verify(processQueue, timeout(1000)).processQueue();
+        verify(processQueue, timeout(1000)).getExpectedEnd();
+        assertThat(sut.getWakeUps(WakeReason.ENQUEUE)).isEqualTo(1);
+        assertThat(sut.getTicks()).isEqualTo(1);
+    }
+
+    @Test
+    public void continuesAfterFailure() throws Exception {
+
+        doThrow(new IOException("relay down")).when(processQueue).processQueue();
+
+        sut.tick(WakeReason.SAFETY_POLL);
+
+        assertThat(sut.getTicks()).isEqualTo(1);
+        assertThat(sut.getWakeUps(WakeReason.SAFETY_POLL)).isEqualTo(1);
+    }
+
+    @Test
+    public void onlyResolvesRuleIfNotLeader() throws Exception {
+
+        when(leaderElection.isLeader()).thenReturn(false);
+
+        sut.tick(WakeReason.ENQUEUE);
+
+        verify(processQueue).resolveActiveRule();
+        verify(processQueue, never()).processQueue();
+        assertThat(sut.getTicks()).isEqualTo(0);
+    }
+
+    @Test
+    public void followerAdmitsUploadsWhileRuleIsOnline() throws Exception {
+
+        RuleState ruleState = new RuleState();
+        StateService stateService = mock(StateService.class);
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneId.of("UTC"));
+        ProcessQueue follower = new ProcessQueue(mock(MidiRelayClient.class), playCommandService,
+                mock(PopulateQueue.class), ruleState, resolveRule, stateService, clock, false);
+        QueueScheduler scheduler = new QueueScheduler(follower, resolveRule, leaderElection, playCommandService, clock,
+                executor, 15);
+
+        when(leaderElection.isLeader()).thenReturn(false);
+        when(resolveRule.getRule()).thenReturn(new ResolveRule.FallbackRule(Rule.Action.PLAYLIST));
+
+        scheduler.tick(WakeReason.STARTUP);
+        new RuleOnlineAdmissionStage(new GetOnlineState(ruleState, stateService))
+                .check(new Admission("session", "host", null, 1));
+
+        assertThat(ruleState.getActiveAction()).isEqualTo(Rule.Action.PLAYLIST);
+        verifyZeroInteractions(stateService);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void reconcilesQueueIfClustered() throws Exception {
+
+        when(leaderElection.isClustered()).thenReturn(true);
+
+        sut.onLeadership(new LeadershipEvent(true));
+
+        verify(playCommandService, timeout(1000)).reconcileQueue();
+        verify(processQueue, timeout(1000)).processQueue();
+        assertThat(sut.getWakeUps(WakeReason.ELECTED)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,110 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.junit.Test;
+
+import com.google.common.io.Resources;
+
+import de.paluch.heckenlights.model.ContentTooLargeException;
+
+/**
+ * @author Mark Paluch
+ */
+public class ReadMidiUploadTest {
+
+    private ReadMidiUpload sut = new ReadMidiUpload(10000);
+
+    @Test
+    public void readsUpload() throws Exception {
+
+        byte[] content = Resources.toByteArray(Resources.getResource("P-Christmas_Carols_-_Winter_Wonderland.mid"));
+
+        assertThat(sut.read(new ByteArrayInputStream(content), content.length)).isEqualTo(content);
+        assertThat(sut.read(new ByteArrayInputStream(content), -1)).isEqualTo(content);
+    }
+
+    @Test
+    public void rejectsDeclaredLengthWithoutReading() throws Exception {
+
+        CountingInputStream input = new CountingInputStream('M');
+
+        try {
+            sut.read(input, 10001);
+            fail("Missing ContentTooLargeException");
+        } catch (ContentTooLargeException e) {
+            assertThat(input.count).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void rejectsMissingHeaderAfterFourBytes() throws Exception {
+
+        CountingInputStream input = new CountingInputStream('X');
+
+        try {
+            sut.read(input, -1);
+            fail("Missing InvalidMidiDataException");
+        } catch (InvalidMidiDataException e) {
+            assertThat(input.count).isEqualTo(4);
+        }
+    }
+
+    @Test(expected = InvalidMidiDataException.class)
+    public void rejectsShortUpload() throws Exception {
+        sut.read(new ByteArrayInputStream("MTh".getBytes()), -1);
+    }
+
+    @Test
+    public void stopsReadingAtMaximumSize() throws Exception {
+
+        CountingInputStream input = new CountingInputStream("MThd".getBytes());
+
+        try {
+            sut.read(input, -1);
+            fail("Missing ContentTooLargeException");
+        } catch (ContentTooLargeException e) {
+            assertThat(input.count).isEqualTo(10001);
+        }
+    }
+
+    @Test
+    public void acceptsUploadOfMaximumSize() throws Exception {
+
+        byte[] content = new byte[10000];
+        System.arraycopy("MThd".getBytes(), 0, content, 0, 4);
+
+        assertThat(sut.read(new ByteArrayInputStream(content), -1)).hasSize(10000);
+    }
+
+    /**
+     * Endless stream starting with {@code prefix} followed by zero bytes, counting the consumed bytes.
+     */
+    static class CountingInputStream extends InputStream {
+
+        private final byte[] prefix;
+        long count;
+
+        CountingInputStream(char fill) {
+            this(new byte[] { (byte) fill, (byte) fill, (byte) fill, (byte) fill });
+        }
+
+        CountingInputStream(byte[] prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public int read() {
+
+            int b = count < prefix.length ? prefix[(int) count] : 0;
+            count++;
+            return b;
+        }
+    }
+}
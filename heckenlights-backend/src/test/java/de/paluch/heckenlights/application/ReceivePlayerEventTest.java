@@ -0,0 +1,102 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.ApplicationEventPublisher;
+
+import de.paluch.heckenlights.application.ReceivePlayerEvent.Outcome;
+import de.paluch.heckenlights.client.MidiRelayClient;
+import de.paluch.heckenlights.relay.PlayerEventRepresentation;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ReceivePlayerEventTest {
+
+    @Mock
+    private MidiRelayClient client;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private LeaderElection leaderElection;
+
+    @Before
+    public void before() throws Exception {
+        when(leaderElection.isLeader()).thenReturn(true);
+    }
+
+    @Test
+    public void updatesStateAndWakesUpScheduler() throws Exception {
+
+        ReceivePlayerEvent sut = new ReceivePlayerEvent(client, eventPublisher, leaderElection, true, "secret");
+        PlayerEventRepresentation event = event(PlayerEventRepresentation.Type.TRACK_ENDED);
+
+        assertThat(sut.receive("secret", event)).isEqualTo(Outcome.ACCEPTED);
+
+        verify(client).update(event.getState());
+        verify(eventPublisher).publishEvent(new WakeUpEvent(QueueScheduler.WakeReason.PLAYER_EVENT));
+    }
+
+    @Test
+    public void ignoresEventsIfDisabled() throws Exception {
+
+        ReceivePlayerEvent sut = new ReceivePlayerEvent(client, eventPublisher, leaderElection, false, "secret");
+
+        assertThat(sut.receive("secret", event(PlayerEventRepresentation.Type.TRACK_STARTED)))
+                .isEqualTo(Outcome.DISABLED);
+
+        verifyZeroInteractions(client, eventPublisher);
+    }
+
+    @Test
+    public void rejectsUnauthenticatedEvents() throws Exception {
+
+        ReceivePlayerEvent sut = new ReceivePlayerEvent(client, eventPublisher, leaderElection, true, "secret");
+        PlayerEventRepresentation event = event(PlayerEventRepresentation.Type.TRACK_STARTED);
+
+        assertThat(sut.receive(null, event)).isEqualTo(Outcome.UNAUTHORIZED);
+        assertThat(sut.receive("guess", event)).isEqualTo(Outcome.UNAUTHORIZED);
+        assertThat(new ReceivePlayerEvent(client, eventPublisher, leaderElection, true, "").receive("", event))
+                .isEqualTo(Outcome.UNAUTHORIZED);
+
+        verifyZeroInteractions(client, eventPublisher);
+    }
+
+    @Test
+    public void rejectsEventsIfNotLeader() throws Exception {
+
+        when(leaderElection.isLeader()).thenReturn(false);
+        ReceivePlayerEvent sut = new ReceivePlayerEvent(client, eventPublisher, leaderElection, true, "secret");
+
+        assertThat(sut.receive("secret", event(PlayerEventRepresentation.Type.TRACK_ENDED)))
+                .isEqualTo(Outcome.NOT_LEADER);
+
+        verifyZeroInteractions(client, eventPublisher);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEventWithoutType() throws Exception {
+        new ReceivePlayerEvent(client, eventPublisher, leaderElection, true, "secret").receive("secret", event(null));
+    }
+
+    private static PlayerEventRepresentation event(PlayerEventRepresentation.Type type) {
+
+        PlayerEventRepresentation event = new PlayerEventRepresentation();
+        event.setType(type);
+        event.setId("id");
+        event.setState(new PlayerStateRepresentation());
+        return event;
+    }
+}
@@ -146,6 +146,21 @@ public class ResolveRuleTest {
 
     }
 
+    @Test
+    public void millisUntilChange() throws Exception {
+
+        setTime("16:59");
+        assertThat(sut.getMillisUntilChange()).isEqualTo(TimeUnit.SECONDS.toMillis(30));
+
+        setTime("22:00");
+        assertThat(sut.getMillisUntilChange()).isEqualTo(TimeUnit.SECONDS.toMillis(30));
+
+        ruleState.setLightsOnTimeMs(TimeUnit.SECONDS.toMillis(590));
+
+        setTime("17:20");
+        assertThat(sut.getMillisUntilChange()).isEqualTo(TimeUnit.SECONDS.toMillis(10));
+    }
+
     public void setTime(String time) {
 
         ZonedDateTime lt = ZonedDateTime.parse("2007-12-03T" + time + ":30.00+01:00[Europe/Berlin]");
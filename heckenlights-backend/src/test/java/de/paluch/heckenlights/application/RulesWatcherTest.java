@@ -0,0 +1,98 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.FileSystemResource;
+
+import de.paluch.heckenlights.model.Rule.Action;
+import de.paluch.heckenlights.model.Rules;
+
+/**
+ * @author Mark Paluch
+ */
+public class RulesWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private RuleService ruleService;
+    private ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private RulesWatcher sut;
+
+    @Before
+    public void before() throws Exception {
+
+        file = folder.newFile("rules.xml");
+        write(file, "OFFLINE");
+
+        ruleService = new RuleService(new FileSystemResource(file));
+        sut = new RulesWatcher(ruleService, eventPublisher);
+        sut.start();
+    }
+
+    @After
+    public void after() throws Exception {
+        sut.shutdown();
+    }
+
+    @Test
+    public void reloadsChangedRules() throws Exception {
+
+        Rules previous = ruleService.getRules();
+        assertThat(sut.isWatching()).isTrue();
+
+        write(file, "LIGHTS_ON");
+
+        verify(eventPublisher, timeout(5000)).publishEvent(new WakeUpEvent(QueueScheduler.WakeReason.RULES_CHANGED));
+        assertThat(ruleService.getRules().getDefaultAction()).isEqualTo(Action.LIGHTS_ON);
+        assertThat(previous.getDefaultAction()).isEqualTo(Action.OFFLINE);
+    }
+
+    @Test
+    public void reloadsReplacedRules() throws Exception {
+
+        File replacement = folder.newFile("rules.xml.tmp");
+        write(replacement, "PLAYLIST");
+        Files.move(replacement.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        verify(eventPublisher, timeout(5000)).publishEvent(new WakeUpEvent(QueueScheduler.WakeReason.RULES_CHANGED));
+        assertThat(ruleService.getRules().getDefaultAction()).isEqualTo(Action.PLAYLIST);
+    }
+
+    @Test
+    public void keepsRulesIfInvalid() throws Exception {
+
+        Files.write(file.toPath(), "<rules><rule><from>17:xx</from><to>22:00</to></rule></rules>"
+                .getBytes(StandardCharsets.UTF_8));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sut.getFailures() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(sut.getFailures()).isEqualTo(1);
+        assertThat(ruleService.getRules().getDefaultAction()).isEqualTo(Action.OFFLINE);
+    }
+
+    private static void write(File file, String defaultAction) throws Exception {
+
+        String rules = "<rules><timezone>Europe/Berlin</timezone><timeunit>MINUTES</timeunit><defaultAction>"
+                + defaultAction + "</defaultAction></rules>";
+        Files.write(file.toPath(), rules.getBytes(StandardCharsets.UTF_8));
+    }
+}
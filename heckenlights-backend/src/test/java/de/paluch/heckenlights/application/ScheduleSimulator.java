@@ -0,0 +1,608 @@
+package de.paluch.heckenlights.application;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.gridfs.GridFsOperations;
+import org.springframework.util.StreamUtils;
+
+import de.paluch.heckenlights.application.QueueScheduler.WakeReason;
+import de.paluch.heckenlights.client.MidiRelayClient;
+import de.paluch.heckenlights.client.StandInMidiRelay;
+import de.paluch.heckenlights.model.PlayCommandSummary;
+import de.paluch.heckenlights.model.Rule;
+import de.paluch.heckenlights.model.RuleState;
+import de.paluch.heckenlights.model.TrackContent;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
+import de.paluch.heckenlights.repositories.PlayCommandRepository;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import de.paluch.heckenlights.repositories.QueueEta;
+import de.paluch.heckenlights.repositories.QueueIndex;
+import de.paluch.heckenlights.repositories.StateService;
+
+/**
+ * Fast-forward simulation of rules and queue processing. Runs {@link QueueScheduler}, {@link ProcessQueue} and
+ * {@link ResolveRule} on a virtual clock against a {@link StandInMidiRelay} and an in-memory queue. Uploads arrive as a
+ * Poisson process and are accepted while the active rule is online. Scheduled wake-ups run in virtual time, a week of
+ * operation replays in seconds. Reports rule transitions, lights-on and played time and the cost of the scheduler ticks.
+ * Run {@link #main(String[])} from the test classpath to check a rules file or to compare tick costs between changes.
+ *
+ * @author Mark Paluch
+ */
+public class ScheduleSimulator {
+
+    private final Resource rules;
+    private final byte[] track;
+    private final double arrivalsPerHour;
+    private final long seed;
+
+    /**
+     * @param rules the rules file.
+     * @param track MIDI content played for every upload.
+     * @param arrivalsPerHour mean number of uploads per hour.
+     * @param seed seed of the arrival model.
+     */
+    public ScheduleSimulator(Resource rules, byte[] track, double arrivalsPerHour, long seed) {
+
+        this.rules = rules;
+        this.track = track;
+        this.arrivalsPerHour = arrivalsPerHour;
+        this.seed = seed;
+    }
+
+    /**
+     * Usage: {@code ScheduleSimulator <rules.xml> [days, default 7] [uploads per hour, default 20]}. Starts on the next
+     * Monday, midnight, in the time zone of the rules.
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length == 0) {
+            System.err.println("Usage: ScheduleSimulator <rules.xml> [days] [uploads per hour]");
+            System.exit(1);
+        }
+
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+        double arrivalsPerHour = args.length > 2 ? Double.parseDouble(args[2]) : 20;
+
+        byte[] track;
+        try (InputStream is = ScheduleSimulator.class.getResourceAsStream("/P-Christmas_Carols_-_Winter_Wonderland.mid")) {
+            track = StreamUtils.copyToByteArray(is);
+        }
+
+        ScheduleSimulator simulator = new ScheduleSimulator(new FileSystemResource(args[0]), track, arrivalsPerHour, 42);
+        LocalDateTime start = LocalDateTime.now().toLocalDate().atStartOfDay();
+        while (start.getDayOfWeek() != DayOfWeek.MONDAY) {
+            start = start.plusDays(1);
+        }
+
+        // warm up the scheduler hot path before the measured run
+        simulator.run(start, TimeUnit.DAYS.toMillis(1));
+
+        System.out.println(simulator.run(start, TimeUnit.DAYS.toMillis(days)).format());
+    }
+
+    /**
+     * Simulate operation.
+     *
+     * @param start local start time in the time zone of the rules.
+     * @param durationMs simulated duration.
+     * @return the report.
+     */
+    public Report run(LocalDateTime start, long durationMs) throws Exception {
+        return new Simulation(start, durationMs).run();
+    }
+
+    private class Simulation {
+
+        final RuleService ruleService = new RuleService(rules);
+        final VirtualClock clock;
+        final VirtualExecutor executor;
+        final StandInMidiRelay relay;
+        final SimulatedPlayCommandService playCommandService;
+        final RuleState ruleState = new RuleState();
+        final QueueScheduler scheduler;
+        final Random random = new Random(seed);
+        final int trackSeconds;
+        final long end;
+
+        final List<Transition> transitions = new ArrayList<>();
+        long arrivals;
+        long rejected;
+        int maxQueueSize;
+        long lightsOnMs;
+        long playedMs;
+        long accountedUntil;
+        int sequence;
+
+        Simulation(LocalDateTime start, long durationMs) throws Exception {
+
+            ZoneId zone = TimeZone.getTimeZone(ruleService.getRules().getTimezone()).toZoneId();
+            long startMs = start.atZone(zone).toInstant().toEpochMilli();
+
+            this.clock = new VirtualClock(zone, startMs);
+            this.executor = new VirtualExecutor(clock);
+            this.relay = new StandInMidiRelay(clock);
+            this.trackSeconds = MidiScanner.scan(track).getDurationSeconds();
+            this.end = startMs + durationMs;
+            this.accountedUntil = startMs;
+
+            MidiRelayClient client = new MidiRelayClient(relay, clock, 500);
+            this.playCommandService = new SimulatedPlayCommandService(client);
+
+            StateService stateService = mock(StateService.class);
+            when(stateService.isQueueProcessorActive()).thenReturn(true);
+
+            PopulateQueue populateQueue = mock(PopulateQueue.class);
+            doAnswer(invocation -> {
+                playCommandService.enqueue("auto-" + sequence++, trackSeconds, clock.millis());
+                return null;
+            }).when(populateQueue).populateQueue();
+
+            LeaderElection leaderElection = mock(LeaderElection.class);
+            when(leaderElection.isLeader()).thenReturn(true);
+
+            ResolveRule resolveRule = new ResolveRule(ruleState, ruleService, clock);
+            ProcessQueue processQueue = new ProcessQueue(client, playCommandService, populateQueue, ruleState,
+                    resolveRule, stateService, clock, true);
+
+            this.scheduler = new QueueScheduler(processQueue, resolveRule, leaderElection, playCommandService, clock,
+                    executor, 15);
+        }
+
+        Report run() {
+
+            long wallStart = System.nanoTime();
+
+            scheduler.start();
+            scheduleArrival();
+
+            Rule activeRule = null;
+            VirtualTask task;
+            while ((task = executor.next(end)) != null) {
+
+                account(task.at);
+                clock.set(task.at);
+                task.run();
+
+                if (ruleState.getActiveRule() != activeRule) {
+                    activeRule = ruleState.getActiveRule();
+                    transitions.add(new Transition(LocalDateTime.ofInstant(Instant.ofEpochMilli(task.at), clock.getZone()),
+                            ruleState.getActiveAction(), activeRule));
+                }
+            }
+
+            account(end);
+            scheduler.shutdown();
+
+            Map<WakeReason, Long> wakeUps = new EnumMap<>(WakeReason.class);
+            for (WakeReason reason : WakeReason.values()) {
+                wakeUps.put(reason, scheduler.getWakeUps(reason));
+            }
+
+            return new Report(transitions, lightsOnMs, playedMs, relay.getPlayed().size(), arrivals, rejected,
+                    maxQueueSize, scheduler.getTicks(), scheduler.getTickNanos(), scheduler.getMaxTickNanos(), wakeUps,
+                    System.nanoTime() - wallStart);
+        }
+
+        /**
+         * Uploads are accepted while the active rule is online, see {@link GetOnlineState#isOnlineByRule()}.
+         */
+        void scheduleArrival() {
+
+            if (arrivalsPerHour <= 0) {
+                return;
+            }
+
+            long delay = (long) (-Math.log(1 - random.nextDouble()) * TimeUnit.HOURS.toMillis(1) / arrivalsPerHour);
+            executor.schedule(() -> {
+
+                arrivals++;
+                if (ruleState.getActiveAction() != null
+                        && GetOnlineState.ONLINE_ACTIONS.contains(ruleState.getActiveAction())) {
+                    playCommandService.enqueue("upload-" + sequence++, trackSeconds, clock.millis());
+                    maxQueueSize = Math.max(maxQueueSize, playCommandService.getEnqueuedCount());
+                    scheduler.wakeUp(WakeReason.ENQUEUE);
+                } else {
+                    rejected++;
+                }
+
+                scheduleArrival();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Account lights-on and played time from the last event until {@code until} by the relay state at the last event.
+         */
+        void account(long until) {
+
+            long from = accountedUntil;
+            if (until <= from) {
+                return;
+            }
+
+            PlayerStateRepresentation state = relay.getState().join();
+            long playingUntil = from;
+            if (state.isRunning() && state.getEstimatedEnd() != null) {
+                playingUntil = Math.max(from, Math.min(until, state.getEstimatedEnd().getTime()));
+            }
+
+            playedMs += playingUntil - from;
+            lightsOnMs += relay.isOn() ? until - from : playingUntil - from;
+            accountedUntil = until;
+        }
+    }
+
+    /**
+     * Outcome of a simulation.
+     */
+    @lombok.Value
+    public static class Report {
+
+        List<Transition> transitions;
+        long lightsOnMs;
+        long playedMs;
+        int tracksPlayed;
+        long arrivals;
+        long rejected;
+        int maxQueueSize;
+        long ticks;
+        long tickNanos;
+        long maxTickNanos;
+        Map<WakeReason, Long> wakeUps;
+        long wallNanos;
+
+        public long getMeanTickNanos() {
+            return ticks == 0 ? 0 : tickNanos / ticks;
+        }
+
+        public String format() {
+
+            StringBuilder builder = new StringBuilder();
+            builder.append("Rule transitions:\n");
+            for (Transition transition : transitions) {
+                builder.append(String.format("  %s %-20s %s%n", transition.getAt(), transition.getAction(),
+                        describe(transition.getRule())));
+            }
+
+            builder.append(String.format("Lights on:        %s%n", formatDuration(lightsOnMs)));
+            builder.append(String.format("Played:           %s (%d tracks)%n", formatDuration(playedMs), tracksPlayed));
+            builder.append(String.format("Uploads:          %d, rejected while offline %d, max. queue size %d%n",
+                    arrivals, rejected, maxQueueSize));
+            builder.append(String.format("Ticks:            %d, mean %.1f us, max %.1f us%n", ticks,
+                    getMeanTickNanos() / 1000d, maxTickNanos / 1000d));
+            builder.append(String.format("Wake-ups:         %s%n", wakeUps));
+            builder.append(String.format("Wall time:        %d ms%n", TimeUnit.NANOSECONDS.toMillis(wallNanos)));
+            return builder.toString();
+        }
+
+        private static String describe(Rule rule) {
+
+            if (rule instanceof ResolveRule.FallbackRule) {
+                return "(default action)";
+            }
+
+            return (rule.getDays().isEmpty() ? "" : rule.getDays() + " ") + rule.getFrom() + "-" + rule.getTo();
+        }
+
+        private static String formatDuration(long millis) {
+
+            long minutes = TimeUnit.MILLISECONDS.toMinutes(millis);
+            return String.format("%dh %02dm", minutes / 60, minutes % 60);
+        }
+    }
+
+    /**
+     * Switch of the active rule.
+     */
+    @lombok.Value
+    public static class Transition {
+
+        LocalDateTime at;
+        Rule.Action action;
+        Rule rule;
+    }
+
+    /**
+     * {@link Clock} that advances only when set.
+     */
+    static class VirtualClock extends Clock {
+
+        private final ZoneId zone;
+        private long millis;
+
+        VirtualClock(ZoneId zone, long millis) {
+            this.zone = zone;
+            this.millis = millis;
+        }
+
+        void set(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new VirtualClock(zone, millis);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    /**
+     * Executor collecting scheduled tasks in virtual time. Tasks are run by the caller of {@link #next(long)}, tasks
+     * scheduled for the same time run in scheduling order.
+     */
+    static class VirtualExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+        private final VirtualClock clock;
+        private final PriorityQueue<VirtualTask> tasks = new PriorityQueue<>();
+        private long sequence;
+        private boolean shutdown;
+
+        VirtualExecutor(VirtualClock clock) {
+            this.clock = clock;
+        }
+
+        /**
+         * @param until
+         * @return the next task due not later than {@code until} or {@literal null}.
+         */
+        VirtualTask next(long until) {
+
+            VirtualTask task;
+            while ((task = tasks.peek()) != null && task.at <= until) {
+
+                tasks.poll();
+                if (!task.cancelled) {
+                    return task;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+
+            VirtualTask task = new VirtualTask(command, clock.millis() + unit.toMillis(Math.max(0, delay)), sequence++);
+            if (!shutdown) {
+                tasks.add(task);
+            }
+            return task;
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(command, 0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+
+            shutdown = true;
+            List<Runnable> pending = new ArrayList<>(tasks);
+            tasks.clear();
+            return pending;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && tasks.isEmpty();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return isTerminated();
+        }
+    }
+
+    static class VirtualTask implements ScheduledFuture<Object>, Runnable {
+
+        private final Runnable command;
+        private final long at;
+        private final long sequence;
+        private boolean cancelled;
+        private boolean done;
+
+        VirtualTask(Runnable command, long at, long sequence) {
+            this.command = command;
+            this.at = at;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            done = true;
+            command.run();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            throw new UnsupportedOperationException("Delay depends on the virtual clock");
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+
+            VirtualTask other = (VirtualTask) o;
+            int result = Long.compare(at, other.at);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done || cancelled;
+        }
+
+        @Override
+        public Object get() {
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) {
+            return null;
+        }
+    }
+
+    /**
+     * Queue held in memory, all tracks share the simulated MIDI content.
+     */
+    private class SimulatedPlayCommandService extends PlayCommandService {
+
+        private final Deque<PlayCommandSummary> queue = new ArrayDeque<>();
+        private final Map<String, PlayCommandSummary> claimed = new HashMap<>();
+
+        SimulatedPlayCommandService(MidiRelayClient client) {
+            super(mock(PlayCommandRepository.class), client, mock(GridFsOperations.class), mock(MongoOperations.class),
+                    new QueueEta(), new QueueIndex());
+        }
+
+        void enqueue(String id, int duration, long created) {
+
+            PlayCommandSummary command = new PlayCommandSummary();
+            command.setId(id);
+            command.setFileName(id + ".mid");
+            command.setDuration(duration);
+            command.setCreated(new Date(created));
+            queue.addLast(command);
+        }
+
+        @Override
+        public List<PlayCommandSummary> getEnquedCommands() {
+            return new ArrayList<>(queue);
+        }
+
+        @Override
+        public int getEnqueuedCount() {
+            return queue.size();
+        }
+
+        @Override
+        public TrackContent getTrackContent(String id) {
+
+            TrackContent content = new TrackContent();
+            content.setId(id);
+            content.setFilename(id + ".mid");
+            content.setContent(track);
+            return content;
+        }
+
+        @Override
+        public boolean claim(String id, long leaseMillis) {
+
+            for (Iterator<PlayCommandSummary> iterator = queue.iterator(); iterator.hasNext();) {
+
+                PlayCommandSummary command = iterator.next();
+                if (command.getId().equals(id)) {
+                    iterator.remove();
+                    claimed.put(id, command);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public boolean complete(String id) {
+            return claimed.remove(id) != null;
+        }
+
+        @Override
+        public void release(String id) {
+
+            PlayCommandSummary command = claimed.remove(id);
+            if (command != null) {
+                queue.addFirst(command);
+            }
+        }
+
+        @Override
+        public boolean reconcileQueue() {
+            return false;
+        }
+    }
+}
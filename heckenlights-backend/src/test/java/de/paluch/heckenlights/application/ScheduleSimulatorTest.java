@@ -0,0 +1,87 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.groups.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import de.paluch.heckenlights.application.QueueScheduler.WakeReason;
+import de.paluch.heckenlights.model.Rule;
+
+/**
+ * @author Mark Paluch
+ */
+public class ScheduleSimulatorTest {
+
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2016, 12, 5, 0, 0);
+
+    private byte[] track;
+
+    @Before
+    public void before() throws Exception {
+
+        try (InputStream is = getClass().getResourceAsStream("/P-Christmas_Carols_-_Winter_Wonderland.mid")) {
+            track = StreamUtils.copyToByteArray(is);
+        }
+    }
+
+    @Test
+    public void followsRulesOfADay() throws Exception {
+
+        ScheduleSimulator.Report report = new ScheduleSimulator(new ClassPathResource("rules.xml"), track, 0, 42)
+                .run(MONDAY, TimeUnit.DAYS.toMillis(1));
+
+        assertThat(report.getTransitions()).extracting("at", "action").startsWith(
+                tuple(0, 0, Rule.Action.OFFLINE), tuple(5, 0, Rule.Action.LIGHTS_ON), tuple(8, 1, Rule.Action.OFFLINE),
+                tuple(17, 0, Rule.Action.PLAYLIST_AUTO_ENQEUE));
+
+        ScheduleSimulator.Transition last = report.getTransitions().get(report.getTransitions().size() - 1);
+        assertThat(last.getAction()).isEqualTo(Rule.Action.OFFLINE);
+        assertThat(last.getAt().toLocalTime()).isAfterOrEqualTo(LocalTime.of(22, 0));
+
+        assertThat(report.getLightsOnMs()).isBetween(TimeUnit.HOURS.toMillis(8), TimeUnit.HOURS.toMillis(8)
+                + TimeUnit.MINUTES.toMillis(15));
+        assertThat(report.getPlayedMs()).isPositive().isLessThan(TimeUnit.HOURS.toMillis(5));
+        assertThat(report.getArrivals()).isZero();
+    }
+
+    @Test
+    public void playsUploadsWhileOnline() throws Exception {
+
+        ScheduleSimulator.Report report = new ScheduleSimulator(new ClassPathResource("rules.xml"), track, 20, 42)
+                .run(MONDAY, TimeUnit.DAYS.toMillis(1));
+
+        assertThat(report.getTransitions()).extracting("action").contains(Rule.Action.PLAYLIST);
+        assertThat(report.getArrivals()).isGreaterThan(report.getRejected()).isGreaterThan(0);
+        assertThat(report.getRejected()).isPositive();
+        assertThat(report.getPlayedMs()).isPositive().isLessThanOrEqualTo(report.getLightsOnMs());
+        assertThat(report.getWakeUps().get(WakeReason.ENQUEUE)).isPositive();
+        assertThat(report.getTicks()).isPositive();
+        assertThat(report.getMaxTickNanos()).isGreaterThanOrEqualTo(report.getMeanTickNanos());
+    }
+
+    @Test
+    public void isReproducible() throws Exception {
+
+        ScheduleSimulator simulator = new ScheduleSimulator(new ClassPathResource("rules.xml"), track, 20, 42);
+
+        ScheduleSimulator.Report first = simulator.run(MONDAY, TimeUnit.DAYS.toMillis(1));
+        ScheduleSimulator.Report second = simulator.run(MONDAY, TimeUnit.DAYS.toMillis(1));
+
+        assertThat(second.getTransitions()).isEqualTo(first.getTransitions());
+        assertThat(second.getPlayedMs()).isEqualTo(first.getPlayedMs());
+        assertThat(second.getTracksPlayed()).isEqualTo(first.getTracksPlayed());
+    }
+
+    private static Tuple tuple(int hour, int minute, Rule.Action action) {
+        return Tuple.tuple(MONDAY.withHour(hour).withMinute(minute), action);
+    }
+}
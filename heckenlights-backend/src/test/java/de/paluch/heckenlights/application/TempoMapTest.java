@@ -0,0 +1,91 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+import com.google.common.io.Resources;
+
+/**
+ * @author Mark Paluch
+ */
+public class TempoMapTest {
+
+    @Test
+    public void defaultTempo() throws Exception {
+
+        Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        addNote(sequence.createTrack(), 1920);
+
+        assertThat(TempoMap.getMicrosecondLength(sequence)).isEqualTo(2000000);
+    }
+
+    @Test
+    public void tempoChanges() throws Exception {
+
+        Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        Track track = sequence.createTrack();
+        track.add(tempo(0, 600000));
+        track.add(tempo(960, 300000));
+        addNote(track, 1920);
+
+        assertThat(TempoMap.getMicrosecondLength(sequence)).isEqualTo(1800000)
+                .isEqualTo(sequence.getMicrosecondLength());
+    }
+
+    @Test
+    public void readsTempoChangesFromFirstTrack() throws Exception {
+
+        Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        Track first = sequence.createTrack();
+        first.add(tempo(960, 300000));
+        first.add(tempo(480, 1000000));
+        addNote(first, 1920);
+
+        Track second = sequence.createTrack();
+        second.add(tempo(0, 100000));
+
+        TempoMap tempoMap = TempoMap.of(sequence);
+
+        assertThat(tempoMap.getTempoChangeCount()).isEqualTo(2);
+        assertThat(tempoMap.getMicroseconds(480)).isEqualTo(500000);
+        assertThat(tempoMap.getMicroseconds(960)).isEqualTo(1500000);
+        assertThat(tempoMap.getMicroseconds(1920)).isEqualTo(2100000).isEqualTo(sequence.getMicrosecondLength());
+    }
+
+    @Test
+    public void smpteDivision() throws Exception {
+
+        Sequence sequence = new Sequence(Sequence.SMPTE_25, 40);
+        Track track = sequence.createTrack();
+        track.add(tempo(0, 1000000));
+        addNote(track, 3000);
+
+        assertThat(TempoMap.getMicrosecondLength(sequence)).isEqualTo(3000000);
+    }
+
+    @Test
+    public void matchesSequenceLength() throws Exception {
+
+        Sequence sequence = MidiSystem.getSequence(Resources.getResource(PopulateQueueTest.RESOURCE_NAME));
+
+        assertThat(TempoMap.getMicrosecondLength(sequence)).isEqualTo(sequence.getMicrosecondLength());
+    }
+
+    private static void addNote(Track track, long endTick) throws Exception {
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), 0));
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), endTick));
+    }
+
+    private static MidiEvent tempo(long tick, int mpq) throws Exception {
+        byte[] data = { (byte) (mpq >> 16), (byte) (mpq >> 8), (byte) mpq };
+        return new MidiEvent(new MetaMessage(0x51, data, data.length), tick);
+    }
+}
@@ -0,0 +1,147 @@
+package de.paluch.heckenlights.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import de.paluch.heckenlights.model.PlayCommandSummary;
+import de.paluch.heckenlights.repositories.PlayCommandService;
+import de.paluch.heckenlights.repositories.UploadQuotaService;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class UploadRateLimiterTest {
+
+    @Mock
+    private PlayCommandService playCommandService;
+
+    @Mock
+    private Clock clock;
+
+    private UploadRateLimiter sut;
+
+    @Before
+    public void before() throws Exception {
+
+        when(clock.millis()).thenReturn(10000L);
+        sut = new UploadRateLimiter(playCommandService, clock, 3, 1000);
+    }
+
+    @Test
+    public void grantsUpToLimit() {
+
+        assertThat(sut.tryAcquire("session", "host", 1)).isEqualTo(1);
+        assertThat(sut.tryAcquire("session", "host", 5)).isEqualTo(2);
+        assertThat(sut.tryAcquire("session", "host", 1)).isEqualTo(0);
+
+        assertThat(sut.tryAcquire("other", "host", 1)).isEqualTo(1);
+    }
+
+    @Test
+    public void slidesWindow() {
+
+        sut.tryAcquire("session", "host", 2);
+
+        when(clock.millis()).thenReturn(10500L);
+        sut.tryAcquire("session", "host", 1);
+        assertThat(sut.getAvailable("session", "host")).isEqualTo(0);
+
+        when(clock.millis()).thenReturn(11000L);
+        assertThat(sut.getAvailable("session", "host")).isEqualTo(2);
+        assertThat(sut.tryAcquire("session", "host", 3)).isEqualTo(2);
+    }
+
+    @Test
+    public void releasesPermits() {
+
+        sut.tryAcquire("session", "host", 3);
+        sut.release("session", "host", 2);
+
+        assertThat(sut.getAvailable("session", "host")).isEqualTo(2);
+    }
+
+    @Test
+    public void rebuildsFromStoredCommands() {
+
+        when(playCommandService.getCreatedBetween(any(Date.class), any(Date.class)))
+                .thenReturn(Arrays.asList(command("session", 9500), command("session", 9800), command("other", 9900)));
+
+        sut.initialize();
+
+        assertThat(sut.getAvailable("session", "host")).isEqualTo(1);
+        assertThat(sut.getAvailable("other", "host")).isEqualTo(2);
+
+        when(clock.millis()).thenReturn(10600L);
+        assertThat(sut.getAvailable("session", "host")).isEqualTo(2);
+    }
+
+    @Test
+    public void grantsExactlyLimitUnderContention() throws Exception {
+
+        sut = new UploadRateLimiter(playCommandService, clock, 100, 1000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger granted = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < 50; j++) {
+                    granted.addAndGet(sut.tryAcquire("session", "host", 1));
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(granted.get()).isEqualTo(100);
+    }
+
+    @Test
+    public void sharesWindowsIfClustered() throws Exception {
+
+        UploadQuotaService uploadQuotaService = mock(UploadQuotaService.class);
+        when(uploadQuotaService.tryAcquire("session/host", 3, 2, new Date(10000), 1000)).thenReturn(1);
+        sut = new UploadRateLimiter(playCommandService, uploadQuotaService, clock, true, 3, 1000);
+
+        sut.initialize();
+        assertThat(sut.tryAcquire("session", "host", 2)).isEqualTo(1);
+        sut.release("session", "host", 1);
+
+        verify(uploadQuotaService).release("session/host", 1);
+        verifyZeroInteractions(playCommandService);
+    }
+
+    private static PlayCommandSummary command(String session, long created) {
+
+        PlayCommandSummary summary = new PlayCommandSummary();
+        summary.setExternalSessionId(session);
+        summary.setSubmissionHost("host");
+        summary.setCreated(new Date(created));
+        return summary;
+    }
+}
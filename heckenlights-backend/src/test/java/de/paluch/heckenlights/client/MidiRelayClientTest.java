@@ -0,0 +1,199 @@
+package de.paluch.heckenlights.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import de.paluch.heckenlights.relay.MidiRelay;
+import de.paluch.heckenlights.relay.MidiRelayUnavailableException;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class MidiRelayClientTest {
+
+    @Mock
+    private MidiRelay relay;
+
+    private AtomicLong now = new AtomicLong(1000000);
+    private ExecutorService callers = Executors.newFixedThreadPool(4);
+    private MidiRelayClient sut;
+
+    @Before
+    public void before() throws Exception {
+
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(invocation -> now.get());
+
+        sut = new MidiRelayClient(relay, clock, 500);
+    }
+
+    @After
+    public void after() throws Exception {
+
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void servesFreshStateWithoutRequest() throws Exception {
+
+        PlayerStateRepresentation state = new PlayerStateRepresentation();
+        when(relay.getState()).thenReturn(CompletableFuture.completedFuture(state));
+
+        assertThat(sut.getState()).isSameAs(state);
+        now.addAndGet(499);
+        assertThat(sut.getState()).isSameAs(state);
+        verify(relay).getState();
+
+        now.addAndGet(1);
+        sut.getState();
+        verify(relay, times(2)).getState();
+    }
+
+    @Test
+    public void coalescesConcurrentRequests() throws Exception {
+
+        PlayerStateRepresentation state = new PlayerStateRepresentation();
+        CompletableFuture<PlayerStateRepresentation> response = new CompletableFuture<>();
+        when(relay.getState()).thenReturn(response);
+
+        List<Future<PlayerStateRepresentation>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(callers.submit(sut::getState));
+        }
+
+        while (sut.getCoalesced() < 3) {
+            Thread.sleep(1);
+        }
+        response.complete(state);
+
+        for (Future<PlayerStateRepresentation> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(state);
+        }
+
+        verify(relay).getState();
+        assertThat(sut.getRequests()).isEqualTo(1);
+    }
+
+    @Test
+    public void latestStateDoesNotWaitForRelay() throws Exception {
+
+        PlayerStateRepresentation first = new PlayerStateRepresentation();
+        PlayerStateRepresentation second = new PlayerStateRepresentation();
+        CompletableFuture<PlayerStateRepresentation> response = new CompletableFuture<>();
+
+        when(relay.getState()).thenReturn(CompletableFuture.completedFuture(first)).thenReturn(response);
+
+        assertThat(sut.getLatestState()).isNull();
+        assertThat(sut.getState()).isSameAs(first);
+
+        now.addAndGet(1000);
+        assertThat(sut.getLatestState()).isSameAs(first);
+        assertThat(sut.getLatestState()).isSameAs(first);
+        assertThat(sut.getStaleServed()).isEqualTo(2);
+
+        response.complete(second);
+        assertThat(sut.getLatestState()).isSameAs(second);
+
+        assertThat(sut.getRequests()).isEqualTo(2);
+    }
+
+    @Test
+    public void commandsInvalidateState() throws Exception {
+
+        when(relay.getState()).thenReturn(CompletableFuture.completedFuture(new PlayerStateRepresentation()));
+        when(relay.play("id", "file.mid", new byte[0])).thenReturn(CompletableFuture.completedFuture("OK"));
+
+        sut.getState();
+        sut.play("id", "file.mid", new byte[0]);
+        sut.getState();
+
+        verify(relay, times(2)).getState();
+    }
+
+    @Test
+    public void failureKeepsLastKnownState() throws Exception {
+
+        PlayerStateRepresentation state = new PlayerStateRepresentation();
+        CompletableFuture<PlayerStateRepresentation> timeout = new CompletableFuture<>();
+        timeout.completeExceptionally(new TimeoutException("GET /player did not complete within 500 ms"));
+        when(relay.getState()).thenReturn(CompletableFuture.completedFuture(state)).thenReturn(timeout);
+        sut.getState();
+
+        now.addAndGet(1000);
+
+        assertThat(sut.getState()).isNull();
+        assertThat(sut.getFailures()).isEqualTo(1);
+        assertThat(sut.getLatestState()).isSameAs(state);
+    }
+
+    @Test
+    public void rejectedRequestServesLastKnownState() throws Exception {
+
+        PlayerStateRepresentation state = new PlayerStateRepresentation();
+        CompletableFuture<PlayerStateRepresentation> rejected = new CompletableFuture<>();
+        rejected.completeExceptionally(new MidiRelayUnavailableException("Circuit to relay is OPEN"));
+        when(relay.getState()).thenReturn(CompletableFuture.completedFuture(state)).thenReturn(rejected);
+        sut.getState();
+
+        now.addAndGet(1000);
+
+        assertThat(sut.getLatestState()).isSameAs(state);
+        assertThat(sut.getState()).isNull();
+        assertThat(sut.getFailures()).isZero();
+    }
+
+    @Test
+    public void pushedStateReplacesPendingRequest() throws Exception {
+
+        PlayerStateRepresentation pushed = new PlayerStateRepresentation();
+        CompletableFuture<PlayerStateRepresentation> response = new CompletableFuture<>();
+        when(relay.getState()).thenReturn(response);
+
+        assertThat(sut.getLatestState()).isNull();
+        sut.update(pushed);
+        response.complete(new PlayerStateRepresentation());
+
+        assertThat(sut.getState()).isSameAs(pushed);
+        assertThat(sut.getPushed()).isEqualTo(1);
+        verify(relay).getState();
+    }
+
+    @Test
+    public void commandsFailWithTheRelayError() throws Exception {
+
+        CompletableFuture<String> timeout = new CompletableFuture<>();
+        timeout.completeExceptionally(new TimeoutException("PUT /player/start did not complete within 500 ms"));
+        when(relay.start("id")).thenReturn(timeout);
+
+        try {
+            sut.start("id");
+            fail("Missing RuntimeException");
+        } catch (RuntimeException e) {
+            assertThat(e).hasCauseInstanceOf(TimeoutException.class);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package de.paluch.heckenlights.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+
+import de.paluch.heckenlights.relay.MidiRelay;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
+import de.paluch.heckenlights.relay.PlayerStateTrackRepresentation;
+import de.paluch.heckenlights.repositories.MidiContentService;
+
+/**
+ * In-memory stand-in for the midi-relay. Plays tracks for their MIDI duration on the given {@link Clock}. A started
+ * track begins right when the playing track ends, or immediately if the relay is idle. Calls complete immediately.
+ * Uploaded tracks are cached by their content hash and can be played or staged from the cache afterwards.
+ *
+ * @author Mark Paluch
+ */
+public class StandInMidiRelay implements MidiRelay {
+
+    private final Clock clock;
+    private final List<String> played = new ArrayList<>();
+    private final Map<String, byte[]> cache = new HashMap<>();
+    private int uploads;
+
+    private Track playing;
+    private Track staged;
+    private long startRequested = -1;
+    private boolean on;
+
+    public StandInMidiRelay(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized CompletableFuture<PlayerStateRepresentation> getState() {
+
+        advance();
+
+        PlayerStateRepresentation state = new PlayerStateRepresentation();
+        if (playing != null && playing.end > clock.millis()) {
+
+            PlayerStateTrackRepresentation track = new PlayerStateTrackRepresentation();
+            track.setId(playing.id);
+            track.setFileName(playing.fileName);
+            track.setDuration((int) ((playing.end - playing.start) / 1000));
+
+            state.setRunning(true);
+            state.setStarted(new Date(playing.start));
+            state.setEstimatedEnd(new Date(playing.end));
+            state.setEstimatedSecondsToPlay((int) ((playing.end - clock.millis()) / 1000));
+            state.setTrack(track);
+        }
+
+        return CompletableFuture.completedFuture(state);
+    }
+
+    @Override
+    public synchronized CompletableFuture<String> switchOn() {
+        on = true;
+        return CompletableFuture.completedFuture("OK");
+    }
+
+    @Override
+    public synchronized CompletableFuture<String> switchOff() {
+        on = false;
+        return CompletableFuture.completedFuture("OK");
+    }
+
+    @Override
+    public synchronized CompletableFuture<String> play(String id, String fileName, byte[] body) {
+
+        upload(body);
+        playing = new Track(id, fileName, clock.millis(), clock.millis() + duration(body));
+        played.add(id);
+        return CompletableFuture.completedFuture("OK");
+    }
+
+    @Override
+    public synchronized CompletableFuture<String> stage(String id, String fileName, byte[] body) {
+
+        upload(body);
+        staged = new Track(id, fileName, 0, duration(body));
+        startRequested = -1;
+        return CompletableFuture.completedFuture("OK");
+    }
+
+    @Override
+    public synchronized CompletableFuture<Boolean> playCached(String id, String fileName, String contentHash) {
+
+        byte[] body = cache.get(contentHash);
+        if (body == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        playing = new Track(id, fileName, clock.millis(), clock.millis() + duration(body));
+        played.add(id);
+        return CompletableFuture.completedFuture(true);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Boolean> stageCached(String id, String fileName, String contentHash) {
+
+        byte[] body = cache.get(contentHash);
+        if (body == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        staged = new Track(id, fileName, 0, duration(body));
+        startRequested = -1;
+        return CompletableFuture.completedFuture(true);
+    }
+
+    @Override
+    public synchronized CompletableFuture<String> start(String id) {
+
+        if (staged == null || !staged.id.equals(id)) {
+            throw new IllegalStateException("Track " + id + " not staged");
+        }
+
+        startRequested = clock.millis();
+        advance();
+        return CompletableFuture.completedFuture("OK");
+    }
+
+    public synchronized List<String> getPlayed() {
+        return new ArrayList<>(played);
+    }
+
+    public synchronized boolean isOn() {
+        return on;
+    }
+
+    /**
+     * @return number of uploaded tracks.
+     */
+    public synchronized int getUploads() {
+        return uploads;
+    }
+
+    private void upload(byte[] body) {
+
+        uploads++;
+        cache.put(MidiContentService.hash(body), body);
+    }
+
+    private void advance() {
+
+        if (startRequested == -1 || (playing != null && playing.end > clock.millis())) {
+            return;
+        }
+
+        long start = playing != null ? Math.max(playing.end, startRequested) : startRequested;
+
+        playing = new Track(staged.id, staged.fileName, start, start + staged.end);
+        played.add(staged.id);
+        staged = null;
+        startRequested = -1;
+    }
+
+    private static long duration(byte[] body) {
+
+        try {
+            return MidiSystem.getSequence(new ByteArrayInputStream(body)).getMicrosecondLength() / 1000;
+        } catch (InvalidMidiDataException | IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static class Track {
+
+        final String id;
+        final String fileName;
+        final long start;
+        final long end;
+
+        Track(String id, String fileName, long start, long end) {
+            this.id = id;
+            this.fileName = fileName;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
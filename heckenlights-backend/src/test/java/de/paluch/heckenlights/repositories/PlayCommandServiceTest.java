@@ -0,0 +1,178 @@
+package de.paluch.heckenlights.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsOperations;
+
+import de.paluch.heckenlights.client.MidiRelayClient;
+import de.paluch.heckenlights.model.EnqueueRequest;
+import de.paluch.heckenlights.model.PlayCommandSummary;
+import de.paluch.heckenlights.model.PlayStatus;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PlayCommandServiceTest {
+
+    @Mock
+    private PlayCommandRepository playCommandRepository;
+
+    @Mock
+    private MidiRelayClient client;
+
+    @Mock
+    private GridFsOperations gridFsOperations;
+
+    @Mock
+    private MongoOperations mongoOperations;
+
+    private QueueEta queueEta = new QueueEta();
+
+    private QueueIndex queueIndex = new QueueIndex();
+
+    private PlayCommandService sut;
+
+    @Before
+    public void before() throws Exception {
+
+        sut = new PlayCommandService(playCommandRepository, client, gridFsOperations, mongoOperations, queueEta, queueIndex);
+
+        PlayerStateRepresentation state = new PlayerStateRepresentation();
+        state.setRunning(true);
+        state.setEstimatedSecondsToPlay(30);
+        when(client.getLatestState()).thenReturn(state);
+    }
+
+    @Test
+    public void uploadEstimateAgreesWithPlaylist() throws Exception {
+
+        PlayCommandDocument a = document("a", 100);
+        when(playCommandRepository.findByPlayStatusOrderByCreatedAsc(PlayStatus.ENQUEUED))
+                .thenReturn(Collections.singletonList(a));
+        sut.initializeQueue();
+
+        int estimateForB = sut.estimateTimeToPlayQueue();
+        sut.storeEnqueueRequest(request("b", 50), new ObjectId());
+
+        List<PlayCommandSummary> playlist = sut.getListByPlayStatusOrderByCreated(Arrays.asList(PlayStatus.ENQUEUED), 20);
+
+        assertThat(playlist).extracting("timeToStart").containsExactly(35, estimateForB);
+        assertThat(estimateForB).isEqualTo(30 + 5 + 100 + 5);
+    }
+
+    @Test
+    public void adoptsSharedTrackGap() throws Exception {
+
+        StateDocument state = new StateDocument();
+        state.setTrackGapSeconds(2.0);
+        when(mongoOperations.findById("State", StateDocument.class)).thenReturn(state);
+
+        sut.reconcileTrackGap();
+
+        assertThat(sut.getTrackGapSeconds()).isEqualTo(2);
+    }
+
+    @Test
+    public void claimedTrackLeavesEstimate() throws Exception {
+
+        sut.storeEnqueueRequest(request("a", 100), new ObjectId());
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), eq(PlayCommandDocument.class)))
+                .thenReturn(document("a", 100));
+
+        assertThat(sut.claim("a", 1000)).isTrue();
+
+        assertThat(sut.estimateTimeToPlayQueue()).isEqualTo(35);
+        assertThat(sut.getEnquedCommands()).isEmpty();
+        assertThat(queueIndex.getRemoved("a")).isNotNull();
+    }
+
+    @Test
+    public void claimFailsIfNotEnqueued() throws Exception {
+
+        sut.storeEnqueueRequest(request("a", 100), new ObjectId());
+
+        assertThat(sut.claim("a", 1000)).isFalse();
+        assertThat(sut.getEnquedCommands()).isEmpty();
+    }
+
+    @Test
+    public void releaseReturnsTrackToQueue() throws Exception {
+
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(PlayCommandDocument.class))).thenReturn(document("a", 100));
+
+        sut.release("a");
+
+        assertThat(sut.getEnquedCommands()).extracting("id").containsExactly("a");
+        assertThat(sut.estimateTimeToPlayQueue()).isEqualTo(30 + 5 + 100 + 5);
+    }
+
+    @Test
+    public void servesQueueFromIndex() throws Exception {
+
+        sut.storeEnqueueRequest(request("a", 100), new ObjectId());
+        sut.storeEnqueueRequest(request("b", 50), new ObjectId());
+
+        assertThat(sut.getEnquedCommands()).extracting("id").containsExactly("a", "b");
+        assertThat(sut.getListByPlayStatusOrderByCreated(Arrays.asList(PlayStatus.PLAYING, PlayStatus.ENQUEUED), 20))
+                .extracting("id").containsExactly("a", "b");
+
+        verify(playCommandRepository, never()).findByPlayStatusOrderByCreatedAsc(any(PlayStatus.class),
+                any(Pageable.class));
+    }
+
+    @Test
+    public void resetsEstimateOnExternalChanges() throws Exception {
+
+        sut.storeEnqueueRequest(request("a", 100), new ObjectId());
+        when(playCommandRepository.findByPlayStatusOrderByCreatedAsc(PlayStatus.ENQUEUED))
+                .thenReturn(Collections.singletonList(document("b", 10)));
+
+        assertThat(sut.reconcileQueue()).isTrue();
+        assertThat(sut.reconcileQueue()).isFalse();
+
+        assertThat(queueEta.getIds()).containsExactly("b");
+        assertThat(sut.getEnquedCommands()).extracting("id").containsExactly("b");
+    }
+
+    private static EnqueueRequest request(String id, int duration) {
+
+        EnqueueRequest request = new EnqueueRequest();
+        request.setCommandId(id);
+        request.setDuration(duration);
+        request.setCreated(new Date());
+        return request;
+    }
+
+    private static PlayCommandDocument document(String id, int duration) {
+
+        PlayCommandDocument document = new PlayCommandDocument();
+        document.setId(id);
+        document.setDuration(duration);
+        document.setPlayStatus(PlayStatus.ENQUEUED);
+        return document;
+    }
+}
@@ -0,0 +1,84 @@
+package de.paluch.heckenlights.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author Mark Paluch
+ */
+public class QueueEtaTest {
+
+    private QueueEta sut = new QueueEta();
+
+    @Test
+    public void estimatesStartTimes() {
+
+        sut.enqueue("a", 100);
+        sut.enqueue("b", 50);
+
+        assertThat(sut.getTimeToStart("a", 0)).isEqualTo(0);
+        assertThat(sut.getTimeToStart("b", 0)).isEqualTo(105);
+        assertThat(sut.getTimeToPlayQueue(0)).isEqualTo(160);
+
+        assertThat(sut.getTimeToStart("a", 20)).isEqualTo(25);
+        assertThat(sut.getTimeToPlayQueue(20)).isEqualTo(185);
+        assertThat(sut.getTimeToStart("c", 0)).isNull();
+    }
+
+    @Test
+    public void removesHead() {
+
+        sut.enqueue("a", 100);
+        sut.enqueue("b", 50);
+        sut.enqueue("c", 10);
+
+        sut.remove("a");
+
+        assertThat(sut.getTimeToStart("b", 0)).isEqualTo(0);
+        assertThat(sut.getTimeToStart("c", 0)).isEqualTo(55);
+        assertThat(sut.getTimeToPlayQueue(0)).isEqualTo(70);
+    }
+
+    @Test
+    public void removesFromMiddle() {
+
+        sut.enqueue("a", 100);
+        sut.enqueue("b", 50);
+        sut.enqueue("c", 10);
+
+        sut.remove("b");
+        sut.remove("a");
+
+        assertThat(sut.getTimeToStart("c", 0)).isEqualTo(0);
+        assertThat(sut.getTimeToPlayQueue(0)).isEqualTo(15);
+        assertThat(sut.getIds()).containsExactly("c");
+    }
+
+    @Test
+    public void learnsGap() {
+
+        sut.enqueue("a", 100);
+        sut.enqueue("b", 50);
+
+        for (int i = 0; i < 50; i++) {
+            sut.observeGap(2000);
+        }
+
+        assertThat(sut.getGapSeconds()).isEqualTo(2);
+        assertThat(sut.getTimeToStart("b", 0)).isEqualTo(102);
+    }
+
+    @Test
+    public void resetsAndMatches() {
+
+        sut.enqueue("x", 1);
+        sut.reset(Arrays.asList("a", "b"), Arrays.asList(10, 20));
+
+        assertThat(sut.matches(Arrays.asList("a", "b"))).isTrue();
+        assertThat(sut.matches(Arrays.asList("b", "a"))).isFalse();
+        assertThat(sut.getTimeToPlayQueue(0)).isEqualTo(40);
+    }
+}
@@ -0,0 +1,82 @@
+package de.paluch.heckenlights.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * @author Mark Paluch
+ */
+public class QueueIndexTest {
+
+    private QueueIndex sut = new QueueIndex();
+
+    @Test
+    public void ordersByCreated() throws Exception {
+
+        sut.add(document("b", 2000));
+        sut.add(document("a", 1000));
+        sut.add(document("c", 2000));
+
+        assertThat(sut.getDocuments(10)).extracting("id").containsExactly("a", "b", "c");
+        assertThat(sut.getDocuments(2)).extracting("id").containsExactly("a", "b");
+    }
+
+    @Test
+    public void ignoresDuplicates() throws Exception {
+
+        sut.add(document("a", 1000));
+        sut.add(document("a", 500));
+
+        assertThat(sut.size()).isEqualTo(1);
+        assertThat(sut.get("a").getCreated()).isEqualTo(new Date(1000));
+    }
+
+    @Test
+    public void removesById() throws Exception {
+
+        sut.add(document("a", 1000));
+        sut.add(document("b", 2000));
+
+        assertThat(sut.remove("a").getId()).isEqualTo("a");
+        assertThat(sut.remove("a")).isNull();
+
+        assertThat(sut.get("a")).isNull();
+        assertThat(sut.getRemoved("a").getId()).isEqualTo("a");
+        assertThat(sut.getRemoved("b")).isNull();
+        assertThat(sut.getDocuments(10)).extracting("id").containsExactly("b");
+    }
+
+    @Test
+    public void matchesDocumentsInOrder() throws Exception {
+
+        sut.reset(Arrays.asList(document("a", 1000), document("b", 2000)));
+
+        assertThat(sut.matches(Arrays.asList(document("a", 1000), document("b", 2000)))).isTrue();
+        assertThat(sut.matches(Arrays.asList(document("b", 2000), document("a", 1000)))).isFalse();
+        assertThat(sut.matches(Arrays.asList(document("a", 1000)))).isFalse();
+    }
+
+    @Test
+    public void countsModifications() throws Exception {
+
+        long initial = sut.getModifications();
+
+        sut.add(document("a", 1000));
+        sut.remove("a");
+        sut.remove("a");
+
+        assertThat(sut.getModifications()).isEqualTo(initial + 2);
+    }
+
+    private static PlayCommandDocument document(String id, long created) {
+
+        PlayCommandDocument document = new PlayCommandDocument();
+        document.setId(id);
+        document.setCreated(new Date(created));
+        return document;
+    }
+}
@@ -1,11 +1,9 @@
 package biz.paluch.heckenlights.messagebox;
 
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParamBean;
-import org.apache.http.params.HttpParams;
+import java.net.URI;
+import java.time.Clock;
+
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -13,15 +11,16 @@ import org.springframework.boot.autoconfigure.mongo.MongoProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
-import org.springframework.context.annotation.ImportResource;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 
 import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoClients;
 
+import de.paluch.heckenlights.relay.CircuitBreakingMidiRelay;
+import de.paluch.heckenlights.relay.HttpMidiRelay;
+
 @SpringBootApplication
 @Import({ TwitterConfiguration.class })
-@ImportResource("classpath:META-INF/applicationContext.xml")
 @EnableConfigurationProperties(MongoProperties.class)
 public class Application {
 
@@ -29,27 +28,22 @@ public class Application {
         SpringApplication.run(Application.class, args);
     }
 
-    @Bean
-    ThreadSafeClientConnManager threadSafeClientConnManager() {
-        return new ThreadSafeClientConnManager();
-    }
-
-    @Bean
-    BasicHttpParams httpConnectionParams(@Value("${midirelay.connectTimeout:500}") int connectTimeout,
-            @Value("${midirelay.readTimeout:500}") int readTimeout) {
-
-        BasicHttpParams params = new BasicHttpParams();
-        HttpConnectionParamBean bean = new HttpConnectionParamBean(new BasicHttpParams());
-
-        bean.setConnectionTimeout(connectTimeout);
-        bean.setSoTimeout(readTimeout);
-
-        return params;
+    @Bean(destroyMethod = "close")
+    CloseableHttpAsyncClient midiRelayHttpClient(@Value("${midirelay.connectTimeout:500}") int connectTimeout,
+            @Value("${midirelay.readTimeout:500}") int readTimeout,
+            @Value("${midirelay.maxConnections:4}") int maxConnections) {
+        return HttpMidiRelay.createHttpClient(connectTimeout, readTimeout, maxConnections);
     }
 
     @Bean
-    DefaultHttpClient httpClient(ClientConnectionManager clientConnectionManager, HttpParams httpParams) {
-        return new DefaultHttpClient(clientConnectionManager, httpParams);
+    CircuitBreakingMidiRelay midiRelay(CloseableHttpAsyncClient midiRelayHttpClient,
+            @Value("${midirelay.url}") URI baseUri, @Value("${midirelay.deadlineMillis:1000}") long deadlineMillis,
+            @Value("${midirelay.circuit.failureThreshold:3}") int failureThreshold,
+            @Value("${midirelay.circuit.openMillis:10000}") long openMillis,
+            @Value("${midirelay.bulkhead.maxConcurrentCalls:4}") int maxConcurrentCalls) {
+
+        return new CircuitBreakingMidiRelay(new HttpMidiRelay(midiRelayHttpClient, baseUri, deadlineMillis),
+                Clock.systemUTC(), failureThreshold, openMillis, maxConcurrentCalls);
     }
 
     @Bean
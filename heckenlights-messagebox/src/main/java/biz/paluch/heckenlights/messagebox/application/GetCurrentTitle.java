@@ -24,8 +24,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import biz.paluch.heckenlights.messagebox.client.midirelay.MidiRelayClient;
-import biz.paluch.heckenlights.messagebox.client.midirelay.PlayerStateRepresentation;
-import biz.paluch.heckenlights.messagebox.client.midirelay.PlayerStateTrackRepresentation;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
+import de.paluch.heckenlights.relay.PlayerStateTrackRepresentation;
 import lombok.extern.slf4j.Slf4j;
 
 /**
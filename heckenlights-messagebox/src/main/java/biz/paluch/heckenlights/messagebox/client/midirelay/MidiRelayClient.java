@@ -1,19 +1,18 @@
 package biz.paluch.heckenlights.messagebox.client.midirelay;
 
-import javax.ws.rs.Consumes;
-import javax.ws.rs.GET;
-import javax.ws.rs.HeaderParam;
-import javax.ws.rs.PUT;
-import javax.ws.rs.Path;
-import javax.ws.rs.Produces;
-import javax.ws.rs.core.MediaType;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.springframework.stereotype.Component;
 
+import de.paluch.heckenlights.relay.MidiRelay;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 
 /**
+ * Blocking access to the {@link MidiRelay}. Calls return or fail within the deadline of the relay.
+ *
  * @author <a href="mailto:mpaluch@paluch.biz">Mark Paluch</a>
  * @since 01.12.13 20:52
  */
@@ -22,7 +21,7 @@ import lombok.RequiredArgsConstructor;
 public class MidiRelayClient {
 
     @NonNull
-    MidiRelayClientProxy clientProxy;
+    MidiRelay relay;
 
     public String getCurrentPlayId() {
 
@@ -46,41 +45,30 @@ public class MidiRelayClient {
 
     public PlayerStateRepresentation getState() {
 
-        return clientProxy.getState();
+        return await(relay.getState());
     }
 
     public void play(String id, String fileName, byte[] body) {
-        clientProxy.play(id, fileName, body);
+        await(relay.play(id, fileName, body));
     }
 
     public void switchOff() {
-        clientProxy.switchOff();
+        await(relay.switchOff());
     }
 
     public void switchOn() {
-        clientProxy.switchOn();
+        await(relay.switchOn());
     }
 
-    @Path("player")
-    public interface MidiRelayClientProxy {
-        @GET
-        @Produces(MediaType.APPLICATION_JSON)
-        PlayerStateRepresentation getState();
-
-        @GET
-        @Path("port/ON")
-        String switchOn();
-
-        @GET
-        @Path("port/OFF")
-        String switchOff();
-
-        @PUT
-        @Path("play")
-        @Produces(MediaType.TEXT_PLAIN)
-        @Consumes(MediaType.APPLICATION_OCTET_STREAM)
-        public String play(@HeaderParam("X-Request-Id") String id, @HeaderParam("X-Request-FileName") String fileName,
-                byte[] body);
+    private static <T> T await(CompletableFuture<T> response) {
 
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 }
@@ -4,6 +4,8 @@ import org.springframework.boot.actuate.health.AbstractHealthIndicator;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.stereotype.Component;
 
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
+import de.paluch.heckenlights.relay.PlayerStateTrackRepresentation;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 
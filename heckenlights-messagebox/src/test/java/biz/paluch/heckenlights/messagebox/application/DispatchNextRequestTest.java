@@ -12,14 +12,14 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import biz.paluch.heckenlights.messagebox.client.midirelay.MidiRelayClient;
-import biz.paluch.heckenlights.messagebox.client.midirelay.PlayerStateRepresentation;
-import biz.paluch.heckenlights.messagebox.client.midirelay.PlayerStateTrackRepresentation;
 import biz.paluch.heckenlights.messagebox.model.DispatchAction;
 import biz.paluch.heckenlights.messagebox.repository.DisplayCountDocument;
 import biz.paluch.heckenlights.messagebox.repository.DisplayCountRepository;
 import biz.paluch.heckenlights.messagebox.repository.MessageRepository;
 import biz.paluch.heckenlights.messagebox.repository.TweetDocument;
 import biz.paluch.heckenlights.messagebox.repository.TweetRepository;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
+import de.paluch.heckenlights.relay.PlayerStateTrackRepresentation;
 
 @RunWith(MockitoJUnitRunner.class)
 public class DispatchNextRequestTest {
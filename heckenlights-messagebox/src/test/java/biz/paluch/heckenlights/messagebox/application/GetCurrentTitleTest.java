@@ -10,8 +10,8 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import biz.paluch.heckenlights.messagebox.client.midirelay.MidiRelayClient;
-import biz.paluch.heckenlights.messagebox.client.midirelay.PlayerStateRepresentation;
-import biz.paluch.heckenlights.messagebox.client.midirelay.PlayerStateTrackRepresentation;
+import de.paluch.heckenlights.relay.PlayerStateRepresentation;
+import de.paluch.heckenlights.relay.PlayerStateTrackRepresentation;
 
 @RunWith(MockitoJUnitRunner.class)
 public class GetCurrentTitleTest {
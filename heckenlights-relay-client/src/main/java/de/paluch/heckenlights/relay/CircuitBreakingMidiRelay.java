@@ -0,0 +1,197 @@
+package de.paluch.heckenlights.relay;
+
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Guards a {@link MidiRelay} with a circuit breaker and a bulkhead. The circuit opens after {@code failureThreshold}
+ * consecutive failures and rejects calls for {@code openMillis}. Then a single probe call is permitted: the circuit
+ * closes if it succeeds and opens again if it fails. The bulkhead limits the calls in progress to
+ * {@code maxConcurrentCalls}.
+ * <p>
+ * Rejected calls complete immediately with {@link MidiRelayUnavailableException}. Timeouts, I/O errors and server errors
+ * count as failures, client errors such as starting a track that was not staged do not.
+ *
+ * @author Mark Paluch
+ */
+public class CircuitBreakingMidiRelay implements MidiRelay {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final MidiRelay delegate;
+    private final Clock clock;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final int maxConcurrentCalls;
+    private final Semaphore bulkhead;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    public CircuitBreakingMidiRelay(MidiRelay delegate, Clock clock, int failureThreshold, long openMillis,
+            int maxConcurrentCalls) {
+
+        this.delegate = delegate;
+        this.clock = clock;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.bulkhead = new Semaphore(maxConcurrentCalls);
+    }
+
+    @Override
+    public CompletableFuture<PlayerStateRepresentation> getState() {
+        return call(delegate::getState);
+    }
+
+    @Override
+    public CompletableFuture<String> switchOn() {
+        return call(delegate::switchOn);
+    }
+
+    @Override
+    public CompletableFuture<String> switchOff() {
+        return call(delegate::switchOff);
+    }
+
+    @Override
+    public CompletableFuture<String> play(String id, String fileName, byte[] body) {
+        return call(() -> delegate.play(id, fileName, body));
+    }
+
+    @Override
+    public CompletableFuture<String> stage(String id, String fileName, byte[] body) {
+        return call(() -> delegate.stage(id, fileName, body));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> playCached(String id, String fileName, String contentHash) {
+        return call(() -> delegate.playCached(id, fileName, contentHash));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> stageCached(String id, String fileName, String contentHash) {
+        return call(() -> delegate.stageCached(id, fileName, contentHash));
+    }
+
+    @Override
+    public CompletableFuture<String> start(String id) {
+        return call(() -> delegate.start(id));
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call) {
+
+        if (!bulkhead.tryAcquire()) {
+            return reject("All " + maxConcurrentCalls + " permitted relay calls in progress");
+        }
+
+        if (!permit()) {
+            bulkhead.release();
+            return reject("Circuit to relay is " + getCircuitState());
+        }
+
+        CompletableFuture<T> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+
+        return response.whenComplete((result, e) -> {
+
+            bulkhead.release();
+            if (e != null && isFailure(e)) {
+                onFailure();
+            } else {
+                onSuccess();
+            }
+        });
+    }
+
+    private synchronized boolean permit() {
+
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        if (state == State.OPEN && clock.millis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+
+        return false;
+    }
+
+    private synchronized void onSuccess() {
+
+        consecutiveFailures = 0;
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+        }
+    }
+
+    private synchronized void onFailure() {
+
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = clock.millis();
+            opened.increment();
+        }
+    }
+
+    private <T> CompletableFuture<T> reject(String message) {
+
+        rejected.increment();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(new MidiRelayUnavailableException(message));
+        return result;
+    }
+
+    private static boolean isFailure(Throwable e) {
+
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof MidiRelayException) {
+            return ((MidiRelayException) cause).getStatus() >= 500;
+        }
+
+        return true;
+    }
+
+    public synchronized State getCircuitState() {
+        return state;
+    }
+
+    /**
+     * @return number of calls rejected by the circuit or the bulkhead.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return number of times the circuit opened.
+     */
+    public long getOpened() {
+        return opened.sum();
+    }
+
+    /**
+     * @return number of calls that can be issued before the bulkhead rejects calls.
+     */
+    public int getAvailableCalls() {
+        return bulkhead.availablePermits();
+    }
+}
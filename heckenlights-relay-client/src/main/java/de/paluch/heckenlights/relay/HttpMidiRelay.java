@@ -0,0 +1,241 @@
+package de.paluch.heckenlights.relay;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * {@link MidiRelay} over HTTP using a non-blocking client. Calls do not occupy the calling thread, each call completes
+ * within {@code deadlineMillis}: a call that exceeds its deadline completes with a {@link TimeoutException} and its
+ * exchange is cancelled. Track uploads are written from the given array directly to the connection.
+ * <p>
+ * Cached tracks are requested with a {@code PUT} to {@code player/play/cached} respective {@code player/stage/cached}
+ * carrying the content hash in the {@code X-Content-Hash} header. The relay acknowledges a cache hit by echoing the
+ * header in a {@code 2xx} response. Any other response except server errors is a miss, so relays without a cache fall
+ * back to uploads.
+ * <p>
+ * The {@link CloseableHttpAsyncClient} is owned by the caller and may be shared by several relays, see
+ * {@link #createHttpClient(int, int, int)}.
+ *
+ * @author Mark Paluch
+ */
+public class HttpMidiRelay implements MidiRelay {
+
+    private static final ScheduledThreadPoolExecutor DEADLINES = new ScheduledThreadPoolExecutor(1,
+            daemonThreads("midirelay-deadline-"));
+
+    static {
+        DEADLINES.setRemoveOnCancelPolicy(true);
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String CONTENT_HASH = "X-Content-Hash";
+
+    private final CloseableHttpAsyncClient httpClient;
+    private final String baseUri;
+    private final long deadlineMillis;
+
+    public HttpMidiRelay(CloseableHttpAsyncClient httpClient, URI baseUri, long deadlineMillis) {
+
+        this.httpClient = httpClient;
+        this.baseUri = baseUri.toString().endsWith("/") ? baseUri.toString() : baseUri.toString() + "/";
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Create and start a client that keeps connections to the relay alive and pools them.
+     *
+     * @param connectTimeout connect timeout in milliseconds, also applies to leasing a pooled connection.
+     * @param readTimeout socket timeout in milliseconds.
+     * @param maxConnections maximum number of connections per relay.
+     * @return the started client.
+     */
+    public static CloseableHttpAsyncClient createHttpClient(int connectTimeout, int readTimeout, int maxConnections) {
+
+        RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout).setSocketTimeout(readTimeout).build();
+
+        CloseableHttpAsyncClient httpClient = HttpAsyncClients.custom().setDefaultRequestConfig(requestConfig)
+                .setMaxConnPerRoute(maxConnections).setMaxConnTotal(maxConnections * 4)
+                .setThreadFactory(daemonThreads("midirelay-io-")).build();
+        httpClient.start();
+        return httpClient;
+    }
+
+    @Override
+    public CompletableFuture<PlayerStateRepresentation> getState() {
+
+        HttpGet request = new HttpGet(baseUri + "player");
+        request.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+
+        return execute(request).thenApply(response -> {
+            try {
+                return OBJECT_MAPPER.readValue(getBody(response), PlayerStateRepresentation.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> switchOn() {
+        return execute(new HttpGet(baseUri + "player/port/ON")).thenApply(HttpMidiRelay::getBody);
+    }
+
+    @Override
+    public CompletableFuture<String> switchOff() {
+        return execute(new HttpGet(baseUri + "player/port/OFF")).thenApply(HttpMidiRelay::getBody);
+    }
+
+    @Override
+    public CompletableFuture<String> play(String id, String fileName, byte[] body) {
+        return upload("player/play", id, fileName, body);
+    }
+
+    @Override
+    public CompletableFuture<String> stage(String id, String fileName, byte[] body) {
+        return upload("player/stage", id, fileName, body);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> playCached(String id, String fileName, String contentHash) {
+        return offer("player/play/cached", id, fileName, contentHash);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> stageCached(String id, String fileName, String contentHash) {
+        return offer("player/stage/cached", id, fileName, contentHash);
+    }
+
+    @Override
+    public CompletableFuture<String> start(String id) {
+
+        HttpPut request = new HttpPut(baseUri + "player/start");
+        request.setHeader("X-Request-Id", id);
+
+        return execute(request).thenApply(HttpMidiRelay::getBody);
+    }
+
+    private CompletableFuture<String> upload(String path, String id, String fileName, byte[] body) {
+
+        HttpPut request = new HttpPut(baseUri + path);
+        request.setHeader("X-Request-Id", id);
+        request.setHeader("X-Request-FileName", fileName);
+        request.setEntity(new NByteArrayEntity(body, ContentType.APPLICATION_OCTET_STREAM));
+
+        return execute(request).thenApply(HttpMidiRelay::getBody);
+    }
+
+    private CompletableFuture<Boolean> offer(String path, String id, String fileName, String contentHash) {
+
+        HttpPut request = new HttpPut(baseUri + path);
+        request.setHeader("X-Request-Id", id);
+        request.setHeader("X-Request-FileName", fileName);
+        request.setHeader(CONTENT_HASH, contentHash);
+
+        return execute(request).thenApply(response -> {
+
+            int status = response.getStatusLine().getStatusCode();
+            if (status >= 500) {
+                getBody(response);
+            }
+
+            EntityUtils.consumeQuietly(response.getEntity());
+
+            Header acknowledged = response.getFirstHeader(CONTENT_HASH);
+            return status >= 200 && status < 300 && acknowledged != null && contentHash.equals(acknowledged.getValue());
+        });
+    }
+
+    private CompletableFuture<HttpResponse> execute(HttpUriRequest request) {
+
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+
+        Future<HttpResponse> exchange = httpClient.execute(request, new FutureCallback<HttpResponse>() {
+
+            @Override
+            public void completed(HttpResponse response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                result.completeExceptionally(new CancellationException(request.getRequestLine().toString()));
+            }
+        });
+
+        ScheduledFuture<?> deadline = DEADLINES.schedule(() -> {
+
+            if (result.completeExceptionally(new TimeoutException(
+                    request.getRequestLine() + " did not complete within " + deadlineMillis + " ms"))) {
+                exchange.cancel(true);
+            }
+        }, deadlineMillis, TimeUnit.MILLISECONDS);
+
+        result.whenComplete((response, e) -> deadline.cancel(false));
+
+        return result;
+    }
+
+    private static String getBody(HttpResponse response) {
+
+        HttpEntity entity = response.getEntity();
+        String body;
+        try {
+            body = entity != null ? EntityUtils.toString(entity, StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int status = response.getStatusLine().getStatusCode();
+        if (status >= 300) {
+            throw new MidiRelayException(status, response.getStatusLine() + (body != null ? ": " + body : ""));
+        }
+
+        return body;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package de.paluch.heckenlights.relay;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Operations of the midi-relay player. Calls return immediately, the returned future completes with the response of the
+ * relay or exceptionally with {@link MidiRelayException}, an I/O error or a {@link java.util.concurrent.TimeoutException}
+ * if the relay does not respond in time.
+ * <p>
+ * Relays may keep a cache of uploaded tracks addressed by the SHA-256 hash of their content as lower-case hex string.
+ * {@link #playCached(String, String, String)} and {@link #stageCached(String, String, String)} offer the hash instead of
+ * the content, the track needs to be uploaded only if the relay does not hold it. Relays acknowledge a cache hit
+ * explicitly, a relay without a cache misses.
+ *
+ * @author Mark Paluch
+ */
+public interface MidiRelay {
+
+    CompletableFuture<PlayerStateRepresentation> getState();
+
+    CompletableFuture<String> switchOn();
+
+    CompletableFuture<String> switchOff();
+
+    CompletableFuture<String> play(String id, String fileName, byte[] body);
+
+    /**
+     * Upload a track without playing it. A previously staged track is replaced.
+     *
+     * @param id
+     * @param fileName
+     * @param body
+     * @return
+     */
+    CompletableFuture<String> stage(String id, String fileName, byte[] body);
+
+    /**
+     * Play a track from the content cache of the relay. Relays without a content cache never hold the content.
+     *
+     * @param id
+     * @param fileName
+     * @param contentHash
+     * @return {@literal true} if the relay plays the track, {@literal false} if it does not hold the content and the track
+     *         must be uploaded with {@link #play(String, String, byte[])}.
+     */
+    default CompletableFuture<Boolean> playCached(String id, String fileName, String contentHash) {
+        return CompletableFuture.completedFuture(false);
+    }
+
+    /**
+     * Stage a track from the content cache of the relay. Relays without a content cache never hold the content.
+     *
+     * @param id
+     * @param fileName
+     * @param contentHash
+     * @return {@literal true} if the relay staged the track, {@literal false} if it does not hold the content and the
+     *         track must be uploaded with {@link #stage(String, String, byte[])}.
+     */
+    default CompletableFuture<Boolean> stageCached(String id, String fileName, String contentHash) {
+        return CompletableFuture.completedFuture(false);
+    }
+
+    /**
+     * Start the staged track once the playing track has finished or immediately if the relay is idle.
+     *
+     * @param id
+     * @return
+     */
+    CompletableFuture<String> start(String id);
+}
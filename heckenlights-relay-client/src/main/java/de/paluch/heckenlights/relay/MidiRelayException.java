@@ -0,0 +1,20 @@
+package de.paluch.heckenlights.relay;
+
+/**
+ * The relay responded with an error status.
+ *
+ * @author Mark Paluch
+ */
+public class MidiRelayException extends RuntimeException {
+
+    private final int status;
+
+    public MidiRelayException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
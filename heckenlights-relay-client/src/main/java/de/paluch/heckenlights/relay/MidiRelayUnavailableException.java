@@ -0,0 +1,13 @@
+package de.paluch.heckenlights.relay;
+
+/**
+ * A call was not issued to the relay because its circuit is open or all permitted calls are in progress.
+ *
+ * @author Mark Paluch
+ */
+public class MidiRelayUnavailableException extends RuntimeException {
+
+    public MidiRelayUnavailableException(String message) {
+        super(message, null, false, false);
+    }
+}
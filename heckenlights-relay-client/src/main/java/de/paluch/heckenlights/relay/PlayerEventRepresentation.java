@@ -0,0 +1,24 @@
+package de.paluch.heckenlights.relay;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import lombok.Data;
+
+/**
+ * Player event pushed by the relay, e.g. {@code {"type":"TRACK_ENDED","id":"…","state":{"running":false}}}. {@code state}
+ * is the player state after the event and may be omitted.
+ *
+ * @author Mark Paluch
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@Data
+public class PlayerEventRepresentation {
+
+    Type type;
+    String id;
+    PlayerStateRepresentation state;
+
+    public enum Type {
+        TRACK_STARTED, TRACK_ENDED
+    }
+}
@@ -1,8 +1,8 @@
-package de.paluch.heckenlights.client;
+package de.paluch.heckenlights.relay;
 
 import java.util.Date;
 
-import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import lombok.Data;
 
@@ -1,6 +1,6 @@
-package de.paluch.heckenlights.client;
+package de.paluch.heckenlights.relay;
 
-import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import lombok.Data;
 
@@ -0,0 +1,157 @@
+package de.paluch.heckenlights.relay;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import de.paluch.heckenlights.relay.CircuitBreakingMidiRelay.State;
+
+/**
+ * @author Mark Paluch
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CircuitBreakingMidiRelayTest {
+
+    @Mock
+    private MidiRelay delegate;
+
+    private AtomicLong now = new AtomicLong(1000000);
+    private CircuitBreakingMidiRelay sut;
+
+    @Before
+    public void before() throws Exception {
+
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(invocation -> now.get());
+
+        sut = new CircuitBreakingMidiRelay(delegate, clock, 2, 1000, 2);
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() throws Exception {
+
+        when(delegate.getState()).thenReturn(timeout());
+
+        assertFails(sut.getState(), TimeoutException.class);
+        assertThat(sut.getCircuitState()).isEqualTo(State.CLOSED);
+        assertFails(sut.getState(), TimeoutException.class);
+        assertThat(sut.getCircuitState()).isEqualTo(State.OPEN);
+
+        assertFails(sut.getState(), MidiRelayUnavailableException.class);
+        verify(delegate, times(2)).getState();
+        assertThat(sut.getRejected()).isEqualTo(1);
+        assertThat(sut.getOpened()).isEqualTo(1);
+    }
+
+    @Test
+    public void successResetsFailures() throws Exception {
+
+        when(delegate.getState()).thenReturn(timeout(), state(), timeout());
+
+        sut.getState();
+        sut.getState();
+        sut.getState();
+
+        assertThat(sut.getCircuitState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    public void probeClosesCircuit() throws Exception {
+
+        CompletableFuture<PlayerStateRepresentation> probe = new CompletableFuture<>();
+        when(delegate.getState()).thenReturn(timeout(), timeout(), probe);
+        sut.getState();
+        sut.getState();
+
+        now.addAndGet(1000);
+        CompletableFuture<PlayerStateRepresentation> response = sut.getState();
+        assertThat(sut.getCircuitState()).isEqualTo(State.HALF_OPEN);
+        assertFails(sut.getState(), MidiRelayUnavailableException.class);
+
+        probe.complete(new PlayerStateRepresentation());
+        assertThat(response.join()).isNotNull();
+        assertThat(sut.getCircuitState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    public void failedProbeReopensCircuit() throws Exception {
+
+        when(delegate.getState()).thenReturn(timeout());
+        sut.getState();
+        sut.getState();
+
+        now.addAndGet(1000);
+        assertFails(sut.getState(), TimeoutException.class);
+        assertThat(sut.getCircuitState()).isEqualTo(State.OPEN);
+        assertThat(sut.getOpened()).isEqualTo(2);
+
+        now.addAndGet(999);
+        assertFails(sut.getState(), MidiRelayUnavailableException.class);
+    }
+
+    @Test
+    public void clientErrorsDoNotOpenCircuit() throws Exception {
+
+        CompletableFuture<String> conflict = new CompletableFuture<>();
+        conflict.completeExceptionally(new MidiRelayException(409, "Track not staged"));
+        when(delegate.start("id")).thenReturn(conflict);
+
+        for (int i = 0; i < 3; i++) {
+            assertFails(sut.start("id"), MidiRelayException.class);
+        }
+
+        assertThat(sut.getCircuitState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    public void bulkheadRejectsExcessCalls() throws Exception {
+
+        CompletableFuture<PlayerStateRepresentation> pending = new CompletableFuture<>();
+        when(delegate.getState()).thenReturn(pending);
+
+        sut.getState();
+        sut.getState();
+        assertThat(sut.getAvailableCalls()).isZero();
+        assertFails(sut.getState(), MidiRelayUnavailableException.class);
+
+        pending.complete(new PlayerStateRepresentation());
+        assertThat(sut.getAvailableCalls()).isEqualTo(2);
+        assertThat(sut.getCircuitState()).isEqualTo(State.CLOSED);
+    }
+
+    private static CompletableFuture<PlayerStateRepresentation> state() {
+        return CompletableFuture.completedFuture(new PlayerStateRepresentation());
+    }
+
+    private static CompletableFuture<PlayerStateRepresentation> timeout() {
+
+        CompletableFuture<PlayerStateRepresentation> result = new CompletableFuture<>();
+        result.completeExceptionally(new TimeoutException("GET /player did not complete within 500 ms"));
+        return result;
+    }
+
+    private static void assertFails(CompletableFuture<?> response, Class<? extends Throwable> type) {
+
+        try {
+            response.join();
+            fail("Missing " + type.getSimpleName());
+        } catch (CompletionException e) {
+            assertThat(e.getCause()).isInstanceOf(type);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package de.paluch.heckenlights.relay;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author Mark Paluch
+ */
+public class HttpMidiRelayTest {
+
+    private HttpServer server;
+    private CloseableHttpAsyncClient httpClient;
+    private HttpMidiRelay sut;
+
+    private final Set<Integer> clientPorts = new HashSet<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile byte[] uploaded;
+    private volatile String uploadedFileName;
+    private volatile byte[] offeredBody;
+
+    @Before
+    public void before() throws Exception {
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/player", exchange -> {
+
+            synchronized (clientPorts) {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+            }
+
+            switch (exchange.getRequestURI().getPath()) {
+                case "/player":
+                    respond(exchange, 200,
+                            "{\"running\":true,\"estimatedSecondsToPlay\":42,\"track\":{\"id\":\"a\",\"fileName\":\"a.mid\"},\"unknown\":1}");
+                    break;
+                case "/player/play/cached":
+                    String contentHash = exchange.getRequestHeaders().getFirst("X-Content-Hash");
+                    offeredBody = read(exchange);
+                    switch (contentHash) {
+                        case "cached":
+                            exchange.getResponseHeaders().set("X-Content-Hash", contentHash);
+                            respond(exchange, 200, "OK");
+                            break;
+                        case "unacknowledged":
+                            respond(exchange, 200, "OK");
+                            break;
+                        case "invalid":
+                            respond(exchange, 400, "Bad request");
+                            break;
+                        case "failing":
+                            respond(exchange, 500, "Internal error");
+                            break;
+                        default:
+                            respond(exchange, 404, "Content not cached");
+                    }
+                    break;
+                case "/player/play":
+                    uploadedFileName = exchange.getRequestHeaders().getFirst("X-Request-FileName");
+                    uploaded = read(exchange);
+                    respond(exchange, 200, "OK");
+                    break;
+                case "/player/port/ON":
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    respond(exchange, 200, "OK");
+                    break;
+                default:
+                    respond(exchange, 404, "Not found");
+            }
+        });
+        server.start();
+
+        httpClient = HttpMidiRelay.createHttpClient(1000, 1000, 2);
+        sut = new HttpMidiRelay(httpClient, URI.create("http://localhost:" + server.getAddress().getPort()), 300);
+    }
+
+    @After
+    public void after() throws Exception {
+
+        release.countDown();
+        httpClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void readsState() throws Exception {
+
+        PlayerStateRepresentation state = sut.getState().get(5, TimeUnit.SECONDS);
+
+        assertThat(state.isRunning()).isTrue();
+        assertThat(state.getEstimatedSecondsToPlay()).isEqualTo(42);
+        assertThat(state.getTrack().getId()).isEqualTo("a");
+    }
+
+    @Test
+    public void reusesConnections() throws Exception {
+
+        for (int i = 0; i < 5; i++) {
+            sut.getState().get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(clientPorts).hasSize(1);
+    }
+
+    @Test
+    public void uploadsTrack() throws Exception {
+
+        byte[] body = new byte[64 * 1024];
+        body[body.length - 1] = 1;
+
+        assertThat(sut.play("id", "file.mid", body).get(5, TimeUnit.SECONDS)).isEqualTo("OK");
+        assertThat(uploaded).isEqualTo(body);
+        assertThat(uploadedFileName).isEqualTo("file.mid");
+    }
+
+    @Test
+    public void offersContentHash() throws Exception {
+
+        assertThat(sut.playCached("id", "file.mid", "cached").get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(offeredBody).isEmpty();
+        assertThat(sut.playCached("id", "file.mid", "unknown").get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(uploaded).isNull();
+    }
+
+    @Test
+    public void relayWithoutCacheMisses() throws Exception {
+
+        assertThat(sut.playCached("id", "file.mid", "unacknowledged").get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(sut.playCached("id", "file.mid", "invalid").get(5, TimeUnit.SECONDS)).isFalse();
+
+        try {
+            sut.playCached("id", "file.mid", "failing").get(5, TimeUnit.SECONDS);
+            fail("Missing ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(((MidiRelayException) e.getCause()).getStatus()).isEqualTo(500);
+        }
+    }
+
+    @Test
+    public void hungRelayExceedsDeadline() throws Exception {
+
+        long started = System.nanoTime();
+        CompletableFuture<String> response = sut.switchOn();
+        assertThat(response).isNotDone();
+
+        try {
+            response.get(5, TimeUnit.SECONDS);
+            fail("Missing ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+        }
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isLessThan(2000);
+    }
+
+    @Test
+    public void errorStatusFailsCall() throws Exception {
+
+        try {
+            sut.start("id").get(5, TimeUnit.SECONDS);
+            fail("Missing ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(MidiRelayException.class);
+            assertThat(((MidiRelayException) e.getCause()).getStatus()).isEqualTo(404);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] read(HttpExchange exchange) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = exchange.getRequestBody().read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}